@@ -0,0 +1,250 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.infinitekind.moneydance.model.AccountBook;
+
+/**
+ * Class to save the budget values and actual totals of all categories to a
+ * compact binary file so that the budget bars can be displayed immediately
+ * when Moneydance starts. The file is keyed by the book and a key describing
+ * what is displayed (the budget, the period, the month and the settings the
+ * values depend on). The cached values are shown before the transactions 
+ * have been read so they must be verified against the book once it has 
+ * been loaded.
+ *
+ * <p>The file is kept in the local cache folder of the user (see 
+ * getCacheFolder()), one file per book, rather than in the folder of the 
+ * book. The folder of the book is often synced to other computers and is
+ * encrypted by Moneydance, while the cache is written unencrypted and is 
+ * only useful on the computer that wrote it. It only holds the totals 
+ * shown by the bars and is rebuilt if it is deleted.
+ *
+ * @author  Jerry Jones
+ */
+public class AggregateCache {
+    // File identification and format version
+    private static final int MAGIC = 0x4D424243;    // "MBBC"
+    private static final int VERSION = 4;
+
+    // The folder in the local cache folder the cache files are stored in
+    private static final String FOLDER_NAME = "MonthlyBudgetBars";
+
+    // The cache file
+    private final File file;
+
+    // The ID of the book the cache is for
+    private final String bookID;
+
+    /**
+     * Constructor for the aggregate cache of an account book.
+     * 
+     * @param book - The account book the cache is for.
+     */
+    public AggregateCache(final AccountBook book) {
+        this(new File(AggregateCache.getCacheFolder(), book.getRootAccount().getUUID() + ".cache"), book.getRootAccount().getUUID());
+    }
+
+    /**
+     * Constructor for an aggregate cache stored in any file.
+     * 
+     * @param file - The cache file.
+     * @param bookID - The ID of the book the cache is for.
+     */
+    AggregateCache(final File file, final String bookID) {
+        this.file = file;
+        this.bookID = bookID;
+    }
+
+    /** 
+     * Get the folder the cache files are stored in. This is the local cache 
+     * folder of the user, which isn't synced or backed up: %LOCALAPPDATA% on
+     * Windows, ~/Library/Caches on macOS and $XDG_CACHE_HOME or ~/.cache 
+     * elsewhere.
+     * 
+     * @return File - The folder, which may not exist yet.
+     */
+    static File getCacheFolder() {
+        final String os = System.getProperty("os.name", "").toLowerCase();
+        final String home = System.getProperty("user.home");
+        final File base;
+        if ((os.startsWith("windows")) && (System.getenv("LOCALAPPDATA") != null))
+            base = new File(System.getenv("LOCALAPPDATA"));
+        else if (os.startsWith("mac"))
+            base = new File(home, "Library/Caches");
+        else if (System.getenv("XDG_CACHE_HOME") != null)
+            base = new File(System.getenv("XDG_CACHE_HOME"));
+        else
+            base = new File(home, ".cache");
+        return new File(base, FOLDER_NAME);
+    }
+
+    /** 
+     * Load the cached values into a budget categories list. The values are 
+     * only loaded if the cache is for the same book, key and categories.
+     * 
+     * @param key - The key of what is displayed.
+     * @param list - The budget categories list to load the values into.
+     * @return boolean - true if the values were loaded, false otherwise.
+     */
+    public boolean load(final String key, final BudgetCategoriesList list) {
+        if (!this.file.isFile())
+            return false;
+
+        try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ))
+            {
+            // Read the whole file, it isn't mapped so it can be replaced while the book is open
+            final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining())
+                {
+                if (channel.read(buffer) < 0)
+                    return false;
+                }
+            buffer.flip();
+
+            // Check that the cache is for what we are displaying
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION))
+                return false;
+            if (!this.bookID.equals(AggregateCache.getString(buffer)) || !key.equals(AggregateCache.getString(buffer)))
+                return false;
+            if (buffer.getInt() != list.getCategoryCount())
+                return false;
+
+            // Load the values of each category, they must be in the same order
+            final CategoryValueStore values = list.getValues();
+            int index = 0;
+            for (final String UUID : list.getKeySet())
+                {
+                if (!UUID.equals(AggregateCache.getString(buffer)))
+                    return false;
+
+                list.getCategoryItemByIndex(index).setActualsIncluded(buffer.get() != 0);
+                for (int column = 1; column < CategoryValueStore.COLUMNS; column++)
+                    values.setBudget(column, index, buffer.getLong());
+                for (int column = 1; column < CategoryValueStore.COLUMNS; column++)
+                    values.setActual(column, index, buffer.getLong());
+                index++;
+                }
+
+            return true;
+            }
+        catch (final Exception e)
+            {
+            System.err.println("ERROR: Cannot read the budget bars cache '"+this.file+"': "+e);
+            return false;
+            }
+    }
+
+    /** 
+     * Save the values of a budget categories list to the cache.
+     * 
+     * @param key - The key of what is displayed.
+     * @param list - The budget categories list to save.
+     */
+    public void save(final String key, final BudgetCategoriesList list) {
+        // Write to a temporary file and then replace the cache so it is never partially written
+        final File tmpFile = new File(this.file.getPath() + ".tmp");
+        this.file.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))))
+            {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            AggregateCache.putString(out, this.bookID);
+            AggregateCache.putString(out, key);
+            out.writeInt(list.getCategoryCount());
+
+            final CategoryValueStore values = list.getValues();
+            int index = 0;
+            for (final String UUID : list.getKeySet())
+                {
+                AggregateCache.putString(out, UUID);
+                out.writeByte(list.getCategoryItemByIndex(index).isActualsIncluded() ? 1 : 0);
+                for (int column = 1; column < CategoryValueStore.COLUMNS; column++)
+                    out.writeLong(values.getBudget(column, index));
+                for (int column = 1; column < CategoryValueStore.COLUMNS; column++)
+                    out.writeLong(values.getActual(column, index));
+                index++;
+                }
+            }
+        catch (final IOException e)
+            {
+            System.err.println("ERROR: Cannot write the budget bars cache '"+tmpFile+"': "+e);
+            tmpFile.delete();
+            return;
+            }
+
+        try 
+            {
+            Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        catch (final IOException e)
+            {
+            System.err.println("ERROR: Cannot replace the budget bars cache '"+this.file+"': "+e);
+            tmpFile.delete();
+            }
+    }
+
+    /** 
+     * Read a length prefixed UTF-8 string from a buffer.
+     * 
+     * @param buffer - The buffer to read from.
+     * @return String - The string read.
+     */
+    private static String getString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** 
+     * Write a length prefixed UTF-8 string to a stream.
+     * 
+     * @param out - The stream to write to.
+     * @param value - The string to write.
+     */
+    private static void putString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
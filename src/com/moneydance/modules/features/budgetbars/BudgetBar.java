@@ -31,11 +31,14 @@
 package com.moneydance.modules.features.budgetbars;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Graphics;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.Calendar;
 import java.util.Iterator;
 import java.util.List;
 
@@ -46,8 +49,9 @@ import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.ToolTipManager;
 
+import com.infinitekind.moneydance.model.CurrencyTable;
 import com.infinitekind.moneydance.model.CurrencyType;
-import com.infinitekind.moneydance.model.CurrencyUtil;
+import com.infinitekind.util.DateUtil;
 import com.moneydance.apps.md.view.gui.MoneydanceGUI;
 
 /**
@@ -60,13 +64,16 @@ public class BudgetBar extends JPanel
     // The controls on this panel needing access outside the constructor
     private JLabel categoryLabel = null;
     private JLabel budgetLabel = null;
-    private JProgressBar progressBar = null;
+    private PacingProgressBar progressBar = null;
     private JLabel spentLabel = null;
 
     // Storage for the passed in parameters
     private final DataModel dataModel;
     private final String UUID;
 
+    // The currencies of the book, used to format the values
+    private final CurrencyTable currencies;
+
     // Retrieved parameters
     private char separator;
     private Settings settings;
@@ -75,18 +82,37 @@ public class BudgetBar extends JPanel
      * Constructor to create a JPanel to display a single budget bar
      * 
      * @param mdGUI - The Moneydance GUI
+     * @param currencies - The currencies of the book, used to format the values
      * @param dataModel - The data model used for the data to display
      * @param UUID - The UUID of the account to display on this budget bar
      */
-    public BudgetBar(final MoneydanceGUI mdGUI, final DataModel dataModel, final String UUID) 
+    public BudgetBar(final MoneydanceGUI mdGUI, final CurrencyTable currencies, final DataModel dataModel, final String UUID) 
+    {
+        this(currencies, dataModel, UUID, mdGUI.getColors().sidebarBackground);
+    }
+
+     /**
+     * Constructor to create a JPanel to display a single budget bar with the
+     * background color given rather than the color of the Moneydance GUI.
+     * 
+     * @param currencies - The currencies of the book, used to format the values
+     * @param dataModel - The data model used for the data to display
+     * @param UUID - The UUID of the account to display on this budget bar
+     * @param background - The background color of the progress bar
+     */
+    BudgetBar(final CurrencyTable currencies, final DataModel dataModel, final String UUID, final Color background) 
     {
         // Call the JPanel constructor
         super();
 
         // Save parameters for later
+        this.currencies = currencies;
         this.dataModel = dataModel;
         this.UUID = UUID;
 
+        // Get the settings for the widget
+        this.settings = Settings.getInstance();
+
         // Get the decimal separator for this locale
         DecimalFormat format = (DecimalFormat) DecimalFormat.getInstance();
         DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
@@ -109,9 +135,9 @@ public class BudgetBar extends JPanel
         this.add(this.spentLabel, BorderLayout.LINE_START);
 
         // Create and configure the progress bar
-        this.progressBar = new JProgressBar();
+        this.progressBar = new PacingProgressBar();
         this.progressBar.setStringPainted(false);
-        this.progressBar.setBackground(mdGUI.getColors().sidebarBackground);
+        this.progressBar.setBackground(background);
         this.add(this.progressBar, BorderLayout.CENTER);
 
         // Display the budget value at the right end of the budget bar
@@ -124,7 +150,8 @@ public class BudgetBar extends JPanel
     }
 
     /**
-     * Method to refresh the data displayed on this bar
+     * Method to refresh the data displayed on this bar. All the values 
+     * displayed are read from a single snapshot of the data model.
      */
     public void refresh()
     {
@@ -133,11 +160,18 @@ public class BudgetBar extends JPanel
         if (this.dataModel == null)
             return;
 
+        // Get the current snapshot of the data
+        final ModelSnapshot snapshot = this.dataModel.getSnapshot();
+        if (snapshot == null)
+            return;
+
         // Get the settings for the widget
         this.settings = Settings.getInstance();
 
         // Get the budget category item
-        final BudgetCategoryItem item = this.dataModel.getCategoryItem(this.UUID);
+        final BudgetCategoryItem item = snapshot.getCategoryItem(this.UUID);
+        if (item == null)
+            return;
 
         // Retrieve the values for this category
         final long budget = item.getBudgetTotal(); 
@@ -154,7 +188,7 @@ public class BudgetBar extends JPanel
             
         // Update the amount spent
         if (this.spentLabel != null)
-            this.spentLabel.setText(this.formatValue(item, actual));      
+            this.spentLabel.setText(this.formatValue(snapshot, item, actual));      
 
         // Update the progress bar
         if (this.progressBar != null)
@@ -186,7 +220,10 @@ public class BudgetBar extends JPanel
             this.progressBar.setStringPainted(true);
 
             // Update the text for the amount remaining
-            this.progressBar.setString(this.formatValue(item, budget-actual));            
+            this.progressBar.setString(this.formatValue(snapshot, item, budget-actual));            
+
+            // The pacing marker and the month to date spending follow today's date
+            this.progressBar.setPacing(snapshot, item);
 
             /*
              * Create the tooltip text
@@ -202,8 +239,11 @@ public class BudgetBar extends JPanel
             else
                 tipText.append("<center><b>"+(Constants.PERCENT_FORMAT.format(100 * actual / budget))+"%</b></center>");
 
+            // The month to date spending is added here when the tooltip is shown
+            final int monthToDateAt = tipText.length();
+
             // Go process the root category
-            ProcessCategory root = new ProcessCategory(this.UUID, this.dataModel, item.getIndentLevel(), true, this.settings.getAllAncestors()); 
+            ProcessCategory root = new ProcessCategory(this.UUID, snapshot, item.getIndentLevel(), true, this.settings.getAllAncestors()); 
 
             // Do we have child information to add
             if (root.getTipText().length() != 0)
@@ -219,7 +259,7 @@ public class BudgetBar extends JPanel
                 }
 
             // Set the tooltip text
-            this.progressBar.setToolTipText(tipText.toString());
+            this.progressBar.setTipText(tipText.substring(0, monthToDateAt), tipText.substring(monthToDateAt));
 
             // Hack to change the hover dismiss delay without affecting everyone else
             this.progressBar.addMouseListener(new MouseAdapter() {
@@ -242,26 +282,72 @@ public class BudgetBar extends JPanel
 
             // Update the amount budgeted
             if (this.budgetLabel != null)
-                this.budgetLabel.setText(this.formatValue(item, budget));
+                this.budgetLabel.setText(this.formatValue(snapshot, item, budget));
             }
     }
 
+    /**
+     * Get the amount of the budget that would have been spent by today if
+     * spending were spread evenly over each day of the period. The months
+     * before this month count in full and this month is pro-rated by day.
+     * 
+     * @param snapshot - The snapshot of the data in use.
+     * @param item - The budget category item.
+     * @param today - Today's date (YYYYMMDD).
+     * @return long - The pro-rated budget or -1 if today is not in the period.
+     */
+    private long getPaceBudget(final ModelSnapshot snapshot, final BudgetCategoryItem item, final int today)
+    {
+        // Today must be within the period displayed
+        final int epochMonth = EpochMonth.ofDate(today);
+        if (EpochMonth.getYear(epochMonth) != snapshot.getYear())
+            return -1;
+        final int thisMonth = EpochMonth.getMonth(epochMonth);
+        if ((thisMonth < snapshot.getStartMonth()) || (thisMonth >= snapshot.getStartMonth() + snapshot.getMonths()))
+            return -1;
+
+        // Add the full budget of the months before this one
+        long paceBudget = 0;
+        for (int month = snapshot.getStartMonth(); month < thisMonth; month++)
+            paceBudget += item.getBudgetValueForMonth(month);
+
+        // Add the budget for this month up to and including today
+        return paceBudget + this.proRate(item.getBudgetValueForMonth(thisMonth), today);
+    }
+
+    /**
+     * Pro-rate a month's budget to the portion through the given day.
+     * 
+     * @param monthBudget - The budget for the month.
+     * @param date - The date to pro-rate through (YYYYMMDD).
+     * @return long - The pro-rated budget.
+     */
+    private long proRate(final long monthBudget, final int date)
+    {
+        final Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(date / 10000, (date / 100) % 100 - 1, 1);
+        final int daysInMonth = cal.getActualMaximum(Calendar.DAY_OF_MONTH);
+        return monthBudget * (date % 100) / daysInMonth;
+    }
+
     
     /** 
      * Method to convert currency format as needed and create a string formatted
      * for the target currency.
      * 
+     * @param snapshot - The snapshot of the data the value is from.
      * @param item - The budget category item we're formatting.
      * @param value - The numeric value to format.
      * @return String - The converted nd formatted value.
      */
-    String formatValue(BudgetCategoryItem item, long value) {
+    String formatValue(ModelSnapshot snapshot, BudgetCategoryItem item, long value) {
         if (this.settings.getUseCategoryCurrency())
-            return (item.getCurrencyType().formatFancy(value, this.separator));
+            return (this.currencies.getCurrencyByIDString(item.getCurrency()).formatFancy(value, this.separator));
         else
             {
-            CurrencyType toType = this.dataModel.getBook().getCurrencies().getBaseType();
-            return (toType.formatFancy(CurrencyUtil.convertValue(value, item.getCurrencyType(), toType), this.separator));
+            CurrencyType toType = this.currencies.getCurrencyByIDString(snapshot.getBaseCurrency());
+            return (toType.formatFancy(snapshot.convertValue(value, item.getCurrency(), snapshot.getBaseCurrency()), this.separator));
             }
     }
 
@@ -278,25 +364,31 @@ public class BudgetBar extends JPanel
         // Total child spending for this category
         long childSpent = 0;
 
+        // The snapshot of the data model in use
+        private final ModelSnapshot snapshot;
+
         /**
          * Constructor to create a parent category processor
          * 
          * @param UUID - The UUID of the parent category to process
-         * @param dataModel - The data model in use
+         * @param snapshot - The snapshot of the data model in use
          * @param rootIndent - The indent level of the root category
          * @param isRoot - True when processing the root category
          * @param showAllAncestors - True when showing all ancestor categories
          */
-        public ProcessCategory(String UUID, DataModel dataModel, int rootIndent, boolean isRoot, boolean showAllAncestors) 
+        public ProcessCategory(String UUID, ModelSnapshot snapshot, int rootIndent, boolean isRoot, boolean showAllAncestors) 
         {
+            // Save the snapshot for later
+            this.snapshot = snapshot;
+
             // Get the budget category item
-            final BudgetCategoryItem item = dataModel.getCategoryItem(UUID);
+            final BudgetCategoryItem item = snapshot.getCategoryItem(UUID);
 
             // It this item has children then get a list of them
             if (item.hasChildren())
                 {
                 // Get the direct children of this parent category
-                final List<BudgetCategoryItem> children = dataModel.getBudgetCategoriesList().getChildren(UUID, false);
+                final List<BudgetCategoryItem> children = snapshot.getChildren(UUID);
 
                 // Iterator
                 final Iterator<BudgetCategoryItem> it = children.iterator();
@@ -318,22 +410,22 @@ public class BudgetBar extends JPanel
                     if (child.hasChildren())
                         {
                         // Go process this child as a parent
-                        ProcessCategory processChild = new ProcessCategory(child.getAccount().getUUID(), dataModel, rootIndent, false, showAllAncestors);
+                        ProcessCategory processChild = new ProcessCategory(child.getCategory().getID(), snapshot, rootIndent, false, showAllAncestors);
                         
                         // Append the tip text from this child
                         this.tipText.append(processChild.getTipText());
 
                         // Convert the currency as needed then add the child spent to our total
-                        if (child.getCurrencyType() != item.getCurrencyType())
-                            this.childSpent += CurrencyUtil.convertValue(childActual, child.getCurrencyType(), item.getCurrencyType());
+                        if (!child.getCurrency().equals(item.getCurrency()))
+                            this.childSpent += snapshot.convertValue(childActual, child.getCurrency(), item.getCurrency());
                         else
                             this.childSpent += childActual;
                         }
                     else
                         {
                         // Convert the currency as needed then add the child spent to our total
-                        if (child.getCurrencyType() != item.getCurrencyType())
-                            this.childSpent += CurrencyUtil.convertValue(childActual, child.getCurrencyType(), item.getCurrencyType());
+                        if (!child.getCurrency().equals(item.getCurrency()))
+                            this.childSpent += snapshot.convertValue(childActual, child.getCurrency(), item.getCurrency());
                         else
                             this.childSpent += childActual;
 
@@ -350,7 +442,7 @@ public class BudgetBar extends JPanel
                             this.tipText.append("<tr><td>"+indentStr+child.getShortName()+"&nbsp;&nbsp;</td>");
 
                             // Add spent amount
-                            this.tipText.append("<td align='right'>"+BudgetBar.this.formatValue(child, childActual)+"&nbsp;&nbsp;</td>");
+                            this.tipText.append("<td align='right'>"+BudgetBar.this.formatValue(this.snapshot, child, childActual)+"&nbsp;&nbsp;</td>");
 
                             // Add spent %
                             if (childBudget == 0)
@@ -359,11 +451,11 @@ public class BudgetBar extends JPanel
                                 this.tipText.append("<td align='right'>"+(Constants.PERCENT_FORMAT.format(100.0d * childActual / childBudget))+"%&nbsp;&nbsp;</td>");
                         
                             // Add Remaining amount
-                            this.tipText.append("<td align='right'>"+BudgetBar.this.formatValue(child, childBudget - childActual)+"&nbsp;&nbsp;</td>");
+                            this.tipText.append("<td align='right'>"+BudgetBar.this.formatValue(this.snapshot, child, childBudget - childActual)+"&nbsp;&nbsp;</td>");
 
                             // Add budget amount
-                            this.tipText.append("<td align='right'>"+BudgetBar.this.formatValue(child, childBudget)+"&nbsp;&nbsp;</td>");
-                            BudgetBar.this.formatValue(child, childBudget);
+                            this.tipText.append("<td align='right'>"+BudgetBar.this.formatValue(this.snapshot, child, childBudget)+"&nbsp;&nbsp;</td>");
+                            BudgetBar.this.formatValue(this.snapshot, child, childBudget);
                             // End of row
                             this.tipText.append("</tr>");
                             }
@@ -400,7 +492,7 @@ public class BudgetBar extends JPanel
             if ((actual > 0) || (budget > 0))
                 {
                 // Add spent amount
-                preTipText.append("<td align='right'>"+BudgetBar.this.formatValue(item, actual)+"&nbsp;&nbsp;</td>");
+                preTipText.append("<td align='right'>"+BudgetBar.this.formatValue(this.snapshot, item, actual)+"&nbsp;&nbsp;</td>");
 
                 // Add spent %
                 if (budget == 0)
@@ -409,10 +501,10 @@ public class BudgetBar extends JPanel
                     preTipText.append("<td align='right'>"+(Constants.PERCENT_FORMAT.format(100.0d * actual / budget))+"%&nbsp;&nbsp;</td>");
             
                 // Add Remaining amount
-                preTipText.append("<td align='right'>"+BudgetBar.this.formatValue(item, budget-actual)+"&nbsp;&nbsp;</td>");
+                preTipText.append("<td align='right'>"+BudgetBar.this.formatValue(this.snapshot, item, budget-actual)+"&nbsp;&nbsp;</td>");
 
                 // Add budget amount
-                preTipText.append("<td align='right'>"+BudgetBar.this.formatValue(item, budget)+"&nbsp;&nbsp;</td>");
+                preTipText.append("<td align='right'>"+BudgetBar.this.formatValue(this.snapshot, item, budget)+"&nbsp;&nbsp;</td>");
                 }
 
             // End of row
@@ -436,4 +528,91 @@ public class BudgetBar extends JPanel
             return this.childSpent;
         }
     }
+
+    /**
+     * Progress bar that also draws a marker showing where spending should be
+     * if the budget were spent evenly through the period. The marker and the
+     * month to date spending in the tooltip are computed from the current 
+     * date each time they are shown so they stay right after midnight.
+     */
+    private class PacingProgressBar extends JProgressBar
+    {
+        private static final long serialVersionUID = 1L;
+
+        // The snapshot and the budget category item the marker is for
+        private ModelSnapshot snapshot = null;
+        private BudgetCategoryItem item = null;
+
+        // The tooltip text before and after the month to date spending
+        private String tipStart = null;
+        private String tipEnd = null;
+
+        /**
+         * Set the data the pacing marker is drawn from.
+         * 
+         * @param snapshot - The snapshot of the data in use.
+         * @param item - The budget category item.
+         */
+        void setPacing(final ModelSnapshot snapshot, final BudgetCategoryItem item)
+        {
+            this.snapshot = snapshot;
+            this.item = item;
+            this.repaint();
+        }
+
+        /**
+         * Set the tooltip text. The month to date spending is inserted between
+         * the two parts when the tooltip is shown.
+         * 
+         * @param tipStart - The tooltip text before the month to date spending.
+         * @param tipEnd - The tooltip text after the month to date spending.
+         */
+        void setTipText(final String tipStart, final String tipEnd)
+        {
+            this.tipStart = tipStart;
+            this.tipEnd = tipEnd;
+
+            // Register the tooltip with the tooltip manager
+            this.setToolTipText(tipStart + tipEnd);
+        }
+
+        @Override
+        public String getToolTipText()
+        {
+            if ((this.tipStart == null) || (this.snapshot == null))
+                return super.getToolTipText();
+
+            // Month to date spending compared to the pro-rated budget for this month
+            final int today = DateUtil.getStrippedDateInt();
+            final long monthBudget = this.item.getBudgetValueForMonth(EpochMonth.getMonth(EpochMonth.ofDate(today)));
+            if ((BudgetBar.this.getPaceBudget(this.snapshot, this.item, today) < 0) || (monthBudget == 0))
+                return this.tipStart + this.tipEnd;
+            return this.tipStart + "<center>Month to date: "
+                + BudgetBar.this.formatValue(this.snapshot, this.item, this.item.getActualMonthToDate()) + " of "
+                + BudgetBar.this.formatValue(this.snapshot, this.item, BudgetBar.this.proRate(monthBudget, today)) + "</center>"
+                + this.tipEnd;
+        }
+
+        @Override
+        protected void paintComponent(final Graphics g)
+        {
+            super.paintComponent(g);
+
+            // There is no marker until there is data
+            if (this.snapshot == null)
+                return;
+
+            // Find where spending should be today
+            final long budget = this.item.getBudgetTotal();
+            final long paceBudget = BudgetBar.this.getPaceBudget(this.snapshot, this.item, DateUtil.getStrippedDateInt());
+            if ((paceBudget < 0) || (budget <= 0))
+                return;
+            final float pace = Math.min(1.0f, (float) paceBudget / budget);
+
+            // Draw the marker inside the border of the bar
+            final int x = Math.round(pace * (this.getWidth() - 1));
+            g.setColor(this.getForeground().darker());
+            g.fillRect(Math.max(0, x - 1), 0, 2, this.getHeight());
+        }
+    }
 }
@@ -33,6 +33,7 @@ package com.moneydance.modules.features.budgetbars;
 import java.awt.AWTEvent;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -50,6 +51,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSlider;
+import javax.swing.JTextArea;
 import javax.swing.ListSelectionModel;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingConstants;
@@ -69,6 +71,9 @@ public class BudgetBarEdit extends JDialog implements ChangeListener
     // The parent widget
     BudgetBars parent;
 
+    // The list of all the categories that can be selected
+    private final BudgetCategoriesList allCategories;
+
     // List of available monthly budgets that can be edited
     private MyBudgetList budgetList;
 
@@ -102,13 +107,16 @@ public class BudgetBarEdit extends JDialog implements ChangeListener
 
     /**
      * @param parent - The parent widget this editor is for.
+     * @param allCategories - The list of all the categories that can be 
+     * selected, built on the model thread before the editor is opened.
      */
-    public BudgetBarEdit(final BudgetBars parent) 
+    public BudgetBarEdit(final BudgetBars parent, final BudgetCategoriesList allCategories) 
     {
         super();
 
-        // Save the parent for later
+        // Save the parent and the categories for later
         this.parent = parent;
+        this.allCategories = allCategories;
 
         // Title for the edit window
         this.setTitle("Monthly Budget Bar Settings");
@@ -394,6 +402,21 @@ public class BudgetBarEdit extends JDialog implements ChangeListener
             }
         });
 
+        /*
+        ** Diagnostics Button
+        */
+        final JButton diagnosticsButton = new JButton("Diagnostics");
+        diagnosticsButton.setToolTipText("Show how long each phase of the last refreshes took");
+        bottomPanel.add(diagnosticsButton,GridC.getc(2,0).insets(10,10,20,10));
+        
+        // Create an action listener to dispatch the action when this button is clicked
+        diagnosticsButton.addActionListener(new ActionListener() {
+        @Override
+        public void actionPerformed(final ActionEvent e) {
+            BudgetBarEdit.this.showDiagnostics();
+            }
+        });
+
         // Cause the window to be sized according to the contents
         this.pack();
 
@@ -462,8 +485,8 @@ public class BudgetBarEdit extends JDialog implements ChangeListener
     void loadAvailableList(final Object[] selectedList)
     {
         // Get the available categories
-        final DataModel dataModel = this.parent.getDataModel();
-        for (final String UUID: dataModel.getBudgetCategoriesList().getKeySet())
+        final BudgetCategoriesList allCategories = this.allCategories;
+        for (final String UUID: allCategories.getKeySet())
             {
             // Flag to indicate if this UUID is found on the selected list
             boolean found = false;
@@ -485,7 +508,7 @@ public class BudgetBarEdit extends JDialog implements ChangeListener
             
             // If not on the selected list, add the category to the available model
             if (!found)
-                this.availableModel.addElement(new CategoryListItem(UUID, dataModel.getCategoryItem(UUID).getFullName()));
+                this.availableModel.addElement(new CategoryListItem(UUID, allCategories.getCategoryItem(UUID).getFullName()));
             }
     }
     
@@ -776,4 +799,29 @@ public class BudgetBarEdit extends JDialog implements ChangeListener
         // Hide the edit dialog
         this.setVisible(false);
     }
+
+    /**
+     * Method to show the timings and counts of the last refreshes. The 
+     * samples can be reset so the effect of a change can be measured.
+     */
+    private void showDiagnostics()
+    {
+        final RefreshDiagnostics diagnostics = this.parent.getDiagnostics();
+        final Object[] options = {"Close", "Reset"};
+        int response;
+        do
+            {
+            // Show the report in a fixed width font so the columns line up
+            final JTextArea report = new JTextArea(diagnostics.getReport());
+            report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, report.getFont().getSize()));
+            report.setEditable(false);
+
+            response = JOptionPane.showOptionDialog(this, new JScrollPane(report),
+            "Refresh Diagnostics (Monthly Budget Bars)",
+            JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE, null, options, options[0]);
+            if (response == 1)  // Reset
+                diagnostics.reset();
+            }
+        while (response == 1);
+    }
 }
@@ -32,13 +32,18 @@ package com.moneydance.modules.features.budgetbars;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.JComponent;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import com.infinitekind.moneydance.model.AbstractTxn;
 import com.infinitekind.moneydance.model.Account;
@@ -47,24 +52,24 @@ import com.infinitekind.moneydance.model.AccountListener;
 import com.infinitekind.moneydance.model.Budget;
 import com.infinitekind.moneydance.model.BudgetList;
 import com.infinitekind.moneydance.model.BudgetListener;
+import com.infinitekind.moneydance.model.ParentTxn;
 import com.infinitekind.moneydance.model.TransactionListener;
 import com.moneydance.apps.md.view.HomePageView;
 import com.moneydance.apps.md.view.gui.MoneydanceGUI;
 import com.moneydance.apps.md.view.gui.MoneydanceLAF;
-import com.moneydance.awt.CollapsibleRefresher;
 
 /**
  * This class implements the Monthly Budget Bars widget.
  *
  * @author  Jerry Jones
  */
-class BudgetBars implements HomePageView, AccountListener, TransactionListener, BudgetListener {
+class BudgetBars implements HomePageView, AccountListener, TransactionListener, BudgetListener, EventStorm.Listener, DataModel.Host {
     // Storage for the passed in parameters
     private MoneydanceGUI mdGUI = null;
     private AccountBook book = null;
 
     // The current data model which may change as configuration parameters change
-    private DataModel dataModel;
+    private volatile DataModel dataModel;
 
     // List of monthly style budgets
     private MyBudgetList budgetList;
@@ -75,6 +80,9 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
     // The panel for the Budget Bars widget
     private JPanel monthlyBarsPanel;
 
+    // The top bar of the widget, null until the widget is built
+    private volatile TopBar topBar = null;
+
     // The list of budget bars being displayed
     private ArrayList<BudgetBar> barList = null;
 
@@ -87,11 +95,31 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
     // The selected categories list
     private List<CategoryListItem> selectedCats = null;
 
-    // Do not allow re-entry to getGUIView
-    boolean noReentry = false;
+    // Do not allow re-entry to getGUIView. Only used on the Swing event dispatch thread.
+    private boolean noReentry = false;
+
+    // The timings and counts of each refresh, kept across data models
+    private final RefreshDiagnostics diagnostics = new RefreshDiagnostics();
 
     // Delayed refresher to prevent multiple refresh cycles in a short period of time when changes are made
-    private final CollapsibleRefresher refresher = new CollapsibleRefresher(BudgetBars.this::doRefresh);
+    private final RefreshScheduler refresher = new RefreshScheduler(BudgetBars.this::doRefresh);
+
+    // Delayed refresher used to redisplay the bars after transaction changes were applied to the data model
+    private final RefreshScheduler barRefresher = new RefreshScheduler(BudgetBars.this::doRefreshBars);
+
+    // Transaction changes received outside of an event storm that are waiting
+    // to be applied together on the model thread, keyed by the parent 
+    // transaction and mapped to true if the parent transaction was removed
+    private final Map<AbstractTxn, Boolean> pendingChanges = new LinkedHashMap<AbstractTxn, Boolean>();
+
+    // Detects bursts of events such as an import and holds the changes until they end
+    private final EventStorm storm = new EventStorm(this);
+
+    // Background thread used to load the data model and apply changes to it so the UI isn't stalled
+    private final ExecutorService modelExecutor;
+
+    // True once the listeners have been removed, changes made since then were missed
+    private boolean changesMissed = false;
 
     /**
      * Constructor method used to create the Monthly Budget Bar widget.
@@ -99,20 +127,45 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
      * @param mdGUI - The Moneydance GUI
      */
     BudgetBars(final MoneydanceGUI mdGUI) {
+        this(mdGUI, Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "MonthlyBudgetBars-model");
+            thread.setDaemon(true);
+            return thread;
+            }));
+    }
+
+    /**
+     * Constructor method used to create the Monthly Budget Bar widget with
+     * the executor the data model work is run on.
+     * 
+     * @param mdGUI - The Moneydance GUI
+     * @param modelExecutor - The executor that loads the data model and 
+     * applies changes to it. It must run the tasks one at a time in order.
+     */
+    BudgetBars(final MoneydanceGUI mdGUI, final ExecutorService modelExecutor) {
         this.mdGUI = mdGUI;
+        this.modelExecutor = modelExecutor;
+
+        // Report the refreshes requested and run with the diagnostics
+        this.diagnostics.addScheduler("Data reload", this.refresher);
+        this.diagnostics.addScheduler("Bar redisplay", this.barRefresher);
     }
 
     /**
-     * Returns a GUI component that provides a view of the info panel for the given data file
+     * Returns a GUI component that provides a view of the info panel for the given data file.
+     * This is only called on the Swing event dispatch thread. It doesn't need to lock since
+     * the data model is only read through its published snapshots. The data model is loaded
+     * on the model thread and the budget bars are added to the panel once it is loaded.
      * 
      * @param book - The account book to use
      */
     @Override
-    public synchronized JComponent getGUIView(final AccountBook book) 
+    public JComponent getGUIView(final AccountBook book) 
     {
         // Don't allow re-entry. Otherwise we get prompted twice if the selected 
-        // budget doesn't exist.Not sure why Moneydance calls this twice. Also, 
-        // not sure why synchronized doesn't fix this.
+        // budget doesn't exist. Moneydance calls this again on the same thread
+        // while the budget selection dialog is showing, which is why locking
+        // doesn't prevent it.
         if (this.noReentry)
             // The panel could be null but Moneydance seems to be ok with that
             return this.monthlyBarsPanel;
@@ -120,14 +173,7 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
         // Prevent Moneydance from calling us twice.
         this.noReentry = true; 
 
-        // We have to reload if the configuration was edited
-        if (this.configurationChanged)
-            {
-            // Reload the data model and setup the widget
-            this.dataModel = null;
-            }
-
-        // We have to reload if the book changes or if the configuration was edited
+        // We have to reload if the book changes
         if (!book.equals(this.book))
             {   
             // Reload the data model and setup the widget
@@ -138,155 +184,232 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
             this.book = book;
             }
 
-        if (this.dataModel == null)
+        // Find the budget to use when the data model is created or the configuration was edited
+        if ((this.dataModel == null) || (this.configurationChanged))
             {
-            // Get the settings for the widget
-            this.settings = Settings.getInstance(book);
-
-            // Get the current list of monthly budgets
-            this.budgetList = new MyBudgetList(book);
+            if (!this.selectBudget(book))
+                {
+                // We can't continue without a budget
+                this.noReentry = false;
+                return null;
+                }
 
-            // Get the selected budget
-            this.budget = this.budgetList.getBudget(this.settings.getBudgetName());
-            
-            // If the selected budget was not found we have to get a new one
-            if (this.budget == null)
+            if (this.dataModel == null)
+                {
+                // Create the data model for the budget bars and load it in the background
+                this.dataModel = new DataModel(book, this);
+                this.loadModel(this.dataModel, false);
+                }
+            else
                 {
-                // Get the number of monthly budgets found
-                int budgetCount = this.budgetList.getBudgetCount();
+                // Reload the data model we have with the new configuration so
+                // the transaction index and totals it has built are kept
+                this.loadModel(this.dataModel, true);
+                }
+            }
 
-                // Get the returned budget names
-                String[] strNames =  this.budgetList.getBudgetNames();
+        // Create the panel for the widget
+        if (this.monthlyBarsPanel == null)
+            {
+            this.monthlyBarsPanel = new JPanel();
+            this.monthlyBarsPanel.setLayout(new BoxLayout(this.monthlyBarsPanel, BoxLayout.PAGE_AXIS));
+            this.monthlyBarsPanel.setForeground(this.mdGUI.getColors().homePageFG);
+            this.monthlyBarsPanel.setBorder(BorderFactory.createCompoundBorder(MoneydanceLAF.homePageBorder, BorderFactory.createEmptyBorder(0, 10, 0, 10)));
 
-                // The selected budget to use
-                String budgetName;
+            // Add the bars now if the data has already been loaded
+            this.buildBars();
+            }
+        
+        // Clear the configuration changed flag
+        this.configurationChanged = false;
 
-                if (budgetCount == 0)
-                    {
-                    // Display an error message - No budgets exist!
-                    JOptionPane.showMessageDialog( null,
-                    "No monthly style budgets have been created.  Use 'Tools:Budget Manager' to create a monthly budget before using this extension.",
-                    "Error (Monthly Budget Bars)",
-                    JOptionPane.ERROR_MESSAGE);
-
-                    // We can't continue, so exit
-                    return null;
-                    }
-                else if (budgetCount == 1) // If there is only one monthly budget available, select that one
-                    {
-                    // Get the single budget name returned
-                    budgetName = strNames[0];
-
-                    // Display an error message - No budgets exist!
-                    JOptionPane.showMessageDialog( null,
-                    "The budget '"+this.settings.getBudgetName()+"' does not exist. Using the budget named '"+budgetName+"' instead.",
-                    "Information (Monthly Budget Bars)",
-                    JOptionPane.INFORMATION_MESSAGE);
-                    }
-                else // Multiple budgets found so we have to ask the user which one to use
-                    {
-                    // Show a dialog to enable selection of the budget to copy from.
-                    budgetName = (String) JOptionPane.showInputDialog(null, 
-                    "Select the monthly budget to use for Monthly Budget Bars.",
-                    "Select Budget (Monthly Budget Bars)", 
-                    JOptionPane.QUESTION_MESSAGE, null,
-                    strNames,
-                    strNames[0]); 	// Initial choice
-                    }
+        // Clear the re-entry flag
+        this.noReentry = false;
 
-                // Set the selected budget name
-                this.settings.setBudgetName(budgetName);
-                
-                // Save the new setting
-                this.settings.saveSettings();
-                
-                // Get the selected budget
-                this.budget = this.budgetList.getBudget(budgetName);
-                if (this.budget == null)
-                    return null;    // Still no budget, let's bail.
-                }
+        // Return the GUI component for Monthly Budget Bars
+        return this.monthlyBarsPanel;
+    }
 
-            // Create the data model for the budget bars
-            this.dataModel = new DataModel(book, this);
-            }
+    /**
+     * Get the budget selected in the settings, asking the user to select 
+     * another budget if it doesn't exist. This is only called on the Swing 
+     * event dispatch thread.
+     * 
+     * @param book - The account book to use
+     * @return boolean - true if a budget was selected, false if there is no 
+     * budget to use.
+     */
+    private boolean selectBudget(final AccountBook book)
+    {
+        // Get the settings for the widget
+        this.settings = Settings.getInstance(book);
 
-        // Build the widget to display
-        if ((this.monthlyBarsPanel == null) || (this.configurationChanged))
+        // Get the current list of monthly budgets
+        this.budgetList = new MyBudgetList(book);
+
+        // Get the selected budget
+        this.budget = this.budgetList.getBudget(this.settings.getBudgetName());
+        
+        // If the selected budget was not found we have to get a new one
+        if (this.budget == null)
             {
-            // Get the selected categories to make budget bars for
-            this.selectedCats = new ArrayList<CategoryListItem>();
-            String selCatList = this.book.getRootAccount().getPreference(Constants.CATEGORIES_SELECTED, null);
-            if (selCatList != null)
-                {
-                for (final String UUID: Arrays.asList(selCatList.split("\\s*,\\s*")))
-                    {
-                    // Get the item from the UUID
-                    BudgetCategoryItem item = this.dataModel.getCategoryItem(UUID);
+            // Get the number of monthly budgets found
+            int budgetCount = this.budgetList.getBudgetCount();
 
-                    // Only add it if it's still valid
-                    if (item != null)
-                        this.selectedCats.add(new CategoryListItem(UUID, item.getFullName()));
-                    }
-                }
+            // Get the returned budget names
+            String[] strNames =  this.budgetList.getBudgetNames();
 
-            // If the configuration changed clear the old configuration and re-add the components
-            if (this.configurationChanged)
-                {
-                // Iterate the list of budget bars and remove the components
-                if (this.barList != null)
-                    {
-                    for (final BudgetBar bar:this.barList)  
-                        bar.removeAll();
-                    }
-                
-                // Empty the bar list
-                this.barList.clear();
+            // The selected budget to use
+            String budgetName;
 
-                // Remove everything from the main panel
-                this.monthlyBarsPanel.removeAll();
+            if (budgetCount == 0)
+                {
+                // Display an error message - No budgets exist!
+                JOptionPane.showMessageDialog( null,
+                "No monthly style budgets have been created.  Use 'Tools:Budget Manager' to create a monthly budget before using this extension.",
+                "Error (Monthly Budget Bars)",
+                JOptionPane.ERROR_MESSAGE);
+
+                // We can't continue, so exit
+                return false;
                 }
-            else
+            else if (budgetCount == 1) // If there is only one monthly budget available, select that one
                 {
-                // Create a new panel for the widget
-                this.monthlyBarsPanel = new JPanel();
-                this.monthlyBarsPanel.setLayout(new BoxLayout(this.monthlyBarsPanel, BoxLayout.PAGE_AXIS));
-                this.monthlyBarsPanel.setForeground(this.mdGUI.getColors().homePageFG);
-                this.monthlyBarsPanel.setBorder(BorderFactory.createCompoundBorder(MoneydanceLAF.homePageBorder, BorderFactory.createEmptyBorder(0, 10, 0, 10)));
+                // Get the single budget name returned
+                budgetName = strNames[0];
+
+                // Display an error message - No budgets exist!
+                JOptionPane.showMessageDialog( null,
+                "The budget '"+this.settings.getBudgetName()+"' does not exist. Using the budget named '"+budgetName+"' instead.",
+                "Information (Monthly Budget Bars)",
+                JOptionPane.INFORMATION_MESSAGE);
                 }
-                
-            // Add the top bar
-            this.monthlyBarsPanel.add(new TopBar(this));
-
-            // Now add bars for all the selected budget categories
-            this.barList = new ArrayList<BudgetBar>(); 
-            for (final CategoryListItem category: this.selectedCats) 
-                {   
-                final BudgetCategoryItem item = this.dataModel.getCategoryItem(category.getUUID());
-                    {
-                    if (item != null)
-                        {
-                        // Add a budget category from the list
-                        final BudgetBar bar = new BudgetBar(this.mdGUI, this.dataModel, category.getUUID());
-                        this.monthlyBarsPanel.add(bar);
-                        this.barList.add(bar);
-                        }
-                    else
-                        System.err.println("ERROR: Category does not exist. No budget bar created.");
-                    }
+            else // Multiple budgets found so we have to ask the user which one to use
+                {
+                // Show a dialog to enable selection of the budget to copy from.
+                budgetName = (String) JOptionPane.showInputDialog(null, 
+                "Select the monthly budget to use for Monthly Budget Bars.",
+                "Select Budget (Monthly Budget Bars)", 
+                JOptionPane.QUESTION_MESSAGE, null,
+                strNames,
+                strNames[0]); 	// Initial choice
                 }
 
-            // Add the footer bar
-            this.monthlyBarsPanel.add(new FooterBar(this.mdGUI));
+            // Set the selected budget name
+            this.settings.setBudgetName(budgetName);
+            
+            // Save the new setting
+            this.settings.saveSettings();
+            
+            // Get the selected budget
+            this.budget = this.budgetList.getBudget(budgetName);
+            if (this.budget == null)
+                return false;    // Still no budget, let's bail.
             }
-        
-        // Clear the configuration changed flag
-        this.configurationChanged = false;
 
-        // Clear the re-entry flag
-        this.noReentry = false; 
+        return true;
+    }
 
-        // Return the GUI component for Monthly Budget Bars
-        return this.monthlyBarsPanel;
+    /**
+     * Load a data model on the model thread and then add the budget bars for
+     * the data loaded on the Swing event dispatch thread.
+     * 
+     * @param model - The data model to load.
+     * @param reload - true to reload a data model that has already been 
+     * loaded, false to load a new data model.
+     */
+    void loadModel(final DataModel model, final boolean reload)
+    {
+        this.modelExecutor.execute(() -> {
+            if (reload)
+                model.loadData();
+            else
+                model.load();
+
+            // Add the bars for the data loaded
+            SwingUtilities.invokeLater(() -> BudgetBars.this.modelLoaded(model));
+
+            // Totals loaded from the cache are shown right away and then 
+            // verified against the book
+            if ((model.isLoadedFromCache()) && (model.verifyCache()))
+                BudgetBars.this.barRefresher.enqueueRefresh();
+            });
+    }
+
+    /**
+     * Add the budget bars once a data model has been loaded, unless the data
+     * model has since been replaced. This is only called on the Swing event
+     * dispatch thread.
+     * 
+     * @param model - The data model that was loaded.
+     */
+    void modelLoaded(final DataModel model)
+    {
+        if (this.dataModel == model)
+            this.buildBars();
+    }
+
+    /**
+     * Add the top bar, a budget bar for each of the selected categories and
+     * the footer bar to the panel, replacing whatever it had. The budget bars
+     * are only added once the data has been loaded. This is only called on 
+     * the Swing event dispatch thread.
+     */
+    private void buildBars()
+    {
+        if (this.monthlyBarsPanel == null)
+            return;
+
+        // Iterate the list of budget bars and remove the components
+        if (this.barList != null)
+            {
+            for (final BudgetBar bar:this.barList)  
+                bar.removeAll();
+            }
+
+        // Remove everything from the main panel
+        this.monthlyBarsPanel.removeAll();
+
+        // Get the selected categories to make budget bars for
+        final DataModel model = this.dataModel;
+        final boolean loaded = (model != null) && (model.getSnapshot() != null);
+        this.selectedCats = new ArrayList<CategoryListItem>();
+        String selCatList = this.book.getRootAccount().getPreference(Constants.CATEGORIES_SELECTED, null);
+        if ((selCatList != null) && (loaded))
+            {
+            for (final String UUID: Arrays.asList(selCatList.split("\\s*,\\s*")))
+                {
+                // Get the item from the UUID
+                BudgetCategoryItem item = model.getCategoryItem(UUID);
+
+                // Only add it if it's still valid
+                if (item != null)
+                    this.selectedCats.add(new CategoryListItem(UUID, item.getFullName()));
+                }
+            }
+            
+        // Add the top bar
+        this.topBar = new TopBar(this);
+        this.topBar.setUpdating(this.storm.isActive());
+        this.monthlyBarsPanel.add(this.topBar);
+
+        // Now add bars for all the selected budget categories
+        this.barList = new ArrayList<BudgetBar>(); 
+        for (final CategoryListItem category: this.selectedCats) 
+            {   
+            // Add a budget category from the list
+            final BudgetBar bar = new BudgetBar(this.mdGUI, this.book.getCurrencies(), model, category.getUUID());
+            bar.refresh();
+            this.monthlyBarsPanel.add(bar);
+            this.barList.add(bar);
+            }
+
+        // Add the footer bar
+        this.monthlyBarsPanel.add(new FooterBar(this.mdGUI));
+
+        // Lay out the panel again since it may already be displayed
+        this.monthlyBarsPanel.revalidate();
+        this.monthlyBarsPanel.repaint();
     }
 
     /** 
@@ -314,9 +437,24 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
                 // Add a listener on our budget
                 if (this.budget !=null)
                     this.budget.addBudgetListener(this);
+
+                // Transactions changed while the listeners were removed were
+                // missed so read them again from the book
+                final DataModel model = this.dataModel;
+                if ((this.changesMissed) && (model != null))
+                    {
+                    this.modelExecutor.execute(() -> {
+                        model.reloadTransactions();
+                        BudgetBars.this.barRefresher.enqueueRefresh();
+                        });
+                    }
+                this.changesMissed = false;
                 }
             else
                 {
+                // Changes made from now on are missed
+                this.changesMissed = true;
+
                 // Remove the listeners
                 this.book.removeAccountListener(this);
                 this.book.getTransactionSet().removeTransactionListener(this);
@@ -337,25 +475,98 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
     @Override
     public void refresh() 
     {
-        this.refresher.enqueueRefresh();
+        // Reload once when an event storm ends rather than during it
+        if (!this.storm.reloadRequested())
+            this.refresher.enqueueRefresh();
     }
 
     /**
-     * Actually do the refresh
+     * Actually do the refresh. The data is reloaded on the model thread and 
+     * then the budget bars are redisplayed on the Swing event dispatch thread.
      */
     public void doRefresh() 
     {
-        if (this.dataModel != null)
+        final DataModel model = this.dataModel;
+        if (model != null)
+            {
+            final long queued = System.nanoTime();
+            this.modelExecutor.execute(() -> {
+                BudgetBars.this.diagnostics.lap(RefreshDiagnostics.Phase.QUEUE_WAIT, queued);
+
+                // Load the data
+                model.loadData();
+
+                // Redisplay the budget bars
+                SwingUtilities.invokeLater(BudgetBars.this::doRefreshBars);
+                });
+            }
+    }
+
+    /**
+     * Redisplay the budget bars without reloading the data model
+     */
+    public void doRefreshBars() 
+    {
+        // The bars may only be updated on the Swing event dispatch thread
+        if (!SwingUtilities.isEventDispatchThread())
             {
-            // Load the data if so
-            this.dataModel.loadData();
+            SwingUtilities.invokeLater(BudgetBars.this::doRefreshBars);
+            return;
+            }
 
+        if ((this.dataModel != null) && (this.barList != null))
+            {
             // Iterate the list of budget bars and refresh all of them
+            final long start = System.nanoTime();
             for (final BudgetBar bar:this.barList)  
                 bar.refresh();
+            this.diagnostics.lap(RefreshDiagnostics.Phase.BAR_UPDATE, start);
             }
     }
 
+    /**
+     * Apply a single transaction change to the data model and redisplay the 
+     * budget bars if any of the totals changed. This avoids reloading the 
+     * whole data model each time a transaction is entered.
+     * 
+     * @param txn - The transaction that changed
+     * @param removed - true if the transaction was removed, false otherwise
+     */
+    private void transactionChanged(final AbstractTxn txn, final boolean removed)
+    {
+        // During an event storm the change is applied when the storm ends
+        if (this.storm.transactionChanged(txn, removed))
+            return;
+
+        final DataModel model = this.dataModel;
+        final ParentTxn parentTxn = (txn instanceof ParentTxn) ? (ParentTxn) txn : txn.getParentTxn();
+        if ((model == null) || (parentTxn == null))
+            return;
+
+        // Add the change to the batch waiting to be applied. Only the first
+        // change of a batch has to queue the task that applies it. A split
+        // removed from a transaction is a change of the transaction.
+        synchronized (this.pendingChanges)
+            {
+            final boolean queued = !this.pendingChanges.isEmpty();
+            this.pendingChanges.put(parentTxn, Boolean.valueOf((removed) && (txn == parentTxn)));
+            if (queued)
+                return;
+            }
+
+        // Apply the batch on the model thread so it is ordered with any reload
+        this.modelExecutor.execute(() -> {
+            final Map<AbstractTxn, Boolean> changes;
+            synchronized (BudgetBars.this.pendingChanges)
+                {
+                changes = new LinkedHashMap<AbstractTxn, Boolean>(BudgetBars.this.pendingChanges);
+                BudgetBars.this.pendingChanges.clear();
+                }
+            if (model.applyTransactions(changes))
+                BudgetBars.this.barRefresher.enqueueRefresh();
+            });
+    }
+
     /**
      * Called when the view should clean up everything. For example, this is called when a file is closed and the GUI
      * is reset. The view should disconnect from any resources that are associated with the currently opened data file.
@@ -367,6 +578,12 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
         // Set the view as inactive
         this.setActive(false);
 
+        // Save the totals for the next session once the model thread has 
+        // finished what it is doing. Closing the book doesn't wait for it.
+        final DataModel model = this.dataModel;
+        if (model != null)
+            this.modelExecutor.execute(model::saveCache);
+
         // Iterate the list of budget bars and remove the components
         if (this.barList != null)
             {
@@ -393,8 +610,15 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
         this.settings.setPeriod(newID);
         this.settings.saveSettings();
 
-        // Refresh the data
-        this.doRefresh();
+        // Switch the data model to the new period and redisplay the bars
+        final DataModel model = this.dataModel;
+        if (model != null)
+            {
+            this.modelExecutor.execute(() -> {
+                model.switchPeriod();
+                SwingUtilities.invokeLater(BudgetBars.this::doRefreshBars);
+                });
+            }
     }
     
     /**
@@ -404,6 +628,28 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
         return this.budget;
     }
 
+    /**
+     * Override for DataModel.Host (see DataModel.Host)
+     * 
+     * @return String - The key of the selected budget, null if there is none.
+     */
+    @Override
+    public String getBudgetKey() {
+        final Budget current = this.budget;
+        return (current == null) ? null : current.getKey();
+    }
+
+    /**
+     * Override for DataModel.Host (see DataModel.Host)
+     * 
+     * @return String - The categories selected for display, null if none 
+     * have been selected.
+     */
+    @Override
+    public String getSelectedCategories() {
+        return this.book.getRootAccount().getPreference(Constants.CATEGORIES_SELECTED, null);
+    }
+
     /**
      * Returns a unique identifier for this view.
      *  
@@ -431,6 +677,26 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
         return this.dataModel;
     }
 
+    /**
+     * Use a data model that has already been loaded, for example from a 
+     * ledger held in memory, rather than creating one in getGUIView().
+     * 
+     * @param book - The account book the listeners are registered with.
+     * @param model - The data model to use.
+     */
+    void setDataModel(final AccountBook book, final DataModel model) {
+        this.book = book;
+        this.dataModel = model;
+    }
+
+    /**
+     * @return the timings and counts of each refresh
+     */
+    @Override
+    public RefreshDiagnostics getDiagnostics() {
+        return this.diagnostics;
+    }
+
     /**
      * @return the budgetList
      */
@@ -461,17 +727,111 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
     
     /**
      * Method to set the configuration changed flag and then reload the widget
-     * after configuration changes.
+     * after configuration changes. The data model is reloaded on the model 
+     * thread, keeping what it has built that the change doesn't affect.
      */
     public void configurationChanged() {
         // Set the configuration changed flag
         this.configurationChanged = true;
 
-        // Re-create the widget with the new data
+        // Reload the data model with the new configuration and rebuild the widget
         this.getGUIView(this.book);
+    }
 
-        // Refresh the view
-        this.refresh();
+    /**
+     * Open the budget bar settings editor. The list of all the categories the
+     * editor offers is built on the model thread and the editor is then 
+     * opened on the Swing event dispatch thread so the data model is never 
+     * locked on the Swing event dispatch thread.
+     */
+    void showEditor()
+    {
+        final DataModel model = this.dataModel;
+        if (model == null)
+            return;
+
+        this.modelExecutor.execute(() -> {
+            final BudgetCategoriesList allCategories = model.loadAllCategoriesList();
+            if (allCategories != null)
+                SwingUtilities.invokeLater(() -> new BudgetBarEdit(BudgetBars.this, allCategories));
+            });
+    }
+
+    /**
+     * Show an error message. The message may come from the model thread so 
+     * the dialog is always shown on the Swing event dispatch thread.
+     * 
+     * @param message - The message to show.
+     */
+    @Override
+    public void showError(final String message)
+    {
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, message, "Error (Monthly Budget Bars)", JOptionPane.ERROR_MESSAGE));
+    }
+
+    /**
+     * Called when an event storm such as an import starts. The changes are
+     * held until it ends so show that the bars are being updated.
+     */
+    @Override
+    public void stormStarted()
+    {
+        this.showUpdating(true);
+    }
+
+    /**
+     * Called when an event storm ends to make one update for all the changes
+     * held during the storm. A small batch of transactions is applied to the
+     * totals, a large one is indexed and totaled again from the book.
+     * 
+     * @param changes - The transactions changed during the storm, mapped to
+     * true if the transaction was removed.
+     * @param reload - true if a full reload was requested during the storm.
+     */
+    @Override
+    public void stormEnded(final Map<AbstractTxn, Boolean> changes, final boolean reload)
+    {
+        final DataModel model = this.dataModel;
+        if (model == null)
+            {
+            this.showUpdating(false);
+            return;
+            }
+
+        this.modelExecutor.execute(() -> {
+            boolean changed = reload;
+            if (changes.size() > Constants.STORM_RELOAD_CHANGES)
+                {
+                model.reloadTransactions();
+                changed = true;
+                }
+            else
+                {
+                // Apply the changes first so a reload reuses the updated totals
+                changed |= model.applyTransactions(changes);
+                if (reload)
+                    model.loadData();
+                }
+
+            // Redisplay the budget bars if any of the data changed
+            if (changed)
+                BudgetBars.this.barRefresher.enqueueRefresh();
+            BudgetBars.this.showUpdating(false);
+            });
+    }
+
+    /**
+     * Show or hide the updating indicator of the top bar.
+     * 
+     * @param updating - true to show the indicator, false to hide it.
+     */
+    private void showUpdating(final boolean updating)
+    {
+        SwingUtilities.invokeLater(() -> {
+            final TopBar bar = BudgetBars.this.topBar;
+            if (bar != null)
+                bar.setUpdating(updating);
+            });
     }
 
     /*
@@ -479,37 +839,56 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
     */
     @Override
     public void accountAdded(final Account parentAccount, final Account newAccount) {
-        this.refresh();
+        this.categoryChanged(newAccount);
     }
 
     @Override
     public void accountBalanceChanged(final Account account) {
-        this.refresh();
+        // Balance changes are caused by transaction changes which are applied
+        // to the data model as they are received. They only count towards
+        // detecting an event storm.
+        this.storm.balanceChanged(account);
     }
 
     @Override
     public void accountDeleted(final Account parentAccount, final Account oldAccount) {
-        this.refresh();
+        this.categoryChanged(oldAccount);
     }
 
     @Override
     public void accountModified(final Account modifiedAccount) {
+        this.categoryChanged(modifiedAccount);
+    }
+
+    /**
+     * Called when an account is added, deleted or modified. If the account is
+     * a category the transaction totals are discarded on the model thread if
+     * they depend on the category tree, and then the widget is refreshed.
+     * 
+     * @param account - The account that changed.
+     */
+    private void categoryChanged(final Account account)
+    {
+        final DataModel model = this.dataModel;
+        if ((model != null) && ((account.getAccountType() == Account.AccountType.INCOME) || (account.getAccountType() == Account.AccountType.EXPENSE)))
+            this.modelExecutor.execute(model::categoriesChanged);
+
         this.refresh();
     }
 
     @Override
     public void transactionAdded(final AbstractTxn newTxn) {
-        this.refresh();
+        this.transactionChanged(newTxn, false);
     }
 
     @Override
     public void transactionModified(final AbstractTxn modTxn) {
-        this.refresh();
+        this.transactionChanged(modTxn, false);
     }
 
     @Override
     public void transactionRemoved(final AbstractTxn remTxn) {
-        this.refresh();
+        this.transactionChanged(remTxn, true);
     }
 
     @Override
@@ -522,6 +901,13 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
 
     @Override
     public void budgetModified(final Budget modifiedBudget) {
+        // Discard the cached budget values for this budget on the model 
+        // thread so the listener never waits for a load in progress. The 
+        // reload requested below is queued behind it.
+        final DataModel model = this.dataModel;
+        if (model != null)
+            this.modelExecutor.execute(() -> model.budgetModified(modifiedBudget));
+
         this.refresh();
     }
 
@@ -533,11 +919,8 @@ class BudgetBars implements HomePageView, AccountListener, TransactionListener,
             // Set the configuration changed flag
             this.configurationChanged = true;
 
-            // Re-create the widget with the new data
+            // Select another budget, reload the data model and rebuild the widget
             this.getGUIView(this.book);
-
-            // Refresh the view
-            this.refresh();
             }
     }
 }
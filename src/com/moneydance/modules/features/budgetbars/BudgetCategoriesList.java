@@ -37,12 +37,10 @@ import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import javax.swing.JOptionPane;
-
 import com.infinitekind.moneydance.model.Account;
-import com.infinitekind.moneydance.model.AccountBook;
 
 /**
 * This class creates a list of category items that are budgetable.
@@ -52,31 +50,87 @@ import com.infinitekind.moneydance.model.AccountBook;
 * @author  Jerry Jones
 */
 public class BudgetCategoriesList {
-    // The current data file
-    private final AccountBook book;
+    // The ID of the base currency of the ledger
+    private final String baseCurrency;
 
     // Create an empty LinkedHashMap to hold the data
     private LinkedHashMap<String, BudgetCategoryItem> lhm = null;
 
+    // The same items in insertion order so they can be retrieved by index
+    private ArrayList<BudgetCategoryItem> items = null;
+
+    // The budget values and actual totals of all the items
+    private final CategoryValueStore values;
+
+    // The currency conversion rates used with this list
+    private final CurrencyRates rates;
     
     // Create an object to track the parent as categories are added to the list
     private final parentTracker tracker = new parentTracker();
 
+    // The UUIDs of the categories found more than once while adding them
+    private final List<String> duplicateUUIDs = new ArrayList<String>();
+
     
     /** 
      * Constructor for the BudgetCategoriesList.
      * 
-     * @param book - The account book to use for the data model
+     * @param ledger - The ledger the base currency and the currency 
+     * conversion rates are read from
      */
-    public BudgetCategoriesList(AccountBook book) {
-        // Save the account book for later
-        this.book = book;
+    public BudgetCategoriesList(LedgerSource ledger) {
+        // Save the base currency for later
+        this.baseCurrency = ledger.getBaseCurrency();
 
         // Create a hash map for the categories
         this.lhm = new LinkedHashMap<String, BudgetCategoryItem>();
+
+        // Create the index ordered list of the categories
+        this.items = new ArrayList<BudgetCategoryItem>();
+
+        // Create the value store and the conversion rates
+        this.values = new CategoryValueStore();
+        this.rates = new CurrencyRates(ledger);
+    }
+
+    
+    /** 
+     * Copy constructor for the BudgetCategoriesList. The copy has its own 
+     * values so they can be changed without changing the values of the list
+     * copied, which may be in use by readers. The conversion rates are shared.
+     * 
+     * @param other - The list to copy.
+     */
+    public BudgetCategoriesList(final BudgetCategoriesList other) {
+        // Save the base currency for later
+        this.baseCurrency = other.baseCurrency;
+
+        // Copy the values and share the conversion rates
+        this.values = new CategoryValueStore(other.values);
+        this.rates = other.rates;
+
+        // Copy each of the items so they use the copied values
+        this.lhm = new LinkedHashMap<String, BudgetCategoryItem>();
+        this.items = new ArrayList<BudgetCategoryItem>(other.items.size());
+        for (final Map.Entry<String, BudgetCategoryItem> entry : other.lhm.entrySet())
+            {
+            final BudgetCategoryItem item = new BudgetCategoryItem(this.values, entry.getValue());
+            this.lhm.put(entry.getKey(), item);
+            this.items.add(item);
+            }
     }
 
     
+    /** 
+     * Get the UUIDs of the categories found more than once while the list was
+     * built. Only the first category with each UUID was added.
+     * 
+     * @return List&lt;String&gt; - The duplicate UUIDs, empty if there were none.
+     */
+    public List<String> getDuplicateUUIDs() {
+        return this.duplicateUUIDs;
+    }
+
     /** 
      * This method returns the number of categories in the budget categories
      * list.
@@ -84,7 +138,7 @@ public class BudgetCategoriesList {
      * @return int - Number of items in the list.
      */
     public int getCategoryCount() {
-        return this.lhm.size();  
+        return this.items.size();  
     }
 
     
@@ -103,65 +157,47 @@ public class BudgetCategoriesList {
      */
     public BudgetCategoryItem add(final String UUID, final String fullName, final Account.AccountType type, final int level) {
         // Create a new budget category item for this category
-        final BudgetCategoryItem bcItem = new BudgetCategoryItem(this.lhm.size(), fullName, type, this.book.getCurrencies().getBaseType(), this.tracker.getParent(level, true), level);
+        final BudgetCategoryItem bcItem = new BudgetCategoryItem(this.values, this.items.size(), fullName, type, this.baseCurrency, this.tracker.getParent(level, true), level);
         
-        // Put the item in the hash map
+        // Put the item in the hash map and the index list
         this.lhm.put(UUID, bcItem);
+        this.items.add(bcItem);
 
         // Return the new item to the caller
         return bcItem;
     }
       
     /** 
-     * Add a regular Moneydance category to the list.
+     * Add a regular ledger category to the list. Categories must be added
+     * in the order of a depth-first walk of the category tree.
      * 
-     * <p><b>Note:</b> A category in Moneydance is the same thing as an account.
-     * 
-     * @param acct - The account object of the category to add.
-     * Account.AccountType.Income (Income) or Account.AccountType.EXPENSE (Expenses).
+     * @param category - The ledger category to add.
+     * @param indentLevel - The indent level of the category. Categories 
+     * directly under Income or Expenses are at level 2 and each sub-category
+     * is one level deeper.
+     * @param hasChildren - true if the category may have active children, 
+     * false otherwise. Sub-categories added after it are given it as their 
+     * parent, so this may be true when none of them are added as long as 
+     * the item is corrected with setHasChildren() once they have been.
      * @return BudgetCategoryItem - Returns the BudgetCategoryItem object created 
      * for this category.
      */
-    public BudgetCategoryItem add(final Account acct) {   
-        // Prompt the user if a duplicate category UUID is found and then exit 
-        // without adding the category.
-        if (this.lhm.containsKey(acct.getUUID()))
+    public BudgetCategoryItem add(final LedgerSource.Category category, final int indentLevel, final boolean hasChildren) {   
+        // Remember a duplicate category UUID and then exit without adding the
+        // category. The list is built on the model thread so the user is 
+        // told about it later on the Swing event dispatch thread.
+        if (this.lhm.containsKey(category.getID()))
             {
-            // Display a warning message - Duplicate UUID!
-            JOptionPane.showMessageDialog( null,
-            "The UUID "+acct.getUUID()+" has been found more than once and this one will be ignored. Something is seriously wrong here!",
-            "Error (Monthly Budget Bars)",
-            JOptionPane.ERROR_MESSAGE);
+            this.duplicateUUIDs.add(category.getID());
             return null;
             }
 
-        // Get the sub-accounts of this account
-        final List <Account> subAccts = acct.getSubAccounts();
-        
-        // Loop through the sub categories of this category to see if it has any active children
-        // You can't simply use acct.getSubAccountCount() as it will also count inactive accounts.
-        boolean hasChildren = false;
-        for (final Iterator<Account> i = subAccts.iterator(); i.hasNext();) {
-            final Account item = i.next();
-            if ((!item.getAccountOrParentIsInactive()) && (!item.getHideOnHomePage()))
-                {
-                // We only have to find one to declare that this category has children
-                hasChildren = true;
-                break;
-                }
-        }
-
-        // Get the full account name of the category item
-        final String fullName = acct.getFullAccountName();
-
-        // Get the indent level of this category
-        final int indentLevel = BudgetCategoriesList.calcIndentLevel(fullName);
-        
         // Create a new budget category item for this category
-        final BudgetCategoryItem bcItem = new BudgetCategoryItem(this.lhm.size(), acct, acct.getAccountType(), acct.getCurrencyType(), this.tracker.getParent(indentLevel, hasChildren), indentLevel, hasChildren);
+        final BudgetCategoryItem bcItem = new BudgetCategoryItem(this.values, this.items.size(), category, this.tracker.getParent(indentLevel, hasChildren), indentLevel, hasChildren);
         
-        // Put the item in the hash map
-        this.lhm.put(acct.getUUID(), bcItem);
+        // Put the item in the hash map and the index list
+        this.lhm.put(category.getID(), bcItem);
+        this.items.add(bcItem);
 
         // Return the new item to the caller
         return bcItem;
@@ -182,6 +218,37 @@ public class BudgetCategoriesList {
     }
 
 
+    /**
+     * Get the store holding the budget values and actual totals of the items
+     * in this list.
+     * 
+     * @return CategoryValueStore - The value store for this list.
+     */
+    CategoryValueStore getValues() {
+        return this.values;
+    }
+
+
+    /** 
+     * Get the base currency of the ledger the list was built from.
+     * 
+     * @return String - The ID of the base currency.
+     */
+    String getBaseCurrency() {
+        return this.baseCurrency;
+    }
+
+
+    /** 
+     * Get the currency conversion rates used with this list.
+     * 
+     * @return CurrencyRates - The conversion rates for this list.
+     */
+    CurrencyRates getRates() {
+        return this.rates;
+    }
+
+
     /**
      * Method to retrieve a Collection of BudgetCategoryItems.
      * 
@@ -210,8 +277,10 @@ public class BudgetCategoriesList {
      * to the index provided. Returns null if the index is not valid.
      */
     public BudgetCategoryItem getCategoryItemByIndex(final int index) {
-        final Set<String> keys = this.lhm.keySet();
-        return this.lhm.get(keys.toArray()[index]);
+        if ((index < 0) || (index >= this.items.size()))
+            return null;
+        else
+            return this.items.get(index);
     }
 
 
@@ -252,13 +321,94 @@ public class BudgetCategoriesList {
         return childList;
     }
 
+    /** 
+     * Roll the budget values and actual totals of every category up into its
+     * parents. This must be called once after the values of all the categories
+     * have been loaded. 
+     * 
+     * <p>Categories are visited in reverse index order. Since children always
+     * follow their parent in the list this is a post-order walk, so each 
+     * category already includes all of its descendants when it is folded into
+     * its parent.
+     */
+    public void rollup() {
+        for (int i = this.items.size() - 1; i > 0; i--)
+            {
+            final BudgetCategoryItem child = this.items.get(i);
+            if (child.getParentIndex() == -1)
+                continue;
+
+            final BudgetCategoryItem parent = this.items.get(child.getParentIndex());
+            final boolean convert = !child.getCurrency().equals(parent.getCurrency());
+
+            // The root category is the Income-Expense row so expenses are subtracted from it
+            final boolean negate = (parent.getCategoryType() == Account.AccountType.ROOT) && (child.getCategoryType() != Account.AccountType.INCOME);
+
+            for (int month = 1; month <= 12; month++)
+                {
+                long budget = this.values.getBudget(month, i);
+                long actual = this.values.getActual(month, i);
+
+                // Convert the child currency to the parent currency if needed
+                if (convert)
+                    {
+                    budget = this.rates.convert(budget, child.getCurrency(), parent.getCurrency());
+                    actual = this.rates.convert(actual, child.getCurrency(), parent.getCurrency());
+                    }
+
+                if (negate)
+                    {
+                    budget = -budget;
+                    actual = -actual;
+                    }
+
+                this.values.addBudget(month, parent.getIndex(), budget);
+                this.values.addBudget(CategoryValueStore.TOTAL, parent.getIndex(), budget);
+                this.values.addActual(month, parent.getIndex(), actual);
+                this.values.addActual(CategoryValueStore.TOTAL, parent.getIndex(), actual);
+                }
+
+            // Roll up the current month to date the same way
+            long monthToDate = this.values.getActual(CategoryValueStore.MONTH_TO_DATE, i);
+            if (convert)
+                monthToDate = this.rates.convert(monthToDate, child.getCurrency(), parent.getCurrency());
+            this.values.addActual(CategoryValueStore.MONTH_TO_DATE, parent.getIndex(), negate ? -monthToDate : monthToDate);
+            }
+    }
+
+    /** 
+     * Check if this list has the same categories in the same order with the
+     * same values as another list.
+     * 
+     * @param other - The list to compare with.
+     * @return boolean - true if the lists are the same, false otherwise.
+     */
+    public boolean hasSameValues(final BudgetCategoriesList other) {
+        // The categories must be the same and in the same order
+        if (this.items.size() != other.items.size())
+            return false;
+        final Iterator<String> otherKeys = other.getKeySet().iterator();
+        for (final String UUID : this.getKeySet())
+            {
+            if (!UUID.equals(otherKeys.next()))
+                return false;
+            }
+
+        for (int i = 0; i < this.items.size(); i++)
+            {
+            if (this.items.get(i).isActualsIncluded() != other.items.get(i).isActualsIncluded())
+                return false;
+            }
+        return this.values.hasSameValues(other.values, this.items.size());
+    }
+
     /**
     * Track parents for items in the category list
     * This class keeps track of the parents at each level in the category
     * list so that children budgets can roll up properly to their parents.
     * 
     * <p><b>Note:</b> Levels are based on the indent level of each category.
-    * See calcIndentLevel for more information.
+    * See add(LedgerSource.Category, int, boolean) for more information.
     *
     * @author  Jerry Jones
     */
@@ -335,7 +485,7 @@ public class BudgetCategoriesList {
                 this.stack.addFirst(new level(this.currentChildLevel, this.currentParentIndex));
 
                 // Set the current parent index to the index of this category when it is added
-                this.currentParentIndex = BudgetCategoriesList.this.lhm.size();
+                this.currentParentIndex = BudgetCategoriesList.this.items.size();
 
                 // Set the children's indent level 
                 this.currentChildLevel = indentLevel + 1;
@@ -344,24 +494,4 @@ public class BudgetCategoriesList {
             return parent;
         } 
     }
-
-    
-    /** 
-     * This method calculates the indent level given a full category name.
-     * 
-     * @param fullAcctName - The full account name i.e. Auto:Fuel.
-     * @return int - The indent level of the category. For "Auto:fuel" 3 would
-     * be returned.
-     */
-    private static int calcIndentLevel(final String fullAcctName) {
-        // Start at 2 instead of 0 to account for special "Income", "Expense", and "Totals" top level categories
-        int level = 2;
-        for (int i = 0; i < fullAcctName.length(); i++) 
-            {
-            if (fullAcctName.charAt(i) == ':')
-                level++;
-            }
-
-        return level;
-    }
 }
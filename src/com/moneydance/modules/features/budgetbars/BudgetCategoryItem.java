@@ -31,9 +31,6 @@
 package com.moneydance.modules.features.budgetbars;
 
 import com.infinitekind.moneydance.model.Account;
-import com.infinitekind.moneydance.model.Account.AccountType;
-import com.infinitekind.moneydance.model.CurrencyType;
-import com.infinitekind.moneydance.model.CurrencyUtil;
 
 /**
 * Class for budget category items
@@ -42,6 +39,10 @@ import com.infinitekind.moneydance.model.CurrencyUtil;
 *
 * <p><b>Note:</b> In Moneydance a category is just another account.
 *
+* <p>The setters may only be used while the list holding the item is being
+* built or on a copy of a list, never on a list that has been published in a
+* ModelSnapshot.
+*
 * @author  Jerry Jones
 */
 final class BudgetCategoryItem {
@@ -51,8 +52,8 @@ final class BudgetCategoryItem {
     // The index of this item
     private final int index;
 
-    // The account for tis category
-    private final Account account;
+    // The ledger category for this category
+    private final LedgerSource.Category category;
 
     // The short name for this category. This is the final name without parents
     // prepended i.e. "Fuel" not "Auto:Fuel"
@@ -69,50 +70,56 @@ final class BudgetCategoryItem {
     // Account.AccountType.Income (Income) or Account.AccountType.EXPENSE (Expenses)
     private final Account.AccountType categoryType;
 
-    // The currency type for this category
-    private final CurrencyType currencyType;
+    // The ID of the currency for this category
+    private final String currency;
     
     // WHen true, this category has children and no budget values should exist for this category, 
-    // only totals of the child items budgets.
-    private final boolean hasChildren; 
+    // only totals of the child items budgets. It is set once the sub-categories
+    // of the category have been added while the list is built.
+    private boolean hasChildren; 
 
-    // budgetValues [0] is not used, [1...12] each monthly budget, [13] overall budget total for this category
-    private final Long budgetValues[] = {0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L};
+    // When true, the transactions of this category are included in the actual totals
+    private boolean actualsIncluded = false;
 
-	// actualTotals [0] is not used, [1...12] each monthly actual total, [13] overall actual total for this category
-    private final Long actualTotals[] = {0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L};
+    // The store holding the budget values and actual totals of this category. For
+    // each, [0] is not used, [1...12] each month, [13] overall total for this category
+    private final CategoryValueStore values;
 
     /**
      * Constructor to add a normal category as opposed to a special category.
      * 
-     * @param acct - The category (account) to add.
-     * @param type - The type of account, either
-     * Account.AccountType.Income (Income) or Account.AccountType.EXPENSE (Expenses)
+     * @param values - The store holding the values for this category.
+     * @param index - The index of this category.
+     * @param category - The ledger category to add.
      * @param parent - The parent index for this category.
      * @param indent - The indent level for this category.
      * @param hasChildren - true if this category has children, false otherwise.
      */
-    BudgetCategoryItem(final int index, final Account acct, final Account.AccountType type, CurrencyType currencyType, final int parent, final int indent, final boolean hasChildren ) {
+    BudgetCategoryItem(final CategoryValueStore values, final int index, final LedgerSource.Category category, final int parent, final int indent, final boolean hasChildren ) {
+        // Save the value store and make sure it has room for this category
+        this.values = values;
+        this.values.ensureCapacity(index);
+
         // Save the index
         this.index = index;
         
-        // Save the account
-        this.account = acct;
+        // Save the category
+        this.category = category;
 
         // Save the short category name;
-        this.shortName = this.account.getAccountName();
+        this.shortName = this.category.getName();
 
         // Save the full category name;
-        this.fullName = this.account.getFullAccountName();
+        this.fullName = this.category.getFullName();
 
         // Calculate the indent level (Count colons)
         this.indentLevel = indent;
 
         // Save the Category type
-        this.categoryType = type;
+        this.categoryType = this.category.getType();
         
-        // Save the currency type
-        this.currencyType = currencyType;
+        // Save the currency
+        this.currency = this.category.getCurrency();
 
         // Save flag indicating if this category has children and thus shouldn't be edited
         this.hasChildren = hasChildren;
@@ -124,18 +131,25 @@ final class BudgetCategoryItem {
     /**
      * Constructor to add a special category (Income-Expense, Income or Expense)
      * 
+     * @param values - The store holding the values for this category.
+     * @param index - The index of this category.
      * @param name - The name of the special category.
      * @param type - Account.AccountType.ROOT (Totals),
      * Account.AccountType.Income (Income) or Account.AccountType.EXPENSE (Expenses)
+     * @param currency - The ID of the currency for this category.
      * @param parent - The parent index for this category.
      * @param indent - The indent level for this category.
      */
-    BudgetCategoryItem(final int index, final String name, final Account.AccountType type, CurrencyType currencyType, final int parent, final int indent) {
+    BudgetCategoryItem(final CategoryValueStore values, final int index, final String name, final Account.AccountType type, final String currency, final int parent, final int indent) {
+        // Save the value store and make sure it has room for this category
+        this.values = values;
+        this.values.ensureCapacity(index);
+
         // Save the index
         this.index = index;
 
-        // Special accounts don't have an account object
-        this.account = null;
+        // Special accounts don't have a ledger category
+        this.category = null;
 
         // Save the short category name;
         this.shortName = name;
@@ -149,8 +163,8 @@ final class BudgetCategoryItem {
         // Save the Category type
         this.categoryType = type;
 
-        // Save the currency type
-        this.currencyType = currencyType;
+        // Save the currency
+        this.currency = currency;
 
         // Special accounts always have children
         this.hasChildren = true;
@@ -159,14 +173,36 @@ final class BudgetCategoryItem {
         this.parentIndex = parent;
     }
 
+    /**
+     * Copy constructor to copy an item into a copied value store. The copy 
+     * has the same index so it finds the same values in the copied store.
+     * 
+     * @param values - The copied store holding the values for this category.
+     * @param other - The item to copy.
+     */
+    BudgetCategoryItem(final CategoryValueStore values, final BudgetCategoryItem other) {
+        this.values = values;
+        this.index = other.index;
+        this.category = other.category;
+        this.shortName = other.shortName;
+        this.fullName = other.fullName;
+        this.indentLevel = other.indentLevel;
+        this.categoryType = other.categoryType;
+        this.currency = other.currency;
+        this.hasChildren = other.hasChildren;
+        this.parentIndex = other.parentIndex;
+        this.actualsIncluded = other.actualsIncluded;
+    }
+
     
     /** 
-     * Get the Account object for this category.
+     * Get the ledger category for this category.
      * 
-     * @return Account - The account object.
+     * @return LedgerSource.Category - The ledger category, null for a special
+     * category.
      */
-    public Account getAccount() {
-        return this.account;
+    public LedgerSource.Category getCategory() {
+        return this.category;
     }
 
     
@@ -179,6 +215,16 @@ final class BudgetCategoryItem {
         return this.hasChildren;
     }
 
+    /** 
+     * Set the hasChildren flag for this category. This is only called while
+     * the list is being built, before it is published.
+     * 
+     * @param hasChildren - true if the category has children, false otherwise.
+     */
+    void setHasChildren(final boolean hasChildren) {
+        this.hasChildren = hasChildren;
+    }
+
 
     /**
      * Get the index of this item.
@@ -239,87 +285,77 @@ final class BudgetCategoryItem {
     }
    
     /** 
-     * @return The CurrencyType for this category
+     * @return The ID of the currency for this category
      */
-    public CurrencyType getCurrencyType() {
-        return this.currencyType;
+    public String getCurrency() {
+        return this.currency;
     }
     
     /** 
      * Get the budget total for this category.
      * 
-     * @return Long - The total of category months 1...12.
+     * @return long - The total of category months 1...12.
      */
-    public Long getBudgetTotal() {
-        return this.budgetValues[13];
+    public long getBudgetTotal() {
+        return this.values.getBudget(CategoryValueStore.TOTAL, this.index);
     }
     
     /** 
      * Get the budget amount for the month requested.
      * 
      * @param month - The month to return (1...12).
-     * @return Long - The budget value for the month requested.
+     * @return long - The budget value for the month requested.
      */
-    public Long getBudgetValueForMonth(final int month) {
-        return this.budgetValues[month];
+    public long getBudgetValueForMonth(final int month) {
+        return this.values.getBudget(month, this.index);
     }
 
     /** 
-     * Set the budget amount for the month requested.
+     * Set the budget amount for the month requested. Parent categories are
+     * not updated, see BudgetCategoriesList.rollup().
      * 
-     * @param model - The table model for the table.
-     * @param budgetCategoriesList - The budget categories list object.
      * @param month - The month to set (1...12).
      * @param value - The new budget value.
-     * @param type - The category type. Account.AccountType.Income (Income)
-     * or Account.AccountType.EXPENSE (Expenses)
      */
-    public void setBudgetValueForMonth(final DataModel model, final BudgetCategoriesList budgetCategoriesList, final int month, long value, final AccountType type) {
-        long difference = 0;
-
+    public void setBudgetValueForMonth(final int month, final long value) {
         // Get previous budgetValue
-        final Long previousValue = this.budgetValues[month];
-
-        // Calculate the difference for updating the parent
-        if ((this.parentIndex == 0) && (type == Account.AccountType.EXPENSE))
-            // If the next row is the overall totals and this is an expense change 
-            // then we need to reverse the calculation
-		    difference = previousValue - value;
-        else
-            // Calculate the difference between the old value and the new one
-            difference = value - previousValue;
+        final long previousValue = this.values.getBudget(month, this.index);
 
         // Save the new value
-        this.budgetValues[month] = value;
+        this.values.setBudget(month, this.index, value);
 
         // Keep track of the total for this budget category
-        this.budgetValues[13] = this.budgetValues[13] - previousValue + value;
+        this.values.setBudget(CategoryValueStore.TOTAL, this.index, this.values.getBudget(CategoryValueStore.TOTAL, this.index) - previousValue + value);
+    }
 
-        // Update parent if there is one
-        if (this.parentIndex != -1)
-            {
-            final BudgetCategoryItem parentItem = budgetCategoriesList.getCategoryItemByIndex(this.parentIndex);
-            if (parentItem != null)
-                {
-                // Convert the difference to the parent currency if needed
-                if (this.getCurrencyType() != parentItem.getCurrencyType())
-                    difference = CurrencyUtil.convertValue(value, this.getCurrencyType(), parentItem.getCurrencyType());
-                
-                // Update the parent
-                parentItem.setBudgetValueForMonth(model, budgetCategoriesList, month, parentItem.budgetValues[month] + difference, type);
-                }
-            else
-                System.err.println("ERROR: Parent item is null in setBudgetValueForMonth.");
-            }
+    /** 
+     * Check if the transactions of this category are included in the actual 
+     * totals. They are excluded for unbudgeted categories when ignoring 
+     * unbudgeted categories.
+     * 
+     * @return boolean - true if the actuals are included, false otherwise.
+     */
+    public boolean isActualsIncluded() {
+        return this.actualsIncluded;
+    }
+
+    /** 
+     * Set whether the transactions of this category are included in the
+     * actual totals.
+     * 
+     * @param actualsIncluded - true to include the actuals, false otherwise.
+     */
+    public void setActualsIncluded(final boolean actualsIncluded) {
+        this.actualsIncluded = actualsIncluded;
     }
 
     /** 
      * Get the actuals total for this category.
      * 
-     * @return Long - The actuals total of category months 1...12.
+     * @return long - The actuals total of category months 1...12.
      */
-    public Long getActualTotal() {
-        return this.actualTotals[13];
+    public long getActualTotal() {
+        return this.values.getActual(CategoryValueStore.TOTAL, this.index);
     }
 
     /** 
@@ -328,17 +364,17 @@ final class BudgetCategoryItem {
      * @param value = The value to set.
      */
     public void setActualTotal(final long value) {
-        this.actualTotals[13] = value;
+        this.values.setActual(CategoryValueStore.TOTAL, this.index, value);
     }
   
     /** 
      * Get the monthly actual amount for the month requested.
      * 
      * @param month - The month to return (1...12).
-     * @return Long - The actual value for the month requested.
+     * @return long - The actual value for the month requested.
      */
-    public Long getActualTotalForMonth(final int month) {
-        return this.actualTotals[month];
+    public long getActualTotalForMonth(final int month) {
+        return this.values.getActual(month, this.index);
     }
 
     /** 
@@ -348,61 +384,90 @@ final class BudgetCategoryItem {
      * @param value = The value to set.    
      */
     public void setActualTotalForMonth(final int month, final long value) {
-        this.actualTotals[month] = value;
+        this.values.setActual(month, this.index, value);
     }
    
     
     /** 
-     * This method updates the parent actual totals with the specified child
-     * item's actual spending.
+     * Get the actual total of this category for the current month up to and
+     * including today.
+     * 
+     * @return long - The month to date actual total.
+     */
+    public long getActualMonthToDate() {
+        return this.values.getActual(CategoryValueStore.MONTH_TO_DATE, this.index);
+    }
+
+    /** 
+     * Set the actual total of this category for the current month up to and
+     * including today.
+     * 
+     * @param value = The value to set.
+     */
+    public void setActualMonthToDate(final long value) {
+        this.values.setActual(CategoryValueStore.MONTH_TO_DATE, this.index, value);
+    }
+
+    /** 
+     * Add a value to the actual total of this category for the month requested
+     * and to the actual totals of each of its ancestors. This is used to apply
+     * the change made by a single transaction without reloading.
      * 
      * @param budgetCategoriesList - The budget categories list 
-     * @param childItem - The original child item that was updated
+     * @param month - The month to update (1...12).
+     * @param value - The value to add in this category's currency.
      */
-    public void updateParentActualTotals(final BudgetCategoriesList budgetCategoriesList, final BudgetCategoryItem childItem) {
-    // Update parent if it exists
-    if (this.parentIndex != -1)
-        {
-        final BudgetCategoryItem parentItem = budgetCategoriesList.getCategoryItemByIndex(this.parentIndex);
-        if (parentItem != null)
+    public void addActualForMonth(final BudgetCategoriesList budgetCategoriesList, final int month, final long value) {
+        this.addActual(budgetCategoriesList, month, value);
+        this.addActual(budgetCategoriesList, CategoryValueStore.TOTAL, value);
+    }
+
+    /** 
+     * Add a value to the month to date actual total of this category and to
+     * the month to date actual totals of each of its ancestors.
+     * 
+     * @param budgetCategoriesList - The budget categories list 
+     * @param value - The value to add in this category's currency.
+     */
+    public void addActualMonthToDate(final BudgetCategoriesList budgetCategoriesList, final long value) {
+        this.addActual(budgetCategoriesList, CategoryValueStore.MONTH_TO_DATE, value);
+    }
+
+    /** 
+     * Add a value to a column of the actual totals of this category and of
+     * each of its ancestors.
+     * 
+     * @param budgetCategoriesList - The budget categories list 
+     * @param column - The column to update (see CategoryValueStore).
+     * @param value - The value to add in this category's currency.
+     */
+    private void addActual(final BudgetCategoriesList budgetCategoriesList, final int column, final long value) {
+        // Update this category
+        this.values.addActual(column, this.index, value);
+
+        // Walk up the parent tree updating all parents
+        BudgetCategoryItem childItem = this;
+        while (childItem.parentIndex != -1)
             {
-            // Iterate through each month
-            for (int month = 1; month <= 12; month++)
+            final BudgetCategoryItem parentItem = budgetCategoriesList.getCategoryItemByIndex(childItem.parentIndex);
+            if (parentItem == null)
                 {
-                // Get the child actual total for the month
-                long childActual = childItem.getActualTotalForMonth(month);
-
-                // Convert the child currency to the parent currency if needed
-                if (childItem.getCurrencyType() != parentItem.getCurrencyType())
-                    childActual = CurrencyUtil.convertValue(childActual, childItem.getCurrencyType(), parentItem.getCurrencyType());
-                            
-                // The root account is the Income-Expense row so this needs to be treated differently
-                if (parentItem.categoryType == Account.AccountType.ROOT)
-                    {
-                    // Income adds to the Income-Expense total
-                    if (this.categoryType == Account.AccountType.INCOME)
-                        {
-                        parentItem.setActualTotalForMonth(month, parentItem.getActualTotalForMonth(month) + childActual);
-                        parentItem.setActualTotal(parentItem.getActualTotal() + childActual);
-                        }
-                    else    // Expense subtracts from the Income-Expense total
-                        {
-                        parentItem.setActualTotalForMonth(month, parentItem.getActualTotalForMonth(month) - childActual);
-                        parentItem.setActualTotal(parentItem.getActualTotal() - childActual);
-                        }
-                    }
-                else    // Regular rollup - add up expenses or income
-                    {
-                    parentItem.setActualTotalForMonth(month, parentItem.getActualTotalForMonth(month) + childActual);
-                    parentItem.setActualTotal(parentItem.getActualTotal() + childActual);
-                    }
+                System.err.println("ERROR: Parent item is null in addActual.");
+                return;
                 }
 
-            // Walk up the parent tree updating all parents
-            parentItem.updateParentActualTotals(budgetCategoriesList, childItem);
+            // Convert the value to the parent currency if needed
+            long parentValue = value;
+            if (!this.currency.equals(parentItem.currency))
+                parentValue = budgetCategoriesList.getRates().convert(value, this.currency, parentItem.currency);
+
+            // Expenses subtract from the Income-Expense total
+            if ((parentItem.categoryType == Account.AccountType.ROOT) && (childItem.categoryType != Account.AccountType.INCOME))
+                parentValue = -parentValue;
+
+            parentItem.values.addActual(column, parentItem.index, parentValue);
+
+            childItem = parentItem;
             }
-        else
-            System.err.println("ERROR: Parent item is null in updateParentActualTotals.");
-        }
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Class to index the monthly budget values of a budget by category. The
+ * budget items of the ledger are walked once and the amounts for the year requested are
+ * stored in a primitive month array for each category so that they can be 
+ * retrieved without searching the budget item list. Cumulative sums of the
+ * monthly amounts are also kept so the budget for any range of months is a
+ * single subtraction.
+ *
+ * @author  Jerry Jones
+ */
+public class BudgetIndex {
+    // The key of the budget that was indexed
+    private final String budgetKey;
+
+    // The year that was indexed (YYYY)
+    private final int year;
+
+    // Monthly budget values by category ID. [0] is not used, [1...12] each monthly budget
+    private final Map<String, long[]> budgets = new HashMap<String, long[]>();
+
+    // Cumulative budget values by category ID. [m] is the total of months 1...m
+    private final Map<String, long[]> prefixSums = new HashMap<String, long[]>();
+
+    /**
+     * Construct a budget index for the given budget and year.
+     * 
+     * @param ledger - The ledger the budget is read from.
+     * @param budgetKey - The key of the budget to index.
+     * @param year - The year to index (YYYY).
+     */
+    public BudgetIndex(final LedgerSource ledger, final String budgetKey, final int year) {
+        // Save the budget and year for later
+        this.budgetKey = budgetKey;
+        this.year = year;
+
+        // Walk the budget items once storing the amount of each monthly item in this year
+        for (final LedgerSource.BudgetItem item : ledger.getBudgetItems(budgetKey))
+            {
+            final String categoryID = item.getCategoryID();
+            final int startDate = item.getStartDate();
+            if ((startDate / 10000) != year)
+                continue;
+
+            final int month = (startDate / 100) % 100;
+            if ((month < 1) || (month > 12))
+                continue;
+
+            // Get the monthly budgets for this category, creating them if needed
+            long[] amounts = this.budgets.get(categoryID);
+            if (amounts == null)
+                {
+                amounts = new long[13];
+                this.budgets.put(categoryID, amounts);
+                }
+
+            amounts[month] = item.getAmount();
+            }
+
+        // Build the cumulative budget values
+        for (final Map.Entry<String, long[]> entry : this.budgets.entrySet())
+            {
+            final long[] prefix = new long[13];
+            for (int month = 1; month <= 12; month++)
+                prefix[month] = prefix[month - 1] + entry.getValue()[month];
+            this.prefixSums.put(entry.getKey(), prefix);
+            }
+    }
+
+    /** 
+     * Check if this index was built for the budget and year passed.
+     * 
+     * @param budgetKey - The key of the budget to check.
+     * @param year - The year to check (YYYY).
+     * @return boolean - true if this index is for the budget and year, false
+     * otherwise.
+     */
+    public boolean isFor(final String budgetKey, final int year) {
+        return (this.budgetKey.equals(budgetKey)) && (this.year == year);
+    }
+
+    /** 
+     * Check if this index was built for the budget passed.
+     * 
+     * @param budgetKey - The key of the budget to check.
+     * @return boolean - true if this index is for the budget, false otherwise.
+     */
+    public boolean isFor(final String budgetKey) {
+        return this.budgetKey.equals(budgetKey);
+    }
+
+    /** 
+     * Get the budget amount of a category for the month requested.
+     * 
+     * @param categoryID - The ID (UUID) of the category to retrieve.
+     * @param month - The month to return (1...12).
+     * @return long - The budget amount or 0 if there is no budget for the month.
+     */
+    public long getBudgetForMonth(final String categoryID, final int month) {
+        final long[] amounts = this.budgets.get(categoryID);
+        if (amounts == null)
+            return 0L;
+        else
+            return amounts[month];
+    }
+
+    /** 
+     * Get the budget amount of a category for a range of months.
+     * 
+     * @param categoryID - The ID (UUID) of the category to retrieve.
+     * @param fromMonth - The first month of the range (1...12).
+     * @param toMonth - The last month of the range (1...12).
+     * @return long - The total budget amount of the months in the range.
+     */
+    public long getBudgetForRange(final String categoryID, final int fromMonth, final int toMonth) {
+        final long[] prefix = this.prefixSums.get(categoryID);
+        if ((prefix == null) || (fromMonth > toMonth))
+            return 0L;
+        else
+            return prefix[Math.min(toMonth, 12)] - prefix[Math.max(fromMonth, 1) - 1];
+    }
+
+    /** 
+     * Get the year that was indexed.
+     * 
+     * @return int - The year (YYYY).
+     */
+    public int getYear() {
+        return this.year;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.List;
+
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.Account.AccountType;
+
+/**
+* Class to build the budget categories list for a period. The category tree
+* of the ledger is walked once, the budget values are read from the budget 
+* index and the actual totals from the transaction aggregator.
+*
+* @author  Jerry Jones
+*/
+final class CategoryListBuilder {
+    // The ledger the categories are read from
+    private final LedgerSource ledger;
+
+    // The budget values of the year being built
+    private final BudgetIndex budgetIndex;
+
+    // The period being built
+    private final int year;         // The year of the period
+    private final int startMonth;   // The starting month for the period
+    private final int months;       // The number of months to display
+
+    // The dates used for the month to date totals (YYYYMMDD)
+    private final int monthStartDate;   // The first day of this month
+    private final int tomorrowDate;     // Tomorrow
+
+    // True if the actuals of unbudgeted categories are ignored
+    private final boolean ignoreUnbudgeted;
+
+    // The time spent in each phase of the last build (nanoseconds)
+    private long walkNanos = 0;     // Walking the category tree and adding the categories
+    private long budgetNanos = 0;   // Looking up the budget values
+    private long actualNanos = 0;   // Loading the actual totals
+    private long rollupNanos = 0;   // Rolling the values up into the parents
+
+    /**
+     * Constructor for a list builder.
+     * 
+     * @param ledger - The ledger the categories are read from.
+     * @param budgetIndex - The budget values of the year being built.
+     * @param year - The year of the period (YYYY).
+     * @param startMonth - The starting month of the period (1...12).
+     * @param months - The number of months in the period.
+     * @param monthStartDate - The first day of this month (YYYYMMDD).
+     * @param tomorrowDate - The day after today (YYYYMMDD).
+     * @param ignoreUnbudgeted - true to ignore the actuals of unbudgeted categories.
+     */
+    CategoryListBuilder(final LedgerSource ledger, final BudgetIndex budgetIndex, final int year, final int startMonth, final int months, final int monthStartDate, final int tomorrowDate, final boolean ignoreUnbudgeted) {
+        this.ledger = ledger;
+        this.budgetIndex = budgetIndex;
+        this.year = year;
+        this.startMonth = startMonth;
+        this.months = months;
+        this.monthStartDate = monthStartDate;
+        this.tomorrowDate = tomorrowDate;
+        this.ignoreUnbudgeted = ignoreUnbudgeted;
+    }
+
+    /**
+     * Build a new budget categories list.
+     * 
+     * @param newAggregator - The transaction totals to load the actuals from,
+     * null to only load the budget values.
+     * @param newSelection - The categories to compute, null to compute all 
+     * categories.
+     * @return BudgetCategoriesList - The new list.
+     */
+    BudgetCategoriesList build(final TransactionAggregator newAggregator, final CategorySelection newSelection) {
+        final long start = System.nanoTime();
+        this.budgetNanos = 0;
+        this.actualNanos = 0;
+
+        // Create a new Budget Categories list
+        final BudgetCategoriesList newList = new BudgetCategoriesList(this.ledger);
+
+        // Create a special category for the Income - Expenses total row
+        newList.add(Constants.UUID_OVERALL, "Income-Expenses", Account.AccountType.ROOT, 0);
+
+        // Add a special category to the data model for "Income"
+        newList.add(Constants.UUID_INCOME, "Income", Account.AccountType.INCOME, 1);
+
+        // Walk the Income categories
+        final List<LedgerSource.Category> topLevel = this.ledger.getTopLevelCategories();
+        this.addCategories(newList, newAggregator, newSelection, topLevel, Account.AccountType.INCOME, 2);
+
+        // Add a special category to the data model for "Expenses"
+        newList.add(Constants.UUID_EXPENSE, "Expenses", Account.AccountType.EXPENSE, 1);
+
+        // Walk the Expense categories
+        this.addCategories(newList, newAggregator, newSelection, topLevel, Account.AccountType.EXPENSE, 2);
+
+        // Roll the budgets and actuals of all categories up into their parents.
+        // Cached values already include the rollup.
+        final long rollupStart = System.nanoTime();
+        if (newAggregator != null)
+            newList.rollup();
+
+        // The walk is whatever time wasn't spent loading values
+        this.rollupNanos = System.nanoTime() - rollupStart;
+        this.walkNanos = (rollupStart - start) - this.budgetNanos - this.actualNanos;
+
+        return newList;
+    }
+
+    /**
+     * @return long - The time spent walking the category tree in the last build (nanoseconds).
+     */
+    long getWalkNanos() {
+        return this.walkNanos;
+    }
+
+    /**
+     * @return long - The time spent looking up budget values in the last build (nanoseconds).
+     */
+    long getBudgetNanos() {
+        return this.budgetNanos;
+    }
+
+    /**
+     * @return long - The time spent loading actual totals in the last build (nanoseconds).
+     */
+    long getActualNanos() {
+        return this.actualNanos;
+    }
+
+    /**
+     * @return long - The time spent rolling up values in the last build (nanoseconds).
+     */
+    long getRollupNanos() {
+        return this.rollupNanos;
+    }
+
+    /**
+     * This method walks a level of the category tree depth-first adding each
+     * active category of the proper type and then its sub-categories. Each
+     * category is visited once. Inactive categories are skipped along with 
+     * all of their sub-categories since those are inactive too. A category 
+     * has children if any of its sub-categories were added, so its values 
+     * are only loaded once they have been walked.
+     * 
+     * @param list - The budget categories list being built
+     * @param aggregator - The transaction totals for the list being built, 
+     * null if the actuals are not being loaded
+     * @param selection - The categories to compute, null to compute all 
+     * categories
+     * @param categories - The categories at this level of the tree
+     * @param type - The category type we're looking for
+     * @param indentLevel - The indent level of the categories at this level
+     * @return boolean - true if any category was added, false otherwise
+     */
+    private boolean addCategories(final BudgetCategoriesList list, final TransactionAggregator aggregator, final CategorySelection selection, final List<LedgerSource.Category> categories, final AccountType type, final int indentLevel) 
+    {
+    boolean added = false;
+    for (final LedgerSource.Category category : categories)
+        {
+        // Skip categories of other types and inactive categories
+        if ((category.getType() != type) || (category.isInactive()))
+            continue;
+
+        // Skip the whole branch if nothing in it is selected. Categories 
+        // above a selected one are only needed for the tree.
+        final boolean computed = (selection == null) || (selection.isComputed(category));
+        if ((!computed) && (!selection.isAncestor(category.getID())))
+            continue;
+
+        // Get the sub-categories of this category
+        final List<LedgerSource.Category> subCategories = category.getChildren();
+
+        // Hidden categories aren't added but their sub-categories may be
+        if (category.isHidden())
+            {
+            added |= this.addCategories(list, aggregator, selection, subCategories, type, indentLevel + 1);
+            continue;
+            }
+
+        // Add this category. Until its sub-categories have been walked we 
+        // only know whether it may have children.
+        final BudgetCategoryItem item = list.add(category, indentLevel, !subCategories.isEmpty());
+
+        // Now walk the sub-categories
+        final boolean hasChildren = this.addCategories(list, aggregator, selection, subCategories, type, indentLevel + 1);
+        if (item == null)
+            {
+            // A duplicate category isn't added but its sub-categories are
+            added |= hasChildren;
+            continue;
+            }
+        item.setHasChildren(hasChildren);
+        added = true;
+
+        // Load the values of the category
+        if (computed)
+            this.loadValues(item, aggregator, category);
+        }
+    return added;
+    }
+
+    /**
+     * This method loads the budget values and actual totals of a category
+     * once it has been added to the budget category list.
+     * 
+     * @param item - The item of the category
+     * @param aggregator - The transaction totals for the list being built, 
+     * null if the actuals are not being loaded
+     * @param category - The category to load
+     */
+    private void loadValues(final BudgetCategoryItem item, final TransactionAggregator aggregator, final LedgerSource.Category category) 
+    {
+    // If this is not a roll-up category then we need to get the current budget values for this category
+    final long budgetStart = System.nanoTime();
+    // Categories without a budget for any month of the period are skipped with a single range query
+    if ((!item.hasChildren()) && (this.budgetIndex.getBudgetForRange(category.getID(), this.startMonth, this.startMonth + this.months - 1) != 0))
+        {
+        for (int month = this.startMonth; month < (this.startMonth + this.months); month++)
+            {
+            // Find existing budget values for each month
+            final long amount = this.budgetIndex.getBudgetForMonth(category.getID(), month);
+            if (amount != 0)
+                {
+                // Set the budget value for the current month
+                item.setBudgetValueForMonth(month, amount);
+                }
+            }
+        } 
+    final long actualStart = System.nanoTime();
+    this.budgetNanos += actualStart - budgetStart;
+
+    // Only add transaction totals if the category is budgeted or if  we are not ignoring unbudgeted categories
+    if (aggregator == null)
+        return;
+    else if ((item.getBudgetTotal() != 0) || (this.ignoreUnbudgeted == false))
+        {
+        // Retrieve the actual totals for this account. Parents are 
+        // updated by the rollup once all categories are loaded.
+        new TransactionTotals(item, aggregator, category, this.year, this.startMonth, this.months, this.monthStartDate, this.tomorrowDate);
+        item.setActualsIncluded(true);
+        this.actualNanos += System.nanoTime() - actualStart;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+* Class to hold the categories selected for display so that only the selected
+* categories and the categories under them need to be computed. The ancestors
+* of the selected categories are also kept so the category tree can still be
+* built, but their values are not computed.
+*
+* @author  Jerry Jones
+*/
+final class CategorySelection {
+    // The selection preference this selection was built from
+    private final String key;
+
+    // The UUIDs of the selected categories
+    private final Set<String> selected = new HashSet<String>();
+
+    // The UUIDs of the ancestors of the selected categories
+    private final Set<String> ancestors = new HashSet<String>();
+
+    // True if all the income or expense categories are needed
+    private boolean allIncome = false;
+    private boolean allExpense = false;
+
+    // The ledger the categories are from
+    private final LedgerSource ledger;
+
+    // The IDs of the categories already checked and whether they are computed
+    private final Map<String, Boolean> computed = new ConcurrentHashMap<String, Boolean>();
+
+    /** 
+     * Constructor for a selection.
+     * 
+     * @param key - The selection preference the selection is built from.
+     * @param ledger - The ledger the categories are from.
+     */
+    private CategorySelection(final String key, final LedgerSource ledger) {
+        this.key = key;
+        this.ledger = ledger;
+    }
+
+    /** 
+     * Get the categories selected for display.
+     * 
+     * @param selCatList - The selection preference (Constants.CATEGORIES_SELECTED).
+     * @param ledger - The ledger the categories are from.
+     * @return CategorySelection - The selected categories, null if all the
+     * categories are needed.
+     */
+    static CategorySelection getSelection(final String selCatList, final LedgerSource ledger) {
+        // Nothing has been selected yet
+        if ((selCatList == null) || (selCatList.trim().isEmpty()))
+            return null;
+
+        final CategorySelection selection = new CategorySelection(selCatList, ledger);
+        for (final String UUID: selCatList.split("\\s*,\\s*"))
+            {
+            // The Income-Expenses row needs everything
+            if (UUID.equals(Constants.UUID_OVERALL))
+                return null;
+            else if (UUID.equals(Constants.UUID_INCOME))
+                selection.allIncome = true;
+            else if (UUID.equals(Constants.UUID_EXPENSE))
+                selection.allExpense = true;
+            else
+                {
+                // Skip categories that no longer exist
+                final LedgerSource.Category category = ledger.getCategory(UUID);
+                if (category == null)
+                    continue;
+
+                selection.selected.add(UUID);
+                for (LedgerSource.Category parent = category.getParent(); parent != null; parent = parent.getParent())
+                    selection.ancestors.add(parent.getID());
+                }
+            }
+
+        return selection;
+    }
+
+    /** 
+     * Get the selection preference this selection was built from. Two 
+     * selections with the same key select the same categories.
+     * 
+     * @return String - The selection preference.
+     */
+    String getKey() {
+        return this.key;
+    }
+
+    /** 
+     * Check if the values of a category need to be computed. They do if the 
+     * category is selected or is under a selected category.
+     * 
+     * @param category - The category to check.
+     * @return boolean - true if the category is computed, false otherwise.
+     */
+    boolean isComputed(final LedgerSource.Category category) {
+        // Income and Expenses need all their categories
+        final Account.AccountType type = category.getType();
+        if (((type == Account.AccountType.INCOME) && (this.allIncome)) || ((type == Account.AccountType.EXPENSE) && (this.allExpense)))
+            return true;
+
+        // Look up the answer already found without creating anything since
+        // this is called for every split totaled
+        final Boolean known = this.computed.get(category.getID());
+        if (known != null)
+            return known.booleanValue();
+
+        // Walk up the current category tree of the ledger since the category
+        // passed may be from before a category was moved
+        final LedgerSource.Category current = this.ledger.getCategory(category.getID());
+        boolean isComputed = false;
+        for (LedgerSource.Category parent = (current != null) ? current : category; parent != null; parent = parent.getParent())
+            {
+            if (this.selected.contains(parent.getID()))
+                {
+                isComputed = true;
+                break;
+                }
+            }
+        this.computed.put(category.getID(), Boolean.valueOf(isComputed));
+        return isComputed;
+    }
+
+    /** 
+     * Check if the values of a category need to be computed given its ID.
+     * 
+     * @param UUID - The UUID of the category to check.
+     * @return boolean - true if the category is computed, false otherwise.
+     */
+    boolean isComputed(final String UUID) {
+        final LedgerSource.Category category = this.ledger.getCategory(UUID);
+        return (category != null) && (this.isComputed(category));
+    }
+
+    /** 
+     * Check if a category is an ancestor of a selected category.
+     * 
+     * @param UUID - The UUID of the category to check.
+     * @return boolean - true if the category is an ancestor, false otherwise.
+     */
+    boolean isAncestor(final String UUID) {
+        return this.ancestors.contains(UUID);
+    }
+}
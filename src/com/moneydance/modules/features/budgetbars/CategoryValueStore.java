@@ -0,0 +1,204 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.Arrays;
+
+/**
+* Class to store the budget values and actual totals of all the categories in
+* a budget categories list. Values are stored as primitive columns, one long[]
+* per month column indexed by the category index, so that reading and 
+* updating the values never creates Long objects.
+*
+* @author  Jerry Jones
+*/
+final class CategoryValueStore {
+    // Number of columns: [0] is not used, [1...12] each month, [13] overall total,
+    // [14] the current month up to and including today
+    static final int COLUMNS = 15;
+
+    // The column holding the overall total
+    static final int TOTAL = 13;
+
+    // The column holding the total of the current month up to and including today
+    static final int MONTH_TO_DATE = 14;
+
+    // The initial number of categories to allocate room for
+    private static final int INITIAL_CAPACITY = 64;
+
+    // budgetValues[column][index]
+    private final long[][] budgetValues = new long[COLUMNS][];
+
+    // actualTotals[column][index]
+    private final long[][] actualTotals = new long[COLUMNS][];
+
+    // The number of categories there is room for in each column
+    private int capacity = 0;
+
+    /** 
+     * Constructor for the CategoryValueStore.
+     */
+    CategoryValueStore() {
+        this.grow(INITIAL_CAPACITY);
+    }
+
+    /** 
+     * Copy constructor for the CategoryValueStore.
+     * 
+     * @param other - The store to copy.
+     */
+    CategoryValueStore(final CategoryValueStore other) {
+        for (int column = 0; column < COLUMNS; column++)
+            {
+            this.budgetValues[column] = other.budgetValues[column].clone();
+            this.actualTotals[column] = other.actualTotals[column].clone();
+            }
+        this.capacity = other.capacity;
+    }
+
+    /** 
+     * Make sure there is room for the category index passed.
+     * 
+     * @param index - The category index that needs to be stored.
+     */
+    void ensureCapacity(final int index) {
+        if (index >= this.capacity)
+            this.grow(Math.max(index + 1, this.capacity * 2));
+    }
+
+    /** 
+     * Grow each of the columns to the new capacity.
+     * 
+     * @param newCapacity - The new number of categories to allocate room for.
+     */
+    private void grow(final int newCapacity) {
+        for (int column = 0; column < COLUMNS; column++)
+            {
+            if (this.budgetValues[column] == null)
+                {
+                this.budgetValues[column] = new long[newCapacity];
+                this.actualTotals[column] = new long[newCapacity];
+                }
+            else
+                {
+                this.budgetValues[column] = Arrays.copyOf(this.budgetValues[column], newCapacity);
+                this.actualTotals[column] = Arrays.copyOf(this.actualTotals[column], newCapacity);
+                }
+            }
+        this.capacity = newCapacity;
+    }
+
+    /** 
+     * Get a budget value.
+     * 
+     * @param column - The month (1...12) or TOTAL.
+     * @param index - The category index.
+     * @return long - The budget value.
+     */
+    long getBudget(final int column, final int index) {
+        return this.budgetValues[column][index];
+    }
+
+    /** 
+     * Set a budget value.
+     * 
+     * @param column - The month (1...12) or TOTAL.
+     * @param index - The category index.
+     * @param value - The new budget value.
+     */
+    void setBudget(final int column, final int index, final long value) {
+        this.budgetValues[column][index] = value;
+    }
+
+    /** 
+     * Add to a budget value.
+     * 
+     * @param column - The month (1...12) or TOTAL.
+     * @param index - The category index.
+     * @param value - The value to add.
+     */
+    void addBudget(final int column, final int index, final long value) {
+        this.budgetValues[column][index] += value;
+    }
+
+    /** 
+     * Get an actual total.
+     * 
+     * @param column - The month (1...12) or TOTAL.
+     * @param index - The category index.
+     * @return long - The actual total.
+     */
+    long getActual(final int column, final int index) {
+        return this.actualTotals[column][index];
+    }
+
+    /** 
+     * Set an actual total.
+     * 
+     * @param column - The month (1...12) or TOTAL.
+     * @param index - The category index.
+     * @param value - The new actual total.
+     */
+    void setActual(final int column, final int index, final long value) {
+        this.actualTotals[column][index] = value;
+    }
+
+    /** 
+     * Add to an actual total.
+     * 
+     * @param column - The month (1...12) or TOTAL.
+     * @param index - The category index.
+     * @param value - The value to add.
+     */
+    void addActual(final int column, final int index, final long value) {
+        this.actualTotals[column][index] += value;
+    }
+
+    /** 
+     * Check if the first values of this store are the same as those of 
+     * another store.
+     * 
+     * @param other - The store to compare with.
+     * @param count - The number of items to compare.
+     * @return boolean - true if the values are the same, false otherwise.
+     */
+    boolean hasSameValues(final CategoryValueStore other, final int count) {
+        for (int column = 1; column < COLUMNS; column++)
+            {
+            for (int index = 0; index < count; index++)
+                {
+                if ((this.budgetValues[column][index] != other.budgetValues[column][index]) || (this.actualTotals[column][index] != other.actualTotals[column][index]))
+                    return false;
+                }
+            }
+        return true;
+    }
+}
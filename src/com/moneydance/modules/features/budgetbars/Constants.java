@@ -71,6 +71,24 @@ public class Constants
     public static final int SETTINGS_VERSION_3      = 3;                            // Version 3 of the settings
     public static final int V3_NUM_MBR_SETTINGS     = 9;                            // Number of MBB_Settings in version 3 settings: (Version, Budget name, Use_full_names, warning level, over level, allAncestors,useCategoryCurrency, ignoreUnbudgeted)
 
+    /*
+     * Number of threads used to total transactions. 1 totals them sequentially. 
+     * Set with -Dbudgetbars.parallelism=n
+     */
+    public static final int AGGREGATION_PARALLELISM = Math.max(1, Integer.getInteger("budgetbars.parallelism", 1));
+
+    /*
+     * Number of years before the current year kept in the monthly transaction totals so the 
+     * period displayed can change without totaling the transactions again.
+     */
+    public static final int HISTORY_YEARS           = 2;
+
+    /*
+     * Number of transactions changed during an event storm (e.g. an import) above which the 
+     * transactions are indexed and totaled again rather than applied one at a time.
+     */
+    public static final int STORM_RELOAD_CHANGES    = 1000;
+
     /*
      * Decimal format when printing percentages
      */
@@ -0,0 +1,116 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+* Class to hold a snapshot of the conversion rates between the currencies
+* of a ledger. The rate for each pair of currencies is resolved once, the first
+* time it is needed, and then reused so that converting a value is a single
+* multiplication. A new snapshot is taken each time the data is loaded so
+* rate changes are picked up on the next refresh.
+*
+* @author  Jerry Jones
+*/
+final class CurrencyRates {
+    // The value converted to resolve a rate. Large enough to keep the full
+    // precision of the rate and of any difference in decimal places.
+    private static final long PROBE = 1000000000000L;
+
+    // The ledger the rates are resolved from
+    private final LedgerSource ledger;
+
+    // The rates resolved so far by currency ID: rates[from][to]
+    private final Map<String, Map<String, Double>> rates = new ConcurrentHashMap<String, Map<String, Double>>();
+
+    // The number of values converted between different currencies
+    private final LongAdder conversions = new LongAdder();
+
+    /** 
+     * Constructor for the conversion rates of a ledger.
+     * 
+     * @param ledger - The ledger to resolve the rates from.
+     */
+    CurrencyRates(final LedgerSource ledger) {
+        this.ledger = ledger;
+    }
+
+    /** 
+     * Convert a value from one currency to another given the currency IDs.
+     * 
+     * @param value - The value to convert.
+     * @param fromCurrency - The ID of the currency of the value.
+     * @param toCurrency - The ID of the currency to convert to.
+     * @return long - The converted value.
+     */
+    long convert(final long value, final String fromCurrency, final String toCurrency) {
+        if ((fromCurrency.equals(toCurrency)) || (value == 0))
+            return value;
+
+        this.conversions.increment();
+        return Math.round(value * this.getRate(fromCurrency, toCurrency));
+    }
+
+    /** 
+     * Get the number of values converted between different currencies.
+     * 
+     * @return long - The number of conversions.
+     */
+    long getConversions() {
+        return this.conversions.sum();
+    }
+
+    /** 
+     * Get the rate to convert from one currency to another, resolving it
+     * the first time the pair is used.
+     * 
+     * @param fromCurrency - The ID of the currency to convert from.
+     * @param toCurrency - The ID of the currency to convert to.
+     * @return double - The conversion rate.
+     */
+    private double getRate(final String fromCurrency, final String toCurrency) {
+        // Look the rate up first so that nothing is allocated once it is known
+        Map<String, Double> toRates = this.rates.get(fromCurrency);
+        if (toRates == null)
+            toRates = this.rates.computeIfAbsent(fromCurrency, currency -> new ConcurrentHashMap<String, Double>());
+        final Double rate = toRates.get(toCurrency);
+        if (rate != null)
+            return rate.doubleValue();
+
+        // Resolve the rate the first time the pair is used
+        final Double newRate = Double.valueOf((double) this.ledger.convertValue(PROBE, fromCurrency, toCurrency) / PROBE);
+        final Double existing = toRates.putIfAbsent(toCurrency, newRate);
+        return (existing != null) ? existing.doubleValue() : newRate.doubleValue();
+    }
+}
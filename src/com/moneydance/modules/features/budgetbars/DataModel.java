@@ -31,138 +31,785 @@
 package com.moneydance.modules.features.budgetbars;
 
 import java.util.Calendar;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
+import com.infinitekind.moneydance.model.AbstractTxn;
 import com.infinitekind.moneydance.model.Account;
-import com.infinitekind.moneydance.model.Account.AccountType;
 import com.infinitekind.moneydance.model.AccountBook;
-import com.infinitekind.moneydance.model.AccountUtil;
-import com.infinitekind.moneydance.model.BudgetItem;
-import com.infinitekind.moneydance.model.BudgetItemList;
-import com.infinitekind.moneydance.model.BudgetPeriod;
-import com.infinitekind.moneydance.model.PeriodType;
+import com.infinitekind.moneydance.model.Budget;
+import com.infinitekind.moneydance.model.ParentTxn;
 import com.infinitekind.util.DateUtil;
 
 /**
-* This class implements the data model for the Monthly Budget Bars.
+* This class implements the data model for the Monthly Budget Bars. The data
+* is only read through a LedgerSource so the model can be loaded from a 
+* Moneydance account book or from a ledger held in memory.
 *
 * @author  Jerry Jones
 */
 public class DataModel {
-    // The current data file
-    private final AccountBook book;
+    /**
+     * The widget the data model is loaded for. It supplies what the data 
+     * model needs that isn't part of the ledger.
+     */
+    public interface Host {
+        /**
+         * @return String - The key of the budget to load, null if there is
+         * no budget to load.
+         */
+        String getBudgetKey();
+
+        /**
+         * @return String - The UUIDs of the categories selected for display
+         * separated by commas (Constants.CATEGORIES_SELECTED), null if none
+         * have been selected.
+         */
+        String getSelectedCategories();
+
+        /**
+         * @return RefreshDiagnostics - The timings and counts of each refresh.
+         */
+        RefreshDiagnostics getDiagnostics();
+
+        /**
+         * Show an error message. This may be called from the model thread.
+         * 
+         * @param message - The message to show.
+         */
+        void showError(String message);
+    }
+
+    // The ledger data the totals are computed from
+    private final LedgerSource ledger;
+
+    // The widget the data is loaded for
+    private final Host parent;
+
+    // Budget values by category, kept until the budget is modified
+    private BudgetIndex budgetIndex = null;
+
+    // Budget values of other years used for range queries, kept until the budget is modified
+    private final Map<Integer, BudgetIndex> rangeBudgetIndexes = new HashMap<Integer, BudgetIndex>();
+
+    // The current snapshot of the data. A new budget categories list is built
+    // (or copied) each time the data changes and then published in a new 
+    // snapshot with a single assignment, so readers never see a list that is
+    // being built or changed. Only the model thread (holding the lock on this 
+    // object) builds and publishes snapshots, readers never lock.
+    private volatile ModelSnapshot snapshot = null;
+
+    // The version of the last snapshot published
+    private long version = 0;
+
+    // Monthly transaction totals for all categories
+    private TransactionAggregator aggregator = null;
+
+    // The lists already built for each period (Constants.PERIOD_*) and the 
+    // epoch month they were built in. They are all discarded when the data 
+    // changes or the month changes.
+    private final Map<Integer, BudgetCategoriesList> periodLists = new HashMap<Integer, BudgetCategoriesList>();
+    private int periodListsMonth = 0;
+
+    // All the categories, built only when needed for editing the configuration
+    private volatile BudgetCategoriesList allCategoriesList = null;
+
+    // The transactions of the book sorted by date, built once and then kept up to date
+    private TransactionDateIndex dateIndex = null;
+
+    // The totals saved from the last session, null if they aren't saved
+    private final AggregateCache cache;
 
-    private final BudgetBars parent;
+    // The timings and counts of each refresh
+    private final RefreshDiagnostics diagnostics;
 
-    // Budget item list
-    private BudgetItemList budgetItemList;
+    // True if the current data was loaded from the cache and has not been verified
+    private volatile boolean loadedFromCache = false;
 
-    // Budget Categories List
-    private BudgetCategoriesList budgetCategoriesList = null;
+    // True if the current data has changed since it was saved to the cache
+    private boolean cacheDirty = false;
+
+    // The cache key of the period set up and of the current data. The key 
+    // has everything the cached values depend on apart from the transactions
+    // and the categories, which are checked separately.
+    private String cacheKey = null;
+    private String snapshotKey = null;
+
+    // The duplicate category UUIDs the user has already been told about
+    private final Set<String> reportedDuplicates = new HashSet<String>();
+
+    // The period being loaded
+    private int period;     // The selected period (Constants.PERIOD_*)
+    private int thisYear;   // The year of the period
+    private int startMonth; // The starting month for the period
+    private int months;     // The number of months to display
+
+    // The dates used for the month to date totals (YYYYMMDD)
+    private int today;          // Today
+    private int monthStartDate; // The first day of this month
+    private int tomorrowDate;   // Tomorrow
+
+    // The categories selected for display, null when all categories are needed
+    private CategorySelection selection = null;
     
     /**
-     * Constructor for the data model.
+     * Constructor for the data model of an account book. No data is loaded
+     * until load() is called, which is done on the model thread.
      * 
      * @param book - The account book to use for the data model
      * @param parent - The budgetBars parent object
      */
     public DataModel(final AccountBook book, final BudgetBars parent) 
     {
-        // Save the account book for later
-        this.book = book;
+        this(new MoneydanceLedger(book), new AggregateCache(book), parent);
+    }
+
+    /**
+     * Constructor for the data model of any ledger. No data is loaded until
+     * load() or loadData() is called.
+     * 
+     * @param ledger - The ledger to use for the data model
+     * @param cache - The cache of the totals, null to not cache the totals
+     * @param parent - The widget the data is loaded for
+     */
+    DataModel(final LedgerSource ledger, final AggregateCache cache, final Host parent) 
+    {
+        // Save the ledger for later
+        this.ledger = ledger;
 
         // Save the parent for later
         this.parent = parent;
+        this.diagnostics = parent.getDiagnostics();
 
-        // Load the data from the specified budget and account book
-        this.loadData();
+        // Save the cache of the ledger
+        this.cache = cache;
+    }
+
+    /**
+     * Method to load the data the first time. The data is loaded from the 
+     * cache saved by the last session if possible, otherwise it is loaded 
+     * from the account book. This should be called from a background thread.
+     */
+    public synchronized void load() {
+        if (!this.loadFromCache())
+            this.loadData();
+    }
+
+    /**
+     * Method to load the data for the budget bars. This may be called from a
+     * background thread, the new data replaces the current data only once it
+     * has been completely built.
+     */
+    public synchronized void loadData() {
+        final long start = System.nanoTime();
+
+        // The data has changed so the lists built for the other periods are out of date
+        this.clearPeriodLists();
+
+        // The categories may have changed too
+        this.ledger.refresh();
+        this.diagnostics.lap(RefreshDiagnostics.Phase.CATEGORY_REFRESH, start);
+
+        // Load the selected period
+        this.loadPeriod();
+        this.diagnostics.lap(RefreshDiagnostics.Phase.LOAD_TOTAL, start);
+    }
+
+    /**
+     * Method to switch to the period selected in the settings. The list 
+     * already built for the period is used if there is one, otherwise the 
+     * list is built from the current transaction totals. This may be called
+     * from a background thread.
+     */
+    public synchronized void switchPeriod() {
+        // Lists loaded from the cache haven't been verified so they can't be kept
+        if ((this.loadedFromCache) || (this.periodListsMonth != EpochMonth.ofDate(DateUtil.getStrippedDateInt())))
+            this.clearPeriodLists();
+
+        // Use the list already built for the period if we have one
+        final BudgetCategoriesList periodList = this.periodLists.get(Integer.valueOf(Settings.getInstance().getPeriod()));
+        if ((periodList != null) && (this.setupPeriod()))
+            {
+            this.publish(periodList);
+            return;
+            }
+
+        this.loadPeriod();
+    }
+
+    /**
+     * Discard the lists built for each period.
+     */
+    private void clearPeriodLists() {
+        this.periodLists.clear();
+        this.periodListsMonth = EpochMonth.ofDate(DateUtil.getStrippedDateInt());
+    }
+
+    /**
+     * Load the data for the period selected in the settings and keep the list
+     * built for the period.
+     */
+    private void loadPeriod() {
+        // Set up the period and budget to load
+        long mark = System.nanoTime();
+        if (!this.setupPeriod())
+            return;
+        mark = this.diagnostics.lap(RefreshDiagnostics.Phase.PERIOD_SETUP, mark);
+
+        // Total the transactions, nothing is visited if the current totals are reused
+        final TransactionAggregator newAggregator = this.totalTransactions();
+        this.diagnostics.lap(RefreshDiagnostics.Phase.TRANSACTION_SCAN, mark);
+        this.diagnostics.count(RefreshDiagnostics.Counter.TRANSACTIONS_VISITED, (newAggregator == this.aggregator) ? 0 : newAggregator.getTransactionsVisited());
+
+        // Build the new list
+        final BudgetCategoriesList newList = this.buildList(newAggregator, this.selection);
+
+        // Publish the new data, it is saved to the cache when the book is closed
+        this.aggregator = newAggregator;
+        this.publish(newList);
+        this.allCategoriesList = null;
+        this.loadedFromCache = false;
+        this.cacheDirty = true;
+        this.periodLists.put(Integer.valueOf(this.period), newList);
     }
 
     /**
-     * Method to load the data for the budget bars.
+     * Method to load the data from the cache saved by the last session. The 
+     * list of categories and the budget values are built from the book but 
+     * the transactions aren't read at all, so the cached data is shown as 
+     * soon as possible. The data must be verified with verifyCache() once it
+     * has been displayed.
      * 
-     * @param budget - The budget object to use
+     * @return boolean - true if the data was loaded from the cache, false 
+     * otherwise.
      */
-    public void loadData() {
+    private synchronized boolean loadFromCache() {
+        // Set up the period and budget to load
+        if ((this.cache == null) || (!this.setupPeriod()))
+            return false;
+
+        // Build the list without actuals and then load the cached values
+        final BudgetCategoriesList newList = this.buildList(null, this.selection);
+        if (!this.cache.load(this.cacheKey, newList))
+            return false;
+
+        // Publish the cached data, the transactions are indexed when it is verified
+        this.publish(newList);
+        this.loadedFromCache = true;
+        this.periodLists.put(Integer.valueOf(this.period), newList);
+        return true;
+    }
+
+    /**
+     * Method to verify data loaded from the cache against the account book.
+     * The transactions are indexed and totaled and the data is rebuilt. The
+     * rebuilt data is only published, and saved to the cache, if it differs
+     * from the cached data. This may be called from a background thread.
+     * 
+     * @return boolean - true if any of the data was changed, false otherwise.
+     */
+    public synchronized boolean verifyCache() {
+        // Nothing to do if the data wasn't loaded from the cache
+        if ((!this.loadedFromCache) || (!this.setupPeriod()))
+            return false;
+
+        // Rebuild the data
+        final TransactionAggregator newAggregator = this.totalTransactions();
+        final BudgetCategoriesList newList = this.buildList(newAggregator, this.selection);
+        this.aggregator = newAggregator;
+        this.loadedFromCache = false;
+
+        // Keep the cached data if it is still correct
+        if (newList.hasSameValues(this.snapshot.getList()))
+            return false;
+
+        // Publish the rebuilt data and save it for the next session
+        this.publish(newList);
+        this.allCategoriesList = null;
+        this.periodLists.put(Integer.valueOf(this.period), newList);
+        this.cacheDirty = true;
+        this.saveCache();
+        return true;
+    }
+
+    /**
+     * Method to save the current data to the cache for the next session if 
+     * it has changed since it was last saved. This is called when the book is
+     * closed and may be called from a background thread.
+     */
+    public synchronized void saveCache() {
+        // Nothing to save if the data hasn't changed or hasn't been verified
+        if ((this.cache == null) || (!this.cacheDirty) || (this.loadedFromCache) || (this.snapshot == null))
+            return;
+
+        final long start = System.nanoTime();
+        this.cache.save(this.snapshotKey, this.snapshot.getList());
+        this.cacheDirty = false;
+        this.diagnostics.lap(RefreshDiagnostics.Phase.CACHE_SAVE, start);
+    }
+
+    /** 
+     * Check if the current data was loaded from the cache and has not yet 
+     * been verified against the account book.
+     * 
+     * @return boolean - true if the data was loaded from the cache.
+     */
+    public boolean isLoadedFromCache() {
+        return this.loadedFromCache;
+    }
+
+    /**
+     * Publish a new snapshot of the data for the period that has been set up.
+     * 
+     * @param list - The budget categories list to publish. It must not be 
+     * changed once it has been published.
+     */
+    private void publish(final BudgetCategoriesList list) {
+        this.version++;
+        this.snapshotKey = this.cacheKey;
+        this.snapshot = new ModelSnapshot(this.version, list, (this.selection != null), this.period, this.thisYear, this.startMonth, this.months, this.today);
+    }
+
+    /** 
+     * Get the current snapshot of the data. This never locks. The snapshot 
+     * returned never changes, a new snapshot is published when the data 
+     * changes.
+     * 
+     * @return ModelSnapshot - The current snapshot, null if no data has been
+     * loaded.
+     */
+    public ModelSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * Get a list of all the categories. When only the selected categories 
+     * are computed the list of all the categories has to be built first by
+     * loadAllCategoriesList(), without any actual totals. This never locks.
+     * 
+     * @return BudgetCategoriesList - The list of all categories, null if no 
+     * data has been loaded or the list hasn't been built.
+     */
+    public BudgetCategoriesList getAllCategoriesList() {
+        // The current list already has all the categories
+        final ModelSnapshot current = this.snapshot;
+        if ((current == null) || (!current.isSelective()))
+            return (current == null) ? null : current.getList();
+
+        return this.allCategoriesList;
+    }
+
+    /**
+     * Build the list of all the categories if it hasn't already been built.
+     * This should be called from the model thread.
+     * 
+     * @return BudgetCategoriesList - The list of all categories, null if no
+     * data has been loaded.
+     */
+    public synchronized BudgetCategoriesList loadAllCategoriesList() {
+        final ModelSnapshot current = this.snapshot;
+        if ((current != null) && (current.isSelective()) && (this.allCategoriesList == null))
+            this.allCategoriesList = this.buildList(null, null);
+        return this.getAllCategoriesList();
+    }
+
+    /**
+     * Set up the period to load from the period setting, find the categories
+     * selected for display and index the budget values for the selected budget.
+     * 
+     * @return boolean - true if there is a budget to load, false otherwise.
+     */
+    private boolean setupPeriod() {
         // Get current time information
         final Calendar now = Calendar.getInstance();
-        int thisYear = now.get(Calendar.YEAR);
+        this.thisYear = now.get(Calendar.YEAR);
         final int thisMonth = now.get(Calendar.MONTH) + 1;  // Calendar months are 0...11 and we want 1...12
 
+        // Get the dates for the month to date totals
+        this.today = DateUtil.getDate(this.thisYear, thisMonth, now.get(Calendar.DAY_OF_MONTH));
+        this.monthStartDate = DateUtil.getDate(this.thisYear, thisMonth, 1);
+        final Calendar tomorrow = (Calendar) now.clone();
+        tomorrow.add(Calendar.DAY_OF_MONTH, 1);
+        this.tomorrowDate = DateUtil.getDate(tomorrow.get(Calendar.YEAR), tomorrow.get(Calendar.MONTH) + 1, tomorrow.get(Calendar.DAY_OF_MONTH));
+
         // Now set up for the selected period
-        int startMonth; // The starting month for the period
-        int months;     // The number of months to display
-        switch(Settings.getInstance().getPeriod())
+        this.period = Settings.getInstance().getPeriod();
+        switch(this.period)
             {
             case Constants.PERIOD_THIS_MONTH:
                 // Use This month
-                startMonth = thisMonth;
-                months = 1;
+                this.startMonth = thisMonth;
+                this.months = 1;
                 break;
 
             case Constants.PERIOD_LAST_MONTH:
                 // Use January through the end of the current month
-                startMonth = thisMonth - 1;
-                if (startMonth == 0)
+                this.startMonth = thisMonth - 1;
+                if (this.startMonth == 0)
                     {
-                    startMonth = 12;
-                    thisYear -= 1;
+                    this.startMonth = 12;
+                    this.thisYear -= 1;
                     }
-                months = 1;
+                this.months = 1;
                 break;
 
             case Constants.PERIOD_THIS_YEAR:
                 // Use January through the end of the year
-                startMonth = 1;
-                months = 12;
+                this.startMonth = 1;
+                this.months = 12;
                 break;
 
             case Constants.PERIOD_AUTOMATIC:
             default:
                 // Use January through the end of the current month
-                startMonth = 1;
-                months = thisMonth -  startMonth + 1;
+                this.startMonth = 1;
+                this.months = thisMonth -  this.startMonth + 1;
                 break;
             }
 
-        // Get the budget item list for the passed in budget
-        if (this.parent.getBudget() == null)
-            return;
-        else
-            this.budgetItemList = this.parent.getBudget().getItemList();
+        // Find the categories to compute
+        this.selection = CategorySelection.getSelection(this.parent.getSelectedCategories(), this.ledger);
+
+        // Index the budget values for the selected budget unless we already have
+        final String budgetKey = this.parent.getBudgetKey();
+        if (budgetKey == null)
+            return false;
+        else if ((this.budgetIndex == null) || (!this.budgetIndex.isFor(budgetKey, this.thisYear)))
+            this.budgetIndex = new BudgetIndex(this.ledger, budgetKey, this.thisYear);
+
+        // Get the cache key for the period
+        this.cacheKey = budgetKey+","+this.period+","+this.thisYear+","+EpochMonth.ofDate(this.today)+","
+            +Settings.getInstance().getIgnoreUnbudgeted()+","+((this.selection == null) ? "" : this.selection.getKey());
+
+        return true;
+    }
+
+    /**
+     * Total the transactions of the current year and the history years before
+     * it for all categories in a single pass. The current totals are reused 
+     * if they already cover these years for the same categories and still 
+     * keep the daily totals of this month, since they are kept up to date as
+     * transactions change.
+     * 
+     * @return TransactionAggregator - The transaction totals.
+     */
+    private TransactionAggregator totalTransactions() {
+        // The months to total, January of the first history year through December of this year
+        final int currentYear = Calendar.getInstance().get(Calendar.YEAR);
+        final int firstMonth = EpochMonth.of(currentYear - Constants.HISTORY_YEARS, 1);
+        final int endMonth = EpochMonth.of(currentYear + 1, 1);
+
+        // Reuse the current totals if we can
+        if ((this.aggregator != null) && (this.aggregator.covers(firstMonth, endMonth)) && (this.aggregator.isFor(this.selection)) && (this.aggregator.getDailyMonth() == TransactionAggregator.getCurrentMonth()))
+            return this.aggregator;
 
-        // Create a new Budget Categories list
-        this.budgetCategoriesList = new BudgetCategoriesList(this.book);
+        // Index the transactions by date the first time through
+        if (this.dateIndex == null)
+            this.dateIndex = new TransactionDateIndex(this.ledger);
 
-        // Create a special category for the Income - Expenses total row
-        this.budgetCategoriesList.add(Constants.UUID_OVERALL, "Income-Expenses", Account.AccountType.ROOT, 0);
+        return DataModel.totalTransactions(this.dateIndex, currentYear, this.selection);
+    }
+
+    /**
+     * Total the indexed transactions of a year and the history years before 
+     * it. This is the same totaling done when the data is loaded, available 
+     * without an account book so it can be run on any ledger.
+     * 
+     * @param index - The date index of the transactions to total.
+     * @param currentYear - The last year to total (YYYY).
+     * @param selection - The categories to total, null to total all categories.
+     * @return TransactionAggregator - The transaction totals.
+     */
+    static TransactionAggregator totalTransactions(final TransactionDateIndex index, final int currentYear, final CategorySelection selection) {
+        final int firstMonth = EpochMonth.of(currentYear - Constants.HISTORY_YEARS, 1);
+        final int endMonth = EpochMonth.of(currentYear + 1, 1);
+        return new TransactionAggregator(index, firstMonth, endMonth - firstMonth, Constants.AGGREGATION_PARALLELISM, selection);
+    }
+
+    /**
+     * Build a new budget categories list for the period that has been set up.
+     * The time taken by each phase of the build is recorded when the actuals
+     * are loaded.
+     * 
+     * @param newAggregator - The transaction totals to load the actuals from,
+     * null to only load the budget values.
+     * @param newSelection - The categories to compute, null to compute all 
+     * categories.
+     * @return BudgetCategoriesList - The new list.
+     */
+    private BudgetCategoriesList buildList(final TransactionAggregator newAggregator, final CategorySelection newSelection) {
+        final CategoryListBuilder builder = new CategoryListBuilder(this.ledger, this.budgetIndex, this.thisYear, this.startMonth, this.months, this.monthStartDate, this.tomorrowDate, Settings.getInstance().getIgnoreUnbudgeted());
+        final BudgetCategoriesList newList = builder.build(newAggregator, newSelection);
+
+        // Tell the user about each duplicate category once
+        for (final String UUID : newList.getDuplicateUUIDs())
+            {
+            if (this.reportedDuplicates.add(UUID))
+                this.parent.showError("The UUID "+UUID+" has been found more than once and this one will be ignored. Something is seriously wrong here!");
+            }
+
+        if (newAggregator != null)
+            {
+            this.diagnostics.record(RefreshDiagnostics.Phase.ACCOUNT_WALK, builder.getWalkNanos());
+            this.diagnostics.record(RefreshDiagnostics.Phase.BUDGET_LOOKUP, builder.getBudgetNanos());
+            this.diagnostics.record(RefreshDiagnostics.Phase.ACTUAL_TOTALS, builder.getActualNanos());
+            this.diagnostics.record(RefreshDiagnostics.Phase.ROLLUP, builder.getRollupNanos());
+            this.diagnostics.count(RefreshDiagnostics.Counter.CATEGORIES_BUILT, newList.getCategoryCount());
+            this.diagnostics.count(RefreshDiagnostics.Counter.CONVERSIONS, newList.getRates().getConversions());
+            }
+        return newList;
+    }
+
+    /**
+     * Method to apply a single added, modified or removed transaction to the
+     * actual totals without reloading the data. The values previously posted
+     * for the transaction are removed and, unless the transaction was removed,
+     * its current values are added back. Only the categories the transaction
+     * was posted to and their ancestors are updated. The changes are made to
+     * a copy of the current list which is then published.
+     * 
+     * @param txn - The transaction that changed.
+     * @param removed - true if the transaction was removed, false otherwise.
+     * A split removed from a transaction is applied as a change of its 
+     * parent transaction.
+     * @return boolean - true if any totals were changed, false otherwise.
+     */
+    public synchronized boolean applyTransaction(final AbstractTxn txn, final boolean removed)
+    {
+        return this.applyTransactions(Collections.singletonMap(txn, Boolean.valueOf(removed)));
+    }
+
+    /**
+     * Method to apply a batch of added, modified or removed transactions to
+     * the actual totals the same way as applyTransaction(). The current list 
+     * is copied and published once for the whole batch.
+     * 
+     * @param changes - The transactions that changed, mapped to true if the
+     * transaction was removed.
+     * @return boolean - true if any totals were changed, false otherwise.
+     */
+    public synchronized boolean applyTransactions(final Map<AbstractTxn, Boolean> changes)
+    {
+        // Nothing to do if the data hasn't been loaded
+        final ModelSnapshot current = this.snapshot;
+        if ((current == null) || (this.dateIndex == null))
+            return false;
+
+        boolean changed = false;
+
+        // Make the changes to a copy of the current list
+        final BudgetCategoriesList newList = new BudgetCategoriesList(current.getList());
+
+        for (final Map.Entry<AbstractTxn, Boolean> change : changes.entrySet())
+            {
+            // Read the current version of the transaction from the ledger.
+            // It is removed if the parent transaction itself was removed or
+            // it is no longer in the ledger. A split removed from a 
+            // transaction is just a change of the transaction.
+            final AbstractTxn txn = change.getKey();
+            final ParentTxn parentTxn = (txn instanceof ParentTxn) ? (ParentTxn) txn : txn.getParentTxn();
+            if (parentTxn == null)
+                continue;
+            final boolean parentRemoved = (change.getValue().booleanValue()) && (txn == parentTxn);
+            final LedgerSource.Transaction ledgerTxn = parentRemoved ? null : this.ledger.getTransaction(parentTxn.getUUID());
+            final boolean removed = (ledgerTxn == null);
+
+            // Keep the date index up to date. The transaction as it was 
+            // indexed has the values to remove.
+            final LedgerSource.Transaction oldTxn = this.dateIndex.remove(parentTxn.getUUID());
+            if (!removed)
+                this.dateIndex.add(ledgerTxn);
+
+            // Data loaded from the cache isn't totaled until it is verified,
+            // which totals the index
+            if (this.aggregator == null)
+                continue;
+
+            // Remove the old values
+            if (oldTxn != null)
+                {
+                for (TransactionAggregator.Posting posting = this.aggregator.removeTransaction(oldTxn); posting != null; posting = posting.next)
+                    changed |= this.postActual(current, newList, posting.category, posting.month, posting.date, -posting.value);
+                }
 
-        // Add a special category to the data model for "Income"
-        this.budgetCategoriesList.add(Constants.UUID_INCOME, "Income", Account.AccountType.INCOME, 1);
+            // Add the new values
+            if (!removed)
+                {
+                for (TransactionAggregator.Posting posting = this.aggregator.addTransaction(ledgerTxn); posting != null; posting = posting.next)
+                    changed |= this.postActual(current, newList, posting.category, posting.month, posting.date, posting.value);
+                }
+            }
+
+        // Only the list of the current period is kept up to date, the others
+        // are built again when they are next selected
+        this.periodLists.keySet().retainAll(Collections.singleton(Integer.valueOf(current.getPeriod())));
 
-        // Iterate through the accounts to find all active Income categories
-        // Note that accounts and categories are the same, they are all Accounts. 
-        for (final Iterator<Account> iter = AccountUtil.getAccountIterator(this.book); iter.hasNext(); ) 
+        // Publish the changes
+        if (changed)
             {
-            // Get the account 
-            final Account acct = iter.next();
+            this.publish(newList);
+            this.cacheDirty = true;
+            this.periodLists.put(Integer.valueOf(current.getPeriod()), newList);
+            }
+
+        return changed;
+    }
+
+    /**
+     * Method to reload the data with the transactions indexed and totaled 
+     * again from the account book. This is used instead of applying a large
+     * batch of changes one at a time. This may be called from a background 
+     * thread.
+     */
+    public synchronized void reloadTransactions()
+    {
+        // Discard the index and the totals so they are built again
+        this.dateIndex = null;
+        this.aggregator = null;
+        this.loadData();
+    }
+
+    /**
+     * Post a raw transaction value to a category and its ancestors.
+     * 
+     * @param current - The snapshot the list was copied from.
+     * @param list - The list to post to.
+     * @param category - The category to post to.
+     * @param epochMonth - The epoch month to post to.
+     * @param date - The date of the transaction (YYYYMMDD).
+     * @param value - The raw transaction value.
+     * @return boolean - true if the value was posted, false if the category
+     * is not part of the data model.
+     */
+    private boolean postActual(final ModelSnapshot current, final BudgetCategoriesList list, final LedgerSource.Category category, final int epochMonth, final int date, final long value)
+    {
+        // Only the months displayed are kept in the list
+        final int month = epochMonth - EpochMonth.of(current.getYear(), 1) + 1;
+        if ((month < current.getStartMonth()) || (month >= (current.getStartMonth() + current.getMonths())) || (month > 12))
+            return false;
+
+        // The category may be inactive or hidden
+        final BudgetCategoryItem item = list.getCategoryItem(category.getID());
+        if (item == null)
+            return false;
+
+        // Unbudgeted categories are not totaled if we are ignoring them
+        if (!item.isActualsIncluded())
+            return false;
 
-            // Go add category if it's the right type and if it's an income category
-            this.addIf(acct, Account.AccountType.INCOME, thisYear, startMonth, months);
+        // Income is negated just like the totals are when loading
+        final long actual = (category.getType() == Account.AccountType.INCOME) ? -value : value;
+        item.addActualForMonth(list, month, actual);
+
+        // Update the month to date total if the transaction is this month up to today
+        if ((date >= this.monthStartDate) && (date < this.tomorrowDate))
+            item.addActualMonthToDate(list, actual);
+
+        return true;
+    }
+
+
+    /**
+     * Method called when a category is added, removed or moved. Totals of 
+     * only the selected categories are discarded since the categories under
+     * a selected category may have changed. Totals of all the categories 
+     * are kept by category so they are still correct.
+     */
+    public synchronized void categoriesChanged()
+    {
+        if ((this.aggregator != null) && (!this.aggregator.isFor(null)))
+            this.aggregator = null;
+        this.clearPeriodLists();
+    }
+
+    /**
+     * Method called when a budget is modified. The cached budget index is
+     * discarded if it was built for the budget.
+     * 
+     * @param budget - The budget that was modified.
+     */
+    public synchronized void budgetModified(final Budget budget)
+    {
+        if ((this.budgetIndex != null) && (this.budgetIndex.isFor(budget.getKey())))
+            {
+            this.budgetIndex = null;
+            this.clearPeriodLists();
             }
+        this.rangeBudgetIndexes.clear();
+    }
 
-        // Add a special category to the data model for "Expenses"
-        this.budgetCategoriesList.add(Constants.UUID_EXPENSE, "Expenses", Account.AccountType.EXPENSE, 1);
 
-        // Iterate through the accounts to find all active Expense categories
-        for (final Iterator<Account> iter = AccountUtil.getAccountIterator(this.book); iter.hasNext(); ) 
+    /** 
+     * Get the actual total of a category for any range of months. The range
+     * may span years but is clipped to the months totaled (see 
+     * Constants.HISTORY_YEARS). The total is read from the cumulative monthly
+     * totals with one subtraction.
+     * 
+     * @param UUID - The UUID of the category.
+     * @param fromMonth - The first epoch month of the range (see EpochMonth).
+     * @param toMonth - The epoch month after the last month of the range.
+     * @return long - The total of the transactions posted to the category 
+     * itself, 0 if the range is empty or the transactions haven't been 
+     * totaled yet. Only the selected categories are totaled when just the
+     * selected categories are displayed.
+     */
+    public synchronized long getActualForRange(final String UUID, final int fromMonth, final int toMonth)
+    {
+        if (this.aggregator == null)
+            return 0L;
+        else
+            return this.aggregator.getTotal(UUID, fromMonth, toMonth);
+    }
+
+    /** 
+     * Get the budget total of a category for any range of months. The range
+     * may span years, the budget of each year is read with one subtraction.
+     * 
+     * @param UUID - The UUID of the category.
+     * @param fromMonth - The first epoch month of the range (see EpochMonth).
+     * @param toMonth - The epoch month after the last month of the range.
+     * @return long - The budget total of the category itself, 0 if the range
+     * is empty or there is no budget.
+     */
+    public synchronized long getBudgetForRange(final String UUID, final int fromMonth, final int toMonth)
+    {
+        final String budgetKey = this.parent.getBudgetKey();
+        if ((budgetKey == null) || (fromMonth >= toMonth))
+            return 0L;
+
+        // Add the budget of the months of each year in the range
+        long total = 0;
+        for (int year = EpochMonth.getYear(fromMonth); year <= EpochMonth.getYear(toMonth - 1); year++)
             {
-            // Get the account 
-            final Account acct = iter.next();
+            final int first = (year == EpochMonth.getYear(fromMonth)) ? EpochMonth.getMonth(fromMonth) : 1;
+            final int last = (year == EpochMonth.getYear(toMonth - 1)) ? EpochMonth.getMonth(toMonth - 1) : 12;
+            total += this.getBudgetIndex(budgetKey, year).getBudgetForRange(UUID, first, last);
+            }
+        return total;
+    }
+
+    /** 
+     * Get the budget index of a budget for a year.
+     * 
+     * @param budgetKey - The key of the budget.
+     * @param year - The year (YYYY).
+     * @return BudgetIndex - The budget index for the year.
+     */
+    private BudgetIndex getBudgetIndex(final String budgetKey, final int year)
+    {
+        if ((this.budgetIndex != null) && (this.budgetIndex.isFor(budgetKey, year)))
+            return this.budgetIndex;
 
-            // Go add category if it's the right type and if it's an expense category
-            this.addIf(acct, Account.AccountType.EXPENSE, thisYear, startMonth, months);
+        BudgetIndex index = this.rangeBudgetIndexes.get(Integer.valueOf(year));
+        if ((index == null) || (!index.isFor(budgetKey)))
+            {
+            index = new BudgetIndex(this.ledger, budgetKey, year);
+            this.rangeBudgetIndexes.put(Integer.valueOf(year), index);
             }
+        return index;
     }
 
 
@@ -175,10 +822,11 @@ public class DataModel {
      */
     public BudgetCategoryItem getCategoryItem(final String UUID)
     {
-        if (this.budgetCategoriesList == null)
+        final ModelSnapshot current = this.snapshot;
+        if (current == null)
             return null;
         else
-            return this.budgetCategoriesList.getCategoryItem(UUID);
+            return current.getCategoryItem(UUID);
     }
 
 
@@ -197,81 +845,25 @@ public class DataModel {
      * Get the total budget for this category.
      * 
      * @param item - The budget category item to retrieve the short name from
-     * @return Long - The budget total (* 100L)
+     * @return long - The budget total (* 100L)
      */
-    public Long getBudgetTotal(final BudgetCategoryItem item)
+    public long getBudgetTotal(final BudgetCategoryItem item)
     {
         return item.getBudgetTotal();
     }
 
     /**
-     * @return the book
+     * @return the ledger data of the book
      */
-    public AccountBook getBook() {
-        return this.book;
+    public LedgerSource getLedger() {
+        return this.ledger;
     }
 
     /**
-     * @return the budgetCategoriesList
+     * @return the budgetCategoriesList of the current snapshot
      */
     public BudgetCategoriesList getBudgetCategoriesList() {
-        return this.budgetCategoriesList;
-    }
-
-    
-    /**
-     * This method adds an account (category) to the budget category list if
-     * it meets the right criteria - it must be active and not hidden as well
-     * as being the proper type.
-     * 
-     * @param acct - The account to add 
-     * @param type - The account type we're looking for
-     * @param thisYear - The current year
-     * @param startMonth - The starting month to retrieve
-     * @param months - The number of months to retrieve
-     */
-    private void addIf(final Account acct, final AccountType type, final int thisYear, final int startMonth, final int months) 
-    {
-    // Get the type of this account
-    final AccountType acctType = acct.getAccountType();
-
-    // Is the account type that we're looking for?    
-    if (acctType == type)
-        {
-        // Is the account active
-        if ((!acct.getAccountOrParentIsInactive()) && (!acct.getHideOnHomePage()))
-            {
-            // Add this category
-            final BudgetCategoryItem item = this.budgetCategoriesList.add(acct);
-            if (item == null)
-                return;
-
-            // If this is not a roll-up category then we need to get the current budget values for this category
-            if (!item.hasChildren())
-                {
-                for (int month = startMonth; month < (startMonth + months); month++)
-                    {
-                    // Find existing budget values for each month
-                    final BudgetItem i = this.budgetItemList.getBudgetItemForCategory(acct, new BudgetPeriod(DateUtil.getDate(thisYear, month, 1), PeriodType.MONTH));
-                    if (i != null)
-                        {
-                        // Set the budget value for the current month
-                        item.setBudgetValueForMonth(this, this.budgetCategoriesList, month, i.getAmount(), acctType);
-                        }
-                    }
-                } 
-
-            // Only add transaction totals if the category is budgeted or if  we are not ignoring unbudgeted categories
-            if ((item.getBudgetTotal() != 0) || (Settings.getInstance().getIgnoreUnbudgeted() == false))
-                {
-                // Retrieve the actual totals for this account
-                new TransactionTotals(item, this.book, acct, thisYear, startMonth, months);
-
-                // Update the parent actual totals
-                item.updateParentActualTotals(this.budgetCategoriesList, item);
-                }
-            }
-        }
+        final ModelSnapshot current = this.snapshot;
+        return (current == null) ? null : current.getList();
     }
 }
-
@@ -0,0 +1,100 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import com.infinitekind.util.DateUtil;
+
+/**
+* Class of helpers for absolute month numbers. An epoch month counts the
+* months since January of year 0 so that months of different years can be 
+* stored in a single array and any range of months, including ranges that 
+* span years, is a simple range of indexes.
+*
+* @author  Jerry Jones
+*/
+final class EpochMonth {
+    /** 
+     * Constructor, there are only static methods.
+     */
+    private EpochMonth() {
+    }
+
+    /** 
+     * Get the epoch month of a year and month.
+     * 
+     * @param year - The year (YYYY).
+     * @param month - The month (1...12).
+     * @return int - The epoch month.
+     */
+    static int of(final int year, final int month) {
+        return (year * 12) + (month - 1);
+    }
+
+    /** 
+     * Get the epoch month of a date.
+     * 
+     * @param dateInt - The date (YYYYMMDD).
+     * @return int - The epoch month.
+     */
+    static int ofDate(final int dateInt) {
+        return EpochMonth.of(dateInt / 10000, (dateInt / 100) % 100);
+    }
+
+    /** 
+     * Get the year of an epoch month.
+     * 
+     * @param epochMonth - The epoch month.
+     * @return int - The year (YYYY).
+     */
+    static int getYear(final int epochMonth) {
+        return epochMonth / 12;
+    }
+
+    /** 
+     * Get the month of an epoch month.
+     * 
+     * @param epochMonth - The epoch month.
+     * @return int - The month (1...12).
+     */
+    static int getMonth(final int epochMonth) {
+        return (epochMonth % 12) + 1;
+    }
+
+    /** 
+     * Get the date of the first day of an epoch month.
+     * 
+     * @param epochMonth - The epoch month.
+     * @return int - The date (YYYYMMDD).
+     */
+    static int getFirstDate(final int epochMonth) {
+        return DateUtil.getDate(EpochMonth.getYear(epochMonth), EpochMonth.getMonth(epochMonth), 1);
+    }
+}
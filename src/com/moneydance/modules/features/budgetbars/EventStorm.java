@@ -0,0 +1,240 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.infinitekind.moneydance.model.AbstractTxn;
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.ParentTxn;
+
+/**
+ * Class to detect storms of events, such as a QIF/OFX import or a mass 
+ * recategorization firing thousands of transaction and balance callbacks.
+ * A storm starts when STORM_EVENTS events arrive within RATE_WINDOW_MS and
+ * ends once no event has been received for QUIET_MS. While a storm lasts 
+ * the changes are only recorded: the latest version of each changed 
+ * transaction and the IDs of the accounts touched. They are handed over in
+ * one batch when the storm ends so a single update can be made.
+ *
+ * @author  Jerry Jones
+ */
+public class EventStorm {
+    // The number of events within the rate window that starts a storm
+    static final int STORM_EVENTS = 200;
+
+    // The rate window (ms)
+    static final long RATE_WINDOW_MS = 1000;
+
+    // The time without events that ends a storm (ms)
+    static final long QUIET_MS = 1500;
+
+    /**
+     * Receives the changes made during a storm.
+     */
+    public interface Listener {
+        /**
+         * Called on a background thread when a storm starts.
+         */
+        void stormStarted();
+
+        /**
+         * Called on a background thread when a storm ends.
+         * 
+         * @param changes - The transactions changed during the storm, 
+         * mapped to true if the transaction was removed.
+         * @param reload - true if a full reload was requested during the storm.
+         */
+        void stormEnded(Map<AbstractTxn, Boolean> changes, boolean reload);
+    }
+
+    // The listener for storms
+    private final Listener listener;
+
+    // The times of the last STORM_EVENTS events (ms) as a ring buffer
+    private final long[] times = new long[STORM_EVENTS];
+    private int next = 0;
+
+    // The time of the last event (ms)
+    private long lastEvent = 0;
+
+    // True while a storm lasts
+    private boolean active = false;
+
+    // The changes recorded during the storm. Transactions are keyed by ID
+    // so only the latest change of each is kept.
+    private Map<String, AbstractTxn> changed = new LinkedHashMap<String, AbstractTxn>();
+    private Set<String> removed = new HashSet<String>();
+    private boolean reload = false;
+
+    // The number of storms detected
+    private long storms = 0;
+
+    /**
+     * Constructor for the storm detector.
+     * 
+     * @param listener - The listener for storms.
+     */
+    public EventStorm(final Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Record a transaction change. 
+     * 
+     * @param txn - The transaction that changed.
+     * @param wasRemoved - true if the transaction was removed.
+     * @return boolean - true if a storm is in progress and the change was 
+     * recorded, false if the change should be applied now.
+     */
+    public boolean transactionChanged(final AbstractTxn txn, final boolean wasRemoved) {
+        final ParentTxn parentTxn = (txn instanceof ParentTxn) ? (ParentTxn) txn : txn.getParentTxn();
+        synchronized (this)
+            {
+            if ((!this.eventReceived()) || (parentTxn == null))
+                return this.active;
+
+            // Record the latest change of the transaction. A split removed 
+            // from a transaction is a change of the transaction.
+            final String ID = parentTxn.getUUID();
+            this.changed.put(ID, parentTxn);
+            if ((wasRemoved) && (txn == parentTxn))
+                this.removed.add(ID);
+            else
+                this.removed.remove(ID);
+            return true;
+            }
+    }
+
+    /**
+     * Record an account balance change. Balance changes are caused by 
+     * transaction changes, which are recorded, so they only count towards
+     * detecting a storm.
+     * 
+     * @param account - The account whose balance changed.
+     * @return boolean - true if a storm is in progress.
+     */
+    public synchronized boolean balanceChanged(final Account account) {
+        return this.eventReceived();
+    }
+
+    /**
+     * Record a request for a full reload. The reload is made when the storm
+     * ends if one is in progress.
+     * 
+     * @return boolean - true if a storm is in progress and the request was recorded.
+     */
+    public synchronized boolean reloadRequested() {
+        if (this.active)
+            this.reload = true;
+        return this.active;
+    }
+
+    /**
+     * @return boolean - true while a storm lasts.
+     */
+    public synchronized boolean isActive() {
+        return this.active;
+    }
+
+    /**
+     * @return long - The number of storms detected.
+     */
+    public synchronized long getStorms() {
+        return this.storms;
+    }
+
+    /**
+     * Record the time of an event and start a storm if the rate of events 
+     * is high enough. Must be called holding the lock.
+     * 
+     * @return boolean - true if a storm is in progress.
+     */
+    private boolean eventReceived() {
+        final long now = System.currentTimeMillis();
+        this.lastEvent = now;
+
+        // The oldest of the last STORM_EVENTS events is the one being replaced
+        final long oldest = this.times[this.next];
+        this.times[this.next] = now;
+        this.next = (this.next + 1) % STORM_EVENTS;
+        if ((!this.active) && (oldest != 0) && ((now - oldest) <= RATE_WINDOW_MS))
+            {
+            this.active = true;
+            this.storms++;
+            RefreshScheduler.getExecutor().execute(this.listener::stormStarted);
+            this.scheduleQuietCheck(QUIET_MS);
+            }
+        return this.active;
+    }
+
+    /**
+     * Schedule a check for the end of the storm.
+     * 
+     * @param delay - The time to wait before checking (ms).
+     */
+    private void scheduleQuietCheck(final long delay) {
+        RefreshScheduler.getExecutor().schedule(this::checkQuiet, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * End the storm if no event has been received for QUIET_MS, otherwise
+     * check again once that long has passed since the last event.
+     */
+    private void checkQuiet() {
+        final Map<AbstractTxn, Boolean> changes = new LinkedHashMap<AbstractTxn, Boolean>();
+        final boolean reloadNeeded;
+        synchronized (this)
+            {
+            final long quiet = System.currentTimeMillis() - this.lastEvent;
+            if (quiet < QUIET_MS)
+                {
+                this.scheduleQuietCheck(QUIET_MS - quiet);
+                return;
+                }
+
+            // Hand over the changes and start recording afresh
+            for (final Map.Entry<String, AbstractTxn> entry : this.changed.entrySet())
+                changes.put(entry.getValue(), Boolean.valueOf(this.removed.contains(entry.getKey())));
+            reloadNeeded = this.reload;
+            this.changed = new LinkedHashMap<String, AbstractTxn>();
+            this.removed = new HashSet<String>();
+            this.reload = false;
+            this.active = false;
+            }
+
+        this.listener.stormEnded(changes, reloadNeeded);
+    }
+}
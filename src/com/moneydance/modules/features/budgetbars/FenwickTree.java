@@ -0,0 +1,121 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+/**
+* Class implementing a Fenwick (binary indexed) tree of long values. Adding
+* to a single position and summing any range of positions both take 
+* O(log n) time.
+*
+* @author  Jerry Jones
+*/
+final class FenwickTree {
+    // The tree, [0] is not used
+    private final long[] tree;
+
+    /** 
+     * Constructor for a tree of size positions, all 0.
+     * 
+     * @param size - The number of positions (0...size-1).
+     */
+    FenwickTree(final int size) {
+        this.tree = new long[size + 1];
+    }
+
+    /** 
+     * Constructor for a tree holding an array of values. The tree is built in
+     * O(n) time rather than by adding each value.
+     * 
+     * @param values - The value of each position (0...values.length-1).
+     */
+    FenwickTree(final long[] values) {
+        this.tree = new long[values.length + 1];
+        System.arraycopy(values, 0, this.tree, 1, values.length);
+
+        // Add each node to the node that covers it
+        for (int i = 1; i < this.tree.length; i++)
+            {
+            final int parent = i + (i & -i);
+            if (parent < this.tree.length)
+                this.tree[parent] += this.tree[i];
+            }
+    }
+
+    /** 
+     * Get the number of positions in the tree.
+     * 
+     * @return int - The number of positions.
+     */
+    int size() {
+        return this.tree.length - 1;
+    }
+
+    /** 
+     * Add a value to a position.
+     * 
+     * @param position - The position (0...size-1).
+     * @param value - The value to add.
+     */
+    void add(final int position, final long value) {
+        for (int i = position + 1; i < this.tree.length; i += (i & -i))
+            this.tree[i] += value;
+    }
+
+    /** 
+     * Get the sum of the positions before a position.
+     * 
+     * @param position - The position (0...size).
+     * @return long - The sum of positions 0...position-1.
+     */
+    long prefixSum(final int position) {
+        long sum = 0;
+        for (int i = position; i > 0; i -= (i & -i))
+            sum += this.tree[i];
+        return sum;
+    }
+
+    /** 
+     * Get the sum of a range of positions. The range is clipped to the 
+     * positions in the tree.
+     * 
+     * @param from - The first position of the range.
+     * @param to - The position after the last position of the range.
+     * @return long - The sum of the positions from...to-1.
+     */
+    long rangeSum(final int from, final int to) {
+        final int first = Math.max(from, 0);
+        final int last = Math.min(to, this.size());
+        if (first >= last)
+            return 0L;
+        else
+            return this.prefixSum(last) - this.prefixSum(first);
+    }
+}
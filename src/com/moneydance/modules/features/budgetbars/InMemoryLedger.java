@@ -0,0 +1,272 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+ * Class to hold ledger data in memory. The categories, transactions, budgets
+ * and currency rates are added directly so the transaction totals and budget
+ * values can be computed without a Moneydance account book, for example in
+ * tests and benchmarks.
+ *
+ * @author  Jerry Jones
+ */
+public class InMemoryLedger implements LedgerSource {
+    // The ID of the ledger
+    private final String bookID;
+
+    // The ID of the base currency
+    private final String baseCurrency;
+
+    // The categories by ID and the top level categories
+    private final Map<String, Category> categories = new HashMap<String, Category>();
+    private final List<Category> topLevel = new ArrayList<Category>();
+
+    // The transactions by ID in the order they were added
+    private final Map<String, Transaction> transactions = new LinkedHashMap<String, Transaction>();
+
+    // The budget items of each budget by budget key. The items of a budget
+    // are keyed by category ID and month so setting one replaces it.
+    private final Map<String, Map<String, BudgetItem>> budgets = new HashMap<String, Map<String, BudgetItem>>();
+
+    // The rate to convert each currency to the base currency
+    private final Map<String, Double> rates = new HashMap<String, Double>();
+
+    /**
+     * Constructor for an empty ledger.
+     * 
+     * @param bookID - The ID of the ledger.
+     * @param baseCurrency - The ID of the base currency.
+     */
+    public InMemoryLedger(final String bookID, final String baseCurrency) {
+        this.bookID = bookID;
+        this.baseCurrency = baseCurrency;
+    }
+
+    /** 
+     * Add an active category in the base currency.
+     * 
+     * @param ID - The ID of the category.
+     * @param name - The name of the category.
+     * @param type - The type of the category (INCOME or EXPENSE).
+     * @param parent - The parent category, null for a top level category.
+     * @return Category - The category added.
+     */
+    public Category addCategory(final String ID, final String name, final Account.AccountType type, final Category parent) {
+        return this.addCategory(new Category(ID, name, type, this.baseCurrency, parent, false, false));
+    }
+
+    /** 
+     * Add a category. The parent of the category must already have been 
+     * added.
+     * 
+     * @param category - The category to add.
+     * @return Category - The category added.
+     */
+    public synchronized Category addCategory(final Category category) {
+        this.categories.put(category.getID(), category);
+        if (category.getParent() == null)
+            this.topLevel.add(category);
+        return category;
+    }
+
+    /** 
+     * Add a transaction, replacing any transaction with the same ID.
+     * 
+     * @param ID - The ID of the transaction.
+     * @param date - The date of the transaction (YYYYMMDD).
+     * @param splits - The splits of the transaction.
+     * @return Transaction - The transaction added.
+     */
+    public synchronized Transaction addTransaction(final String ID, final int date, final Split... splits) {
+        final Transaction transaction = new Transaction(ID, date, splits);
+        this.transactions.put(ID, transaction);
+        return transaction;
+    }
+
+    /** 
+     * Remove a transaction.
+     * 
+     * @param ID - The ID of the transaction.
+     * @return Transaction - The transaction removed, null if there was none.
+     */
+    public synchronized Transaction removeTransaction(final String ID) {
+        return this.transactions.remove(ID);
+    }
+
+    /** 
+     * Set the budget of a category for a month.
+     * 
+     * @param budgetKey - The key of the budget.
+     * @param categoryID - The ID of the category.
+     * @param year - The year (YYYY).
+     * @param month - The month (1...12).
+     * @param amount - The amount budgeted.
+     */
+    public synchronized void setBudget(final String budgetKey, final String categoryID, final int year, final int month, final long amount) {
+        final Map<String, BudgetItem> items = this.budgets.computeIfAbsent(budgetKey, key -> new LinkedHashMap<String, BudgetItem>());
+        final int startDate = EpochMonth.getFirstDate(EpochMonth.of(year, month));
+        items.put(categoryID + "@" + startDate, new BudgetItem(categoryID, startDate, amount));
+    }
+
+    /** 
+     * Set the rate to convert a currency to the base currency.
+     * 
+     * @param currency - The ID of the currency.
+     * @param rate - The value of one unit of the currency in the base currency.
+     */
+    public synchronized void setRate(final String currency, final double rate) {
+        this.rates.put(currency, Double.valueOf(rate));
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @return String - The ID of the ledger.
+     */
+    @Override
+    public String getBookID() {
+        return this.bookID;
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @return List&lt;Category&gt; - The top level categories.
+     */
+    @Override
+    public synchronized List<Category> getTopLevelCategories() {
+        return Collections.unmodifiableList(new ArrayList<Category>(this.topLevel));
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @param ID - The ID of the category.
+     * @return Category - The category, null if there is none.
+     */
+    @Override
+    public synchronized Category getCategory(final String ID) {
+        return this.categories.get(ID);
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource). The categories are held
+     * in memory so there is nothing to read again.
+     */
+    @Override
+    public void refresh() {
+    }
+
+    /** 
+     * Get the transactions of the ledger.
+     * 
+     * @return List&lt;Transaction&gt; - The transactions in the order added.
+     */
+    public synchronized List<Transaction> getTransactions() {
+        return new ArrayList<Transaction>(this.transactions.values());
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @param visitor - The visitor to pass the transactions to, in the order
+     * they were added.
+     */
+    @Override
+    public synchronized void visitTransactions(final TransactionVisitor visitor) {
+        for (final Transaction transaction : this.transactions.values())
+            {
+            visitor.transaction(transaction.getID(), transaction.getDate());
+            for (int i = 0; i < transaction.getSplitCount(); i++)
+                visitor.split(transaction.getSplit(i).getCategory(), transaction.getSplit(i).getValue());
+            }
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @param ID - The ID of the transaction.
+     * @return Transaction - The transaction, null if there is none.
+     */
+    @Override
+    public synchronized Transaction getTransaction(final String ID) {
+        return this.transactions.get(ID);
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @param budgetKey - The key of the budget.
+     * @return List&lt;BudgetItem&gt; - The budget items.
+     */
+    @Override
+    public synchronized List<BudgetItem> getBudgetItems(final String budgetKey) {
+        final Map<String, BudgetItem> items = this.budgets.get(budgetKey);
+        return (items == null) ? Collections.<BudgetItem>emptyList() : new ArrayList<BudgetItem>(items.values());
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @return String - The ID of the base currency.
+     */
+    @Override
+    public String getBaseCurrency() {
+        return this.baseCurrency;
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource). Values are converted 
+     * through the base currency. Currencies without a rate are at par.
+     * 
+     * @param value - The value to convert.
+     * @param fromCurrency - The ID of the currency of the value.
+     * @param toCurrency - The ID of the currency to convert to.
+     * @return long - The converted value.
+     */
+    @Override
+    public synchronized long convertValue(final long value, final String fromCurrency, final String toCurrency) {
+        if (fromCurrency.equals(toCurrency))
+            return value;
+        final double fromRate = this.rates.getOrDefault(fromCurrency, Double.valueOf(1.0)).doubleValue();
+        final double toRate = this.rates.getOrDefault(toCurrency, Double.valueOf(1.0)).doubleValue();
+        return Math.round(value * fromRate / toRate);
+    }
+}
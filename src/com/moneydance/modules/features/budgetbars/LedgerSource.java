@@ -0,0 +1,413 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+ * Interface to the ledger data the budget bars are computed from: the 
+ * category tree, the transactions, the budgets and the currencies. The 
+ * transaction totals, budget values and currency conversions are computed
+ * only through this interface so that they can be computed from a Moneydance
+ * account book (see MoneydanceLedger) or from data held in memory (see 
+ * InMemoryLedger) without a running Moneydance.
+ *
+ * <p>Categories, transactions and budget items are returned as simple value 
+ * objects. Values are in the smallest unit of the currency (e.g. cents) and 
+ * dates are YYYYMMDD ints, the same as Moneydance uses.
+ *
+ * @author  Jerry Jones
+ */
+public interface LedgerSource {
+    /** 
+     * Get an ID that identifies the ledger.
+     * 
+     * @return String - The ID of the ledger.
+     */
+    String getBookID();
+
+    /** 
+     * Get the top level income and expense categories. The rest of the tree
+     * is reached through Category.getChildren().
+     * 
+     * @return List&lt;Category&gt; - The top level categories.
+     */
+    List<Category> getTopLevelCategories();
+
+    /** 
+     * Get a category given its ID.
+     * 
+     * @param ID - The ID of the category.
+     * @return Category - The category, null if there is no income or expense
+     * category with the ID.
+     */
+    Category getCategory(String ID);
+
+    /** 
+     * Discard the categories read from the ledger so they are read again 
+     * the next time they are needed, for example after categories have been
+     * added, removed or moved.
+     */
+    void refresh();
+
+    /** 
+     * Visit all the transactions of the ledger, in any order. Each transaction
+     * is passed to the visitor as its ID and date followed by its splits, so
+     * no objects have to be created for the transactions of the ledger.
+     * 
+     * @param visitor - The visitor to pass the transactions to.
+     */
+    void visitTransactions(TransactionVisitor visitor);
+
+    /** 
+     * Get the current version of a transaction given its ID.
+     * 
+     * @param ID - The ID of the transaction.
+     * @return Transaction - The transaction, null if it is not in the ledger.
+     */
+    Transaction getTransaction(String ID);
+
+    /** 
+     * Get the monthly items of a budget.
+     * 
+     * @param budgetKey - The key of the budget.
+     * @return List&lt;BudgetItem&gt; - The budget items, empty if there is no
+     * budget with the key.
+     */
+    List<BudgetItem> getBudgetItems(String budgetKey);
+
+    /** 
+     * Get the ID of the base currency of the ledger.
+     * 
+     * @return String - The base currency ID.
+     */
+    String getBaseCurrency();
+
+    /** 
+     * Convert a value from one currency to another at the current rate.
+     * 
+     * @param value - The value to convert.
+     * @param fromCurrency - The ID of the currency of the value.
+     * @param toCurrency - The ID of the currency to convert to.
+     * @return long - The converted value.
+     */
+    long convertValue(long value, String fromCurrency, String toCurrency);
+
+    /**
+     * Visitor the transactions of a ledger are passed to (see 
+     * visitTransactions()).
+     */
+    interface TransactionVisitor {
+        /** 
+         * Start a transaction. Its splits are passed to split() before the 
+         * next transaction is started.
+         * 
+         * @param ID - The ID of the transaction.
+         * @param date - The date of the transaction (YYYYMMDD).
+         */
+        void transaction(String ID, int date);
+
+        /** 
+         * Add a split to the transaction last started.
+         * 
+         * @param category - The category posted to, null if the split is not
+         * posted to an income or expense category.
+         * @param value - The value posted, in the currency of the category.
+         */
+        void split(Category category, long value);
+    }
+
+    /**
+     * An income or expense category.
+     */
+    final class Category {
+        // The ID (UUID) and name of the category
+        private final String ID;
+        private final String name;
+
+        // The name of the category with the names of its parents prepended,
+        // i.e. "Auto:Fuel"
+        private final String fullName;
+
+        // The type of the category, Account.AccountType.INCOME or EXPENSE
+        private final Account.AccountType type;
+
+        // The ID of the currency of the category
+        private final String currency;
+
+        // The parent category, null for a top level category
+        private final Category parent;
+
+        // The sub-categories
+        private final List<Category> children = new ArrayList<Category>();
+
+        // True if the category is inactive or hidden
+        private final boolean inactive;
+        private final boolean hidden;
+
+        /** 
+         * Constructor for a category. The category is added to the children
+         * of its parent.
+         * 
+         * @param ID - The ID of the category.
+         * @param name - The name of the category.
+         * @param type - The type of the category (INCOME or EXPENSE).
+         * @param currency - The ID of the currency of the category.
+         * @param parent - The parent category, null for a top level category.
+         * @param inactive - true if the category is inactive.
+         * @param hidden - true if the category is hidden.
+         */
+        public Category(final String ID, final String name, final Account.AccountType type, final String currency, final Category parent, final boolean inactive, final boolean hidden) {
+            this.ID = ID;
+            this.name = name;
+            this.fullName = (parent == null) ? name : parent.fullName + ":" + name;
+            this.type = type;
+            this.currency = currency;
+            this.parent = parent;
+            this.inactive = inactive;
+            this.hidden = hidden;
+            if (parent != null)
+                parent.children.add(this);
+        }
+
+        /**
+         * @return the ID of the category
+         */
+        public String getID() {
+            return this.ID;
+        }
+
+        /**
+         * @return the name of the category
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return the full name of the category, i.e. "Auto:Fuel"
+         */
+        public String getFullName() {
+            return this.fullName;
+        }
+
+        /**
+         * @return the type of the category
+         */
+        public Account.AccountType getType() {
+            return this.type;
+        }
+
+        /**
+         * @return the ID of the currency of the category
+         */
+        public String getCurrency() {
+            return this.currency;
+        }
+
+        /**
+         * @return the parent category, null for a top level category
+         */
+        public Category getParent() {
+            return this.parent;
+        }
+
+        /**
+         * @return the sub-categories
+         */
+        public List<Category> getChildren() {
+            return Collections.unmodifiableList(this.children);
+        }
+
+        /**
+         * @return true if the category is inactive
+         */
+        public boolean isInactive() {
+            return this.inactive;
+        }
+
+        /**
+         * @return true if the category is hidden
+         */
+        public boolean isHidden() {
+            return this.hidden;
+        }
+    }
+
+    /**
+     * A transaction and its splits. All the splits share the date of the
+     * transaction.
+     */
+    final class Transaction {
+        // The ID (UUID) of the transaction
+        private final String ID;
+
+        // The date of the transaction (YYYYMMDD)
+        private final int date;
+
+        // The splits of the transaction
+        private final Split[] splits;
+
+        /** 
+         * Constructor for a transaction.
+         * 
+         * @param ID - The ID of the transaction.
+         * @param date - The date of the transaction (YYYYMMDD).
+         * @param splits - The splits of the transaction.
+         */
+        public Transaction(final String ID, final int date, final Split... splits) {
+            this.ID = ID;
+            this.date = date;
+            this.splits = splits.clone();
+        }
+
+        /**
+         * @return the ID of the transaction
+         */
+        public String getID() {
+            return this.ID;
+        }
+
+        /**
+         * @return the date of the transaction (YYYYMMDD)
+         */
+        public int getDate() {
+            return this.date;
+        }
+
+        /**
+         * @return the number of splits
+         */
+        public int getSplitCount() {
+            return this.splits.length;
+        }
+
+        /** 
+         * Get a split of the transaction.
+         * 
+         * @param index - The index of the split (0...getSplitCount()-1).
+         * @return Split - The split.
+         */
+        public Split getSplit(final int index) {
+            return this.splits[index];
+        }
+    }
+
+    /**
+     * A split of a transaction posted to a category.
+     */
+    final class Split {
+        // The category posted to, null if the split is not posted to an
+        // income or expense category
+        private final Category category;
+
+        // The value posted
+        private final long value;
+
+        /** 
+         * Constructor for a split.
+         * 
+         * @param category - The category posted to, null if it isn't an 
+         * income or expense category.
+         * @param value - The value posted, in the currency of the category.
+         */
+        public Split(final Category category, final long value) {
+            this.category = category;
+            this.value = value;
+        }
+
+        /**
+         * @return the category posted to, null if it isn't a category
+         */
+        public Category getCategory() {
+            return this.category;
+        }
+
+        /**
+         * @return the value posted
+         */
+        public long getValue() {
+            return this.value;
+        }
+    }
+
+    /**
+     * The budget of a category for one month.
+     */
+    final class BudgetItem {
+        // The ID of the category budgeted
+        private final String categoryID;
+
+        // The first date of the month budgeted (YYYYMMDD)
+        private final int startDate;
+
+        // The amount budgeted
+        private final long amount;
+
+        /** 
+         * Constructor for a budget item.
+         * 
+         * @param categoryID - The ID of the category budgeted.
+         * @param startDate - The first date of the month budgeted (YYYYMMDD).
+         * @param amount - The amount budgeted.
+         */
+        public BudgetItem(final String categoryID, final int startDate, final long amount) {
+            this.categoryID = categoryID;
+            this.startDate = startDate;
+            this.amount = amount;
+        }
+
+        /**
+         * @return the ID of the category budgeted
+         */
+        public String getCategoryID() {
+            return this.categoryID;
+        }
+
+        /**
+         * @return the first date of the month budgeted (YYYYMMDD)
+         */
+        public int getStartDate() {
+            return this.startDate;
+        }
+
+        /**
+         * @return the amount budgeted
+         */
+        public long getAmount() {
+            return this.amount;
+        }
+    }
+}
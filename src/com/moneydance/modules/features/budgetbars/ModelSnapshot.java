@@ -0,0 +1,184 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.List;
+
+/**
+* Class holding an immutable snapshot of the data model. The data model 
+* publishes a new snapshot each time its data changes and never changes a
+* snapshot once it has been published, so readers can take the current 
+* snapshot without locking and read a consistent set of values from it.
+* 
+* <p>Each snapshot has a version number which is one greater than the 
+* version of the snapshot it replaced.
+*
+* @author  Jerry Jones
+*/
+public final class ModelSnapshot {
+    // The version of this snapshot
+    private final long version;
+
+    // The budget categories list, which must not be changed once published
+    private final BudgetCategoriesList list;
+
+    // True if only the selected categories are in the list
+    private final boolean selective;
+
+    // The period of the data
+    private final int period;       // The selected period (Constants.PERIOD_*)
+    private final int year;         // The year of the period
+    private final int startMonth;   // The starting month for the period
+    private final int months;       // The number of months in the period
+
+    // The date the month to date totals were calculated for (YYYYMMDD)
+    private final int today;
+
+    /**
+     * Constructor for a model snapshot.
+     * 
+     * @param version - The version of this snapshot.
+     * @param list - The budget categories list.
+     * @param selective - true if only the selected categories are in the list.
+     * @param period - The selected period (Constants.PERIOD_*).
+     * @param year - The year of the period (YYYY).
+     * @param startMonth - The starting month for the period (1...12).
+     * @param months - The number of months in the period.
+     * @param today - The date the month to date totals are for (YYYYMMDD).
+     */
+    ModelSnapshot(final long version, final BudgetCategoriesList list, final boolean selective, final int period, final int year, final int startMonth, final int months, final int today) {
+        this.version = version;
+        this.list = list;
+        this.selective = selective;
+        this.period = period;
+        this.year = year;
+        this.startMonth = startMonth;
+        this.months = months;
+        this.today = today;
+    }
+
+    /**
+     * @return the version
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return the ID of the base currency of the ledger the data is from
+     */
+    public String getBaseCurrency() {
+        return this.list.getBaseCurrency();
+    }
+
+    /**
+     * @return the budget categories list
+     */
+    public BudgetCategoriesList getList() {
+        return this.list;
+    }
+
+    /**
+     * @return true if only the selected categories are in the list
+     */
+    public boolean isSelective() {
+        return this.selective;
+    }
+
+    /**
+     * @return the period (Constants.PERIOD_*)
+     */
+    public int getPeriod() {
+        return this.period;
+    }
+
+    /**
+     * @return the year of the period (YYYY)
+     */
+    public int getYear() {
+        return this.year;
+    }
+
+    /**
+     * @return the starting month of the period (1...12)
+     */
+    public int getStartMonth() {
+        return this.startMonth;
+    }
+
+    /**
+     * @return the number of months in the period
+     */
+    public int getMonths() {
+        return this.months;
+    }
+
+    /**
+     * @return the date the month to date totals are for (YYYYMMDD)
+     */
+    public int getToday() {
+        return this.today;
+    }
+
+    /** 
+     * Get a budget category item given the UUID
+     * 
+     * @param UUID - The UUID of the account.
+     * @return BudgetCategoryItem - The BudgetCategoryItem object corresponding to
+     * the UUID. A null return value indicates the item does not exist.
+     */
+    public BudgetCategoryItem getCategoryItem(final String UUID) {
+        return this.list.getCategoryItem(UUID);
+    }
+
+    /** 
+     * Get the direct children of a category.
+     * 
+     * @param UUID - The UUID of the parent category.
+     * @return List<BudgetCategoryItem> - The children of the category.
+     */
+    public List<BudgetCategoryItem> getChildren(final String UUID) {
+        return this.list.getChildren(UUID, false);
+    }
+
+    /** 
+     * Convert a value from one currency to another using the conversion 
+     * rates taken when the data was loaded.
+     * 
+     * @param value - The value to convert.
+     * @param fromCurrency - The ID of the currency of the value.
+     * @param toCurrency - The ID of the currency to convert to.
+     * @return long - The converted value.
+     */
+    public long convertValue(final long value, final String fromCurrency, final String toCurrency) {
+        return this.list.getRates().convert(value, fromCurrency, toCurrency);
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.infinitekind.moneydance.model.AbstractTxn;
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.AccountBook;
+import com.infinitekind.moneydance.model.Budget;
+import com.infinitekind.moneydance.model.CurrencyType;
+import com.infinitekind.moneydance.model.CurrencyUtil;
+import com.infinitekind.moneydance.model.ParentTxn;
+
+/**
+ * Class to read the ledger data from a Moneydance account book. The category
+ * tree is read once and kept until it is refreshed, or until a transaction
+ * is posted to a category that isn't in it. Transactions are visited in the
+ * transaction set of the book and budget items are converted each time they
+ * are requested.
+ *
+ * @author  Jerry Jones
+ */
+public class MoneydanceLedger implements LedgerSource {
+    // The account book the data is read from
+    private final AccountBook book;
+
+    // The income and expense categories by ID and the top level categories,
+    // null until they are first needed
+    private Map<String, Category> categories = null;
+    private List<Category> topLevel = null;
+
+    /**
+     * Constructor for a ledger read from an account book.
+     * 
+     * @param book - The account book to read.
+     */
+    public MoneydanceLedger(final AccountBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Override for LedgerSource (see LedgerSource). The category tree is read
+     * again from the book the next time it is needed.
+     */
+    @Override
+    public synchronized void refresh() {
+        this.categories = null;
+        this.topLevel = null;
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @return String - The UUID of the root account of the book.
+     */
+    @Override
+    public String getBookID() {
+        return this.book.getRootAccount().getUUID();
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @return List&lt;Category&gt; - The top level categories.
+     */
+    @Override
+    public synchronized List<Category> getTopLevelCategories() {
+        if (this.topLevel == null)
+            this.readCategories();
+        return this.topLevel;
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @param ID - The UUID of the category.
+     * @return Category - The category, null if there is no income or expense
+     * category with the UUID.
+     */
+    @Override
+    public synchronized Category getCategory(final String ID) {
+        if (this.categories == null)
+            this.readCategories();
+
+        // Read the tree again if the category was added since it was read
+        Category category = this.categories.get(ID);
+        if ((category == null) && (MoneydanceLedger.isCategory(this.book.getAccountByUUID(ID))))
+            {
+            this.readCategories();
+            category = this.categories.get(ID);
+            }
+        return category;
+    }
+
+    /** 
+     * Read the income and expense categories from the book.
+     */
+    private void readCategories() {
+        this.categories = new HashMap<String, Category>();
+        final List<Category> newTopLevel = new ArrayList<Category>();
+        for (final Account acct : this.book.getRootAccount().getSubAccounts())
+            {
+            if (MoneydanceLedger.isCategory(acct))
+                newTopLevel.add(this.readCategory(acct, null));
+            }
+        this.topLevel = Collections.unmodifiableList(newTopLevel);
+    }
+
+    /** 
+     * Read a category and all of its sub-categories.
+     * 
+     * @param acct - The account (category) to read.
+     * @param parent - The parent category, null for a top level category.
+     * @return Category - The category read.
+     */
+    private Category readCategory(final Account acct, final Category parent) {
+        final Category category = new Category(acct.getUUID(), acct.getAccountName(), acct.getAccountType(), acct.getCurrencyType().getIDString(), parent, acct.getAccountIsInactive(), acct.getHideOnHomePage());
+        this.categories.put(category.getID(), category);
+        for (final Account subAcct : acct.getSubAccounts())
+            this.readCategory(subAcct, category);
+        return category;
+    }
+
+    /** 
+     * Check if an account is an income or expense category.
+     * 
+     * @param acct - The account to check.
+     * @return boolean - true if the account is a category, false otherwise.
+     */
+    private static boolean isCategory(final Account acct) {
+        return (acct != null) && ((acct.getAccountType() == Account.AccountType.INCOME) || (acct.getAccountType() == Account.AccountType.EXPENSE));
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource). The transactions are read
+     * straight from the transaction set of the book. Only the splits posted 
+     * to income and expense categories are passed to the visitor.
+     * 
+     * @param visitor - The visitor to pass the transactions to.
+     */
+    @Override
+    public void visitTransactions(final TransactionVisitor visitor) {
+        for (final AbstractTxn txn : this.book.getTransactionSet().iterableTxns())
+            {
+            if (!(txn instanceof ParentTxn))
+                continue;
+
+            final ParentTxn parentTxn = (ParentTxn) txn;
+            visitor.transaction(parentTxn.getUUID(), parentTxn.getDateInt());
+            if (MoneydanceLedger.isCategory(parentTxn.getAccount()))
+                visitor.split(this.getCategory(parentTxn.getAccount().getUUID()), parentTxn.getValue());
+            for (int i = 0; i < parentTxn.getSplitCount(); i++)
+                {
+                final AbstractTxn split = parentTxn.getSplit(i);
+                if (MoneydanceLedger.isCategory(split.getAccount()))
+                    visitor.split(this.getCategory(split.getAccount().getUUID()), split.getValue());
+                }
+            }
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource). The transaction is looked
+     * up in the transaction set of the book.
+     * 
+     * @param ID - The UUID of the parent transaction.
+     * @return Transaction - The transaction, null if it is not in the book.
+     */
+    @Override
+    public Transaction getTransaction(final String ID) {
+        final AbstractTxn txn = this.book.getTransactionSet().getTxnByID(ID);
+        return (txn instanceof ParentTxn) ? this.toTransaction((ParentTxn) txn) : null;
+    }
+
+    /** 
+     * Convert a Moneydance transaction to a ledger transaction. Only the 
+     * splits posted to income and expense categories are kept. A parent
+     * transaction is normally posted to an account rather than a category,
+     * but if it is posted to a category it is kept as well.
+     * 
+     * @param txn - The parent transaction to convert.
+     * @return Transaction - The ledger transaction.
+     */
+    public Transaction toTransaction(final ParentTxn txn) {
+        final List<Split> splits = new ArrayList<Split>();
+        if (MoneydanceLedger.isCategory(txn.getAccount()))
+            splits.add(new Split(this.getCategory(txn.getAccount().getUUID()), txn.getValue()));
+        for (int i = 0; i < txn.getSplitCount(); i++)
+            {
+            final AbstractTxn split = txn.getSplit(i);
+            if (MoneydanceLedger.isCategory(split.getAccount()))
+                splits.add(new Split(this.getCategory(split.getAccount().getUUID()), split.getValue()));
+            }
+        return new Transaction(txn.getUUID(), txn.getDateInt(), splits.toArray(new Split[splits.size()]));
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @param budgetKey - The key of the budget.
+     * @return List&lt;BudgetItem&gt; - The budget items.
+     */
+    @Override
+    public List<BudgetItem> getBudgetItems(final String budgetKey) {
+        final List<BudgetItem> items = new ArrayList<BudgetItem>();
+        for (final Budget budget : this.book.getBudgets().getAllBudgets())
+            {
+            if (!budget.getKey().equals(budgetKey))
+                continue;
+
+            for (final com.infinitekind.moneydance.model.BudgetItem item : budget.getItemList().getAllItems())
+                {
+                if (item.getTransferAccount() != null)
+                    items.add(new BudgetItem(item.getTransferAccount().getUUID(), item.getIntervalStartDate(), item.getAmount()));
+                }
+            }
+        return items;
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @return String - The ID of the base currency.
+     */
+    @Override
+    public String getBaseCurrency() {
+        return this.book.getCurrencies().getBaseType().getIDString();
+    }
+
+    /** 
+     * Override for LedgerSource (see LedgerSource)
+     * 
+     * @param value - The value to convert.
+     * @param fromCurrency - The ID of the currency of the value.
+     * @param toCurrency - The ID of the currency to convert to.
+     * @return long - The converted value.
+     */
+    @Override
+    public long convertValue(final long value, final String fromCurrency, final String toCurrency) {
+        final CurrencyType fromType = this.book.getCurrencies().getCurrencyByIDString(fromCurrency);
+        final CurrencyType toType = this.book.getCurrencies().getCurrencyByIDString(toCurrency);
+        return CurrencyUtil.convertValue(value, fromType, toType);
+    }
+}
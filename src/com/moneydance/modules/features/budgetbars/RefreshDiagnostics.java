@@ -0,0 +1,268 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class to keep the time taken by each phase of a refresh and counts of the
+ * work done in it. The last SAMPLES values of each are kept so that rolling
+ * percentiles can be shown in the diagnostics section of the settings 
+ * dialog. Recording a value only stores it in a ring buffer, so the timers
+ * are left on all the time.
+ *
+ * @author  Jerry Jones
+ */
+public class RefreshDiagnostics {
+    /**
+     * The timed phases of a refresh.
+     */
+    public enum Phase {
+        QUEUE_WAIT("Wait for model thread"),
+        CATEGORY_REFRESH("Category refresh"),
+        PERIOD_SETUP("Period and budget setup"),
+        TRANSACTION_SCAN("Transaction scan"),
+        ACCOUNT_WALK("Account walk"),
+        BUDGET_LOOKUP("Budget lookups"),
+        ACTUAL_TOTALS("Actual totals"),
+        ROLLUP("Rollup"),
+        CACHE_SAVE("Cache save"),
+        LOAD_TOTAL("Data load total"),
+        BAR_UPDATE("Bar update (Swing)");
+
+        // The name shown for the phase
+        private final String label;
+
+        Phase(final String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * The work counted in each refresh.
+     */
+    public enum Counter {
+        TRANSACTIONS_VISITED("Transactions visited"),
+        CATEGORIES_BUILT("Categories built"),
+        CONVERSIONS("Currency conversions");
+
+        // The name shown for the counter
+        private final String label;
+
+        Counter(final String label) {
+            this.label = label;
+        }
+    }
+
+    // The number of samples kept for each phase and counter
+    private static final int SAMPLES = 128;
+
+    // The samples of each phase (nanoseconds) and counter
+    private final Map<Phase, Samples> phases = new EnumMap<Phase, Samples>(Phase.class);
+    private final Map<Counter, Samples> counters = new EnumMap<Counter, Samples>(Counter.class);
+
+    // The refresh schedulers reported by name
+    private final Map<String, RefreshScheduler> schedulers = new LinkedHashMap<String, RefreshScheduler>();
+
+    /**
+     * Constructor for the diagnostics.
+     */
+    public RefreshDiagnostics() {
+        for (final Phase phase : Phase.values())
+            this.phases.put(phase, new Samples());
+        for (final Counter counter : Counter.values())
+            this.counters.put(counter, new Samples());
+    }
+
+    /**
+     * Record the time taken by a phase. Phases are timed in sequence by 
+     * passing the time returned for one phase as the start of the next.
+     * 
+     * @param phase - The phase that ended.
+     * @param start - The System.nanoTime() the phase started at.
+     * @return long - The System.nanoTime() the phase ended at.
+     */
+    public long lap(final Phase phase, final long start) {
+        final long now = System.nanoTime();
+        this.phases.get(phase).add(now - start);
+        return now;
+    }
+
+    /**
+     * Record the time taken by a phase that was timed by the caller.
+     * 
+     * @param phase - The phase timed.
+     * @param nanos - The time taken in nanoseconds.
+     */
+    public void record(final Phase phase, final long nanos) {
+        this.phases.get(phase).add(nanos);
+    }
+
+    /**
+     * Record the count of some work done in a refresh.
+     * 
+     * @param counter - The counter to record.
+     * @param count - The count.
+     */
+    public void count(final Counter counter, final long count) {
+        this.counters.get(counter).add(count);
+    }
+
+    /**
+     * Add a refresh scheduler to the report so the refreshes requested can
+     * be compared with the refreshes run.
+     * 
+     * @param label - The name shown for the scheduler.
+     * @param scheduler - The scheduler to report.
+     */
+    public synchronized void addScheduler(final String label, final RefreshScheduler scheduler) {
+        this.schedulers.put(label, scheduler);
+    }
+
+    /**
+     * Discard all the samples.
+     */
+    public void reset() {
+        for (final Samples samples : this.phases.values())
+            samples.clear();
+        for (final Samples samples : this.counters.values())
+            samples.clear();
+    }
+
+    /**
+     * Get a report of the last value and the rolling percentiles of each 
+     * phase and counter as a plain text table.
+     * 
+     * @return String - The report.
+     */
+    public String getReport() {
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format("%-24s %10s %10s %10s %10s %10s %8s%n", "Phase (ms)", "Last", "p50", "p90", "p99", "Max", "Samples"));
+        for (final Map.Entry<Phase, Samples> entry : this.phases.entrySet())
+            this.appendRow(report, entry.getKey().label, entry.getValue(), 1.0e-6, 2);
+
+        report.append(String.format("%n%-24s %10s %10s %10s %10s %10s %8s%n", "Counter", "Last", "p50", "p90", "p99", "Max", "Samples"));
+        for (final Map.Entry<Counter, Samples> entry : this.counters.entrySet())
+            this.appendRow(report, entry.getKey().label, entry.getValue(), 1.0, 0);
+
+        report.append(String.format("%n%-24s %10s %10s %10s%n", "Scheduler", "Requests", "Refreshes", "Window ms"));
+        synchronized (this)
+            {
+            for (final Map.Entry<String, RefreshScheduler> entry : this.schedulers.entrySet())
+                report.append(String.format("%-24s %10d %10d %10d%n", entry.getKey(), 
+                    Long.valueOf(entry.getValue().getRequests()), 
+                    Long.valueOf(entry.getValue().getRefreshes()), 
+                    Long.valueOf(entry.getValue().getWindow())));
+            }
+
+        report.append(String.format("%nPercentiles are of the last %d refreshes.%n", SAMPLES));
+        return report.toString();
+    }
+
+    /**
+     * Append a row of the report.
+     * 
+     * @param report - The report being built.
+     * @param label - The name of the row.
+     * @param samples - The samples to report.
+     * @param scale - The factor to scale the samples by.
+     * @param decimals - The number of decimal places to show.
+     */
+    private void appendRow(final StringBuilder report, final String label, final Samples samples, final double scale, final int decimals) {
+        // Copy the samples so they can be sorted without holding the lock
+        final long last;
+        final long[] sorted;
+        final long total;
+        synchronized (samples)
+            {
+            last = samples.last;
+            total = samples.total;
+            sorted = Arrays.copyOf(samples.values, samples.size());
+            }
+
+        if (sorted.length == 0)
+            {
+            report.append(String.format("%-24s %10s %10s %10s %10s %10s %8d%n", label, "-", "-", "-", "-", "-", Long.valueOf(0)));
+            return;
+            }
+        Arrays.sort(sorted);
+        final String number = "%10." + decimals + "f";
+        report.append(String.format("%-24s " + number + " " + number + " " + number + " " + number + " " + number + " %8d%n", label, 
+            Double.valueOf(last * scale), 
+            Double.valueOf(RefreshDiagnostics.percentile(sorted, 50) * scale), 
+            Double.valueOf(RefreshDiagnostics.percentile(sorted, 90) * scale), 
+            Double.valueOf(RefreshDiagnostics.percentile(sorted, 99) * scale), 
+            Double.valueOf(sorted[sorted.length - 1] * scale), 
+            Long.valueOf(total)));
+    }
+
+    /**
+     * Get a percentile of sorted samples using the nearest rank.
+     * 
+     * @param sorted - The samples sorted in ascending order.
+     * @param percent - The percentile to get (1...100).
+     * @return long - The sample at the percentile.
+     */
+    static long percentile(final long[] sorted, final int percent) {
+        final int rank = (int) Math.ceil((percent / 100.0) * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Ring buffer of the last SAMPLES values recorded.
+     */
+    private static final class Samples {
+        private final long[] values = new long[SAMPLES];
+        private int next = 0;       // Where the next value is stored
+        private long total = 0;     // The number of values ever recorded
+        private long last = 0;      // The last value recorded
+
+        synchronized void add(final long value) {
+            this.values[this.next] = value;
+            this.next = (this.next + 1) % SAMPLES;
+            this.total++;
+            this.last = value;
+        }
+
+        synchronized void clear() {
+            this.next = 0;
+            this.total = 0;
+            this.last = 0;
+        }
+
+        int size() {
+            return (int) Math.min(this.total, SAMPLES);
+        }
+    }
+}
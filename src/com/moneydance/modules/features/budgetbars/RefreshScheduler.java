@@ -0,0 +1,182 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class to collapse bursts of refresh requests into a single refresh. A 
+ * refresh runs once no request has been received for the debounce window.
+ * The window adapts to the requests: it is doubled each time a request 
+ * arrives within the window, so a reconcile or import that fires many 
+ * events is refreshed once, and it is halved again as the requests slow 
+ * down. A refresh is never delayed more than MAX_STALENESS_MS after the 
+ * first request it covers, so a long burst still shows its progress.
+ *
+ * <p>Refreshes run on a shared background thread. The runnable must hand 
+ * any Swing work off to the event dispatch thread.
+ *
+ * @author  Jerry Jones
+ */
+public class RefreshScheduler {
+    // The limits of the debounce window (ms)
+    static final long MIN_WINDOW_MS = 100;
+    static final long MAX_WINDOW_MS = 2000;
+
+    // The longest a refresh can be delayed after the first request it covers (ms)
+    static final long MAX_STALENESS_MS = 5000;
+
+    // The thread all schedulers run their refreshes on
+    private static ScheduledExecutorService executor = null;
+
+    // The refresh to run
+    private final Runnable refresh;
+
+    // The current debounce window (ms)
+    private long window = MIN_WINDOW_MS;
+
+    // The time of the last request and of the first request not yet refreshed (ms), 0 if none
+    private long lastRequest = 0;
+    private long firstPending = 0;
+
+    // The refresh scheduled, null if none
+    private ScheduledFuture<?> scheduled = null;
+
+    // The number of requests received and refreshes run
+    private long requests = 0;
+    private long refreshes = 0;
+
+    /**
+     * Constructor for a refresh scheduler.
+     * 
+     * @param refresh - The refresh to run.
+     */
+    public RefreshScheduler(final Runnable refresh) {
+        this.refresh = refresh;
+    }
+
+    /**
+     * Request a refresh. The refresh runs once the requests stop for the 
+     * debounce window or when the oldest request reaches the staleness bound.
+     * This may be called from any thread.
+     */
+    public synchronized void enqueueRefresh() {
+        final long now = System.currentTimeMillis();
+        this.requests++;
+
+        // Widen the window during a burst and narrow it as requests slow down
+        if (this.lastRequest != 0)
+            {
+            final long gap = now - this.lastRequest;
+            if (gap < this.window)
+                this.window = Math.min(this.window * 2, MAX_WINDOW_MS);
+            else if (gap > MAX_STALENESS_MS)
+                this.window = MIN_WINDOW_MS;
+            else if (gap > this.window * 2)
+                this.window = Math.max(this.window / 2, MIN_WINDOW_MS);
+            }
+        this.lastRequest = now;
+
+        // Refresh when the window passes but not after the staleness bound
+        if (this.firstPending == 0)
+            this.firstPending = now;
+        final long due = Math.min(now + this.window, this.firstPending + MAX_STALENESS_MS);
+
+        // Move the refresh already scheduled
+        if (this.scheduled != null)
+            this.scheduled.cancel(false);
+        this.scheduled = RefreshScheduler.getExecutor().schedule(this::runRefresh, Math.max(0, due - now), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run the refresh for the requests received so far.
+     */
+    private void runRefresh() {
+        synchronized (this)
+            {
+            // A request may have moved the refresh after this run was started
+            if (this.firstPending == 0)
+                return;
+            this.firstPending = 0;
+            this.scheduled = null;
+            this.refreshes++;
+            }
+
+        // Run the refresh without holding the lock so requests aren't blocked
+        this.refresh.run();
+    }
+
+    /**
+     * @return long - The number of refreshes requested.
+     */
+    public synchronized long getRequests() {
+        return this.requests;
+    }
+
+    /**
+     * @return long - The number of refreshes run.
+     */
+    public synchronized long getRefreshes() {
+        return this.refreshes;
+    }
+
+    /**
+     * @return long - The current debounce window (ms).
+     */
+    public synchronized long getWindow() {
+        return this.window;
+    }
+
+    /**
+     * Get the thread the refreshes run on, starting it the first time.
+     * 
+     * @return ScheduledExecutorService - The executor to schedule refreshes with.
+     */
+    static synchronized ScheduledExecutorService getExecutor() {
+        if (RefreshScheduler.executor == null)
+            {
+            final ScheduledThreadPoolExecutor newExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                final Thread thread = new Thread(runnable, "MonthlyBudgetBars-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            // Refreshes are cancelled each time they are pushed back, so drop
+            // them from the queue rather than keeping them until they are due
+            newExecutor.setRemoveOnCancelPolicy(true);
+            RefreshScheduler.executor = newExecutor;
+            }
+        return RefreshScheduler.executor;
+    }
+}
@@ -44,6 +44,7 @@ import javax.swing.JLabel;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.SwingConstants;
 
 /**
  * This class creates the top bar for the Budget Bars.
@@ -57,6 +58,9 @@ public class TopBar extends JPanel
 
     private final JLabel periodSelector;
 
+    // Shown while the bars are being updated after a burst of changes
+    private final JLabel updatingLabel;
+
     /**
      * Constructor method used to create the top bar for the Monthly Budget Bars.
      * 
@@ -88,6 +92,12 @@ public class TopBar extends JPanel
             }
         });
 
+        // Create the updating indicator, hidden until it is needed
+        this.updatingLabel = new JLabel("Updating\u2026", SwingConstants.CENTER);
+        this.updatingLabel.setToolTipText("Changes such as an import are being applied to the budget bars.");
+        this.updatingLabel.setVisible(false);
+        this.add(this.updatingLabel, BorderLayout.CENTER);
+
         /*
         ** Edit Button
         */
@@ -110,7 +120,18 @@ public class TopBar extends JPanel
 
     void doEdit()
     {
-        new BudgetBarEdit(this.parent);
+        this.parent.showEditor();
+    }
+
+    /**
+     * Show or hide the updating indicator. Must be called on the Swing event
+     * dispatch thread.
+     * 
+     * @param updating - true to show the indicator, false to hide it.
+     */
+    void setUpdating(final boolean updating)
+    {
+        this.updatingLabel.setVisible(updating);
     }
 
     /**
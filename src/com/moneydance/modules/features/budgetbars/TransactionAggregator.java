@@ -0,0 +1,728 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+ * Class to total the transactions of all income and expense categories by 
+ * month. The transactions of a range of months are found with the transaction
+ * date index and every split is bucketed by category and epoch month (see 
+ * EpochMonth) so that the totals for each category can be retrieved for any
+ * window of months in the range, including windows that span years, without
+ * searching the transaction set.
+ * 
+ * <p>A single added, modified or removed transaction is applied to the 
+ * totals without walking the transaction set again. The values a modified or
+ * removed transaction contributed are taken from the transaction as it was 
+ * indexed, so nothing is remembered for each transaction totaled and the bulk
+ * totaling creates no objects per transaction.
+ * 
+ * <p>Cumulative (prefix) sums of the monthly totals are also kept for each
+ * category so that the total of any range of months is a single subtraction.
+ * Daily totals are only kept for a single month, normally the current month,
+ * in a Fenwick tree for each category. A range of days is totaled from the 
+ * cumulative monthly sums and the daily totals of that month, so the days 
+ * of any other month can only be totaled as whole months.
+ * 
+ * <p>The transactions are first totaled into a flat array of monthly totals 
+ * for each category, plus the daily totals of the daily month. The 
+ * cumulative sums and Fenwick tree of each category are then built once 
+ * from these. When a parallelism greater than one is requested the 
+ * transactions of the period are split into about one chunk per thread, 
+ * each chunk is totaled into its own totals on a ForkJoinPool and the 
+ * totals are added together before the rest is built. The results are 
+ * identical to totaling the transactions sequentially.
+ *
+ * @author  Jerry Jones
+ */
+public class TransactionAggregator {
+    // The first epoch month totaled
+    private final int firstMonth;
+
+    // The epoch month after the last month totaled
+    private final int endMonth;
+
+    // The start date of the transactions to total
+    private final int startDate;
+
+    // The end date of the transactions to total (endDate is not included in the totals)
+    private final int endDate;
+
+    // The epoch month the daily totals are kept for
+    private final int dailyMonth;
+
+    // The smallest number of transactions worth totaling in a separate task
+    private static final int MIN_CHUNK_SIZE = 4096;
+
+    // The pool used for parallel totaling and its parallelism
+    private static ForkJoinPool pool = null;
+
+    // The categories to total, null to total all categories
+    private final CategorySelection selection;
+
+    // The monthly and daily totals
+    private final Totals totals;
+
+    // The number of transactions visited when the totals were built
+    private final int visited;
+
+    /**
+     * Construct a TransactionAggregator object to total the transactions of 
+     * every income and expense category by month given the first epoch month
+     * and the number of months to total. Daily totals are kept for the 
+     * current month.
+     * 
+     * @param index - The date index of the transactions to total.
+     * @param firstMonth - The first epoch month to total.
+     * @param months - The number of months to total.
+     * @param parallelism - The number of threads to total with, 1 to total
+     * sequentially on the calling thread.
+     * @param selection - The categories to total, null to total all categories.
+     */
+    public TransactionAggregator(final TransactionDateIndex index, final int firstMonth, final int months, final int parallelism, final CategorySelection selection) {
+        this(index, firstMonth, months, TransactionAggregator.getCurrentMonth(), parallelism, selection);
+    }
+
+    /**
+     * Construct a TransactionAggregator object to total the transactions of 
+     * every income and expense category by month given the first epoch month
+     * and the number of months to total, keeping the daily totals of a 
+     * single month.
+     * 
+     * @param index - The date index of the transactions to total.
+     * @param firstMonth - The first epoch month to total.
+     * @param months - The number of months to total.
+     * @param dailyMonth - The epoch month to keep daily totals for.
+     * @param parallelism - The number of threads to total with, 1 to total
+     * sequentially on the calling thread.
+     * @param selection - The categories to total, null to total all categories.
+     */
+    public TransactionAggregator(final TransactionDateIndex index, final int firstMonth, final int months, final int dailyMonth, final int parallelism, final CategorySelection selection) {
+        // Save the categories to total
+        this.selection = selection;
+
+        // Save the range of months to total and the month to keep daily totals for
+        this.firstMonth = firstMonth;
+        this.endMonth = firstMonth + months;
+        this.dailyMonth = dailyMonth;
+
+        // Get the start and end dates
+        this.startDate = EpochMonth.getFirstDate(this.firstMonth);
+        this.endDate = EpochMonth.getFirstDate(this.endMonth);
+
+        // Find the transactions in the period
+        final int first = index.findFirst(this.startDate);
+        final int last = index.findFirst(this.endDate);
+        this.visited = last - first;
+
+        final BulkTotals bulk;
+        if ((parallelism > 1) && ((last - first) > MIN_CHUNK_SIZE))
+            {
+            // Total one chunk per thread in parallel and add the totals together
+            final int chunkSize = Math.max(MIN_CHUNK_SIZE, ((last - first) + parallelism - 1) / parallelism);
+            bulk = TransactionAggregator.getPool(parallelism).invoke(new ChunkTask(index, first, last, chunkSize));
+            }
+        else
+            {
+            // Total the transactions by category and month
+            bulk = new BulkTotals(this.firstMonth, months, this.dailyMonth);
+            for (int i = first; i < last; i++) 
+                this.postTransaction(bulk, index, i);
+            }
+
+        // Build the cumulative sums and daily trees once all the transactions
+        // are totaled
+        this.totals = new Totals(bulk);
+    }
+
+    /** 
+     * Get the epoch month of today.
+     * 
+     * @return int - The current epoch month.
+     */
+    static int getCurrentMonth() {
+        final Calendar now = Calendar.getInstance();
+        return EpochMonth.of(now.get(Calendar.YEAR), now.get(Calendar.MONTH) + 1);
+    }
+
+    /** 
+     * Get the pool used for parallel totaling, creating a new pool if the 
+     * parallelism changed.
+     * 
+     * @param parallelism - The number of threads to total with.
+     * @return ForkJoinPool - The pool to use.
+     */
+    private static synchronized ForkJoinPool getPool(final int parallelism) {
+        if ((TransactionAggregator.pool == null) || (TransactionAggregator.pool.getParallelism() != parallelism))
+            {
+            if (TransactionAggregator.pool != null)
+                TransactionAggregator.pool.shutdown();
+            TransactionAggregator.pool = new ForkJoinPool(parallelism);
+            }
+        return TransactionAggregator.pool;
+    }
+
+    /** 
+     * Add a transaction and all of its splits to the monthly totals. The 
+     * values of the transaction as it was before must be removed first.
+     * 
+     * @param txn - The transaction that was added or modified.
+     * @return Posting - The list of postings made, null if none.
+     */
+    Posting addTransaction(final LedgerSource.Transaction txn) {
+        return this.postTransaction(txn, 1L);
+    }
+
+    /** 
+     * Remove the values of a transaction from the monthly totals.
+     * 
+     * @param txn - The transaction as it was when it was totaled (see 
+     * TransactionDateIndex.remove()).
+     * @return Posting - The list of postings removed, null if none.
+     */
+    Posting removeTransaction(final LedgerSource.Transaction txn) {
+        return this.postTransaction(txn, -1L);
+    }
+
+    /** 
+     * Post the matching splits of a single transaction to the totals.
+     * 
+     * @param txn - The transaction to post.
+     * @param sign - 1 to add the values of the transaction, -1 to remove them.
+     * @return Posting - The list of postings made, null if none. The values 
+     * of the postings are the values of the splits, whatever the sign.
+     */
+    private Posting postTransaction(final LedgerSource.Transaction txn, final long sign) {
+        // Only transactions in the period being totaled are posted
+        final int date = txn.getDate();
+        if ((date < this.startDate) || (date >= this.endDate))
+            return null;
+
+        // Post each of the matching splits
+        final int month = EpochMonth.ofDate(date);
+        Posting postings = null;
+        for (int i = 0; i < txn.getSplitCount(); i++)
+            {
+            final LedgerSource.Split split = txn.getSplit(i);
+            if (this.matches(split.getCategory()))
+                {
+                this.totals.add(split.getCategory().getID(), month, date, sign * split.getValue());
+                postings = new Posting(split.getCategory(), month, date, split.getValue(), postings);
+                }
+            }
+        return postings;
+    }
+
+    /** 
+     * Post the matching splits of an indexed transaction to a set of bulk
+     * totals.
+     * 
+     * @param target - The totals to post to.
+     * @param index - The date index of the transactions.
+     * @param position - The position of the transaction in the index.
+     */
+    private void postTransaction(final BulkTotals target, final TransactionDateIndex index, final int position) {
+        // Only transactions in the period being totaled are posted
+        final int date = index.getDate(position);
+        if ((date < this.startDate) || (date >= this.endDate))
+            return;
+
+        // Post each of the matching splits. Only the days of the daily month
+        // are totaled by day.
+        final int month = EpochMonth.ofDate(date);
+        final int day = (month == this.dailyMonth) ? (date % 100) - 1 : -1;
+        for (int split = index.getFirstSplit(position); split < index.getEndSplit(position); split++)
+            {
+            final LedgerSource.Category category = index.getSplitCategory(split);
+            if (this.matches(category))
+                target.add(category.getID(), month - this.firstMonth, day, index.getSplitValue(split));
+            }
+    }
+
+    /**
+     * Get the number of transactions visited when the totals were built.
+     * Transactions applied since then are not counted.
+     * 
+     * @return int - The number of transactions visited.
+     */
+    public int getTransactionsVisited() {
+        return this.visited;
+    }
+
+    /** 
+     * Check if the months totaled include a range of months.
+     * 
+     * @param fromMonth - The first epoch month of the range.
+     * @param toMonth - The epoch month after the last month of the range.
+     * @return boolean - true if all the months of the range are totaled.
+     */
+    public boolean covers(final int fromMonth, final int toMonth) {
+        return (fromMonth >= this.firstMonth) && (toMonth <= this.endMonth);
+    }
+
+    /** 
+     * Get the month the daily totals are kept for.
+     * 
+     * @return int - The epoch month of the daily totals.
+     */
+    public int getDailyMonth() {
+        return this.dailyMonth;
+    }
+
+    /** 
+     * Check if the same categories are totaled as a selection would total.
+     * 
+     * @param newSelection - The categories to total, null for all categories.
+     * @return boolean - true if the same categories are totaled.
+     */
+    public boolean isFor(final CategorySelection newSelection) {
+        if ((this.selection == null) || (newSelection == null))
+            return (this.selection == newSelection);
+        else
+            return this.selection.getKey().equals(newSelection.getKey());
+    }
+
+    /** 
+     * Get the raw transaction total for a category for the month requested.
+     * 
+     * <p><b>Note:</b> The value returned is the sum of the transaction values,
+     * no sign adjustment is made for income categories.
+     * 
+     * @param categoryID - The ID (UUID) of the category to retrieve.
+     * @param epochMonth - The epoch month to return.
+     * @return long - The total of the transactions for the month requested,
+     * 0 if the month is not totaled.
+     */
+    public long getTotalForMonth(final String categoryID, final int epochMonth) {
+        final long[] monthly = this.totals.buckets.get(categoryID);
+        if ((monthly == null) || (epochMonth < this.firstMonth) || (epochMonth >= this.endMonth))
+            return 0L;
+        else
+            return monthly[epochMonth - this.firstMonth];
+    }
+
+    /** 
+     * Get the raw transaction total for a category for a range of months. 
+     * The range may span years.
+     * 
+     * @param categoryID - The ID (UUID) of the category to retrieve.
+     * @param fromMonth - The first epoch month of the range.
+     * @param toMonth - The epoch month after the last month of the range.
+     * @return long - The total of the transactions for the months of the 
+     * range that are totaled.
+     */
+    public long getTotal(final String categoryID, final int fromMonth, final int toMonth) {
+        final long[] prefix = this.totals.prefixSums.get(categoryID);
+        final int from = Math.max(fromMonth, this.firstMonth) - this.firstMonth;
+        final int to = Math.min(toMonth, this.endMonth) - this.firstMonth;
+        if ((prefix == null) || (from >= to))
+            return 0L;
+        else
+            return prefix[to] - prefix[from];
+    }
+
+    /** 
+     * Get the raw transaction total for a category for a range of days. The
+     * range is clipped to the months totaled. Both dates must either be the
+     * first day of a month or a day of the daily month (see getDailyMonth()).
+     * 
+     * @param categoryID - The ID (UUID) of the category to retrieve.
+     * @param fromDate - The first date of the range (YYYYMMDD).
+     * @param toDate - The date after the last date of the range (YYYYMMDD).
+     * @return long - The total of the transactions for the days of the range.
+     * @throws IllegalArgumentException if a date splits a month that isn't
+     * totaled by day.
+     */
+    public long getTotalForDays(final String categoryID, final int fromDate, final int toDate) {
+        return this.totals.getTotalForDays(categoryID, fromDate, toDate);
+    }
+
+    /** 
+     * Convert a date to a day number. This is done with integer arithmetic
+     * since it is done for every transaction totaled.
+     * 
+     * @param date - The date (YYYYMMDD).
+     * @return long - The number of days since 1970-01-01.
+     */
+    static long toDay(final int date) {
+        // Count the years from March so the leap day is the last day of the year
+        final int month = (date / 100) % 100;
+        final int year = (month <= 2) ? (date / 10000) - 1 : (date / 10000);
+
+        // Days since the start of the 400 year cycle of the year
+        final int era = Math.floorDiv(year, 400);
+        final int yearOfEra = year - (era * 400);
+        final int dayOfYear = ((((153 * ((month > 2) ? month - 3 : month + 9)) + 2) / 5) + (date % 100)) - 1;
+        final int dayOfEra = (yearOfEra * 365) + (yearOfEra / 4) - (yearOfEra / 100) + dayOfYear;
+
+        // 719468 days from 0000-03-01 to 1970-01-01
+        return ((era * 146097L) + dayOfEra) - 719468L;
+    }
+
+    /** 
+     * Check if a split should be totaled.
+     * 
+     * @param category - The category the split is posted to, null if it isn't
+     * posted to a category.
+     * @return boolean - true if the split is posted to an income or expense
+     * category being totaled, false otherwise.
+     */
+    private boolean matches(final LedgerSource.Category category) {
+        if (category == null)
+            return false;
+
+        final Account.AccountType type = category.getType();
+        if ((type != Account.AccountType.INCOME) && (type != Account.AccountType.EXPENSE))
+            return false;
+
+        // Only the selected categories are totaled when there is a selection
+        return (this.selection == null) || (this.selection.isComputed(category));
+    }
+
+    /**
+     * The monthly totals by category of the transactions totaled in bulk, one 
+     * flat array per category, and the daily totals of the daily month. Each
+     * parallel task totals into its own instance and the instances are then
+     * merged.
+     */
+    static final class BulkTotals {
+        // The first epoch month totaled
+        private final int firstMonth;
+
+        // The number of months totaled
+        private final int months;
+
+        // The epoch month totaled by day and its number of days
+        private final int dailyMonth;
+        private final int days;
+
+        // Monthly totals by category ID, indexed by the epoch month - firstMonth
+        final Map<String, long[]> monthlyByCategory = new HashMap<String, long[]>();
+
+        // Daily totals of the daily month by category ID, indexed by the day of the month - 1
+        final Map<String, long[]> dailyByCategory = new HashMap<String, long[]>();
+
+        BulkTotals(final int firstMonth, final int months, final int dailyMonth) {
+            this.firstMonth = firstMonth;
+            this.months = months;
+            this.dailyMonth = dailyMonth;
+            this.days = TransactionAggregator.getDays(dailyMonth);
+        }
+
+        /** 
+         * Add a value to the totals of a category.
+         * 
+         * @param categoryID - The ID of the category to update.
+         * @param month - The position of the month to update (epoch month - firstMonth).
+         * @param day - The day of the daily month to update (day of the month - 1),
+         * -1 if the value isn't in the daily month.
+         * @param value - The value to add.
+         */
+        void add(final String categoryID, final int month, final int day, final long value) {
+            long[] monthly = this.monthlyByCategory.get(categoryID);
+            if (monthly == null)
+                {
+                monthly = new long[this.months];
+                this.monthlyByCategory.put(categoryID, monthly);
+                }
+            monthly[month] += value;
+
+            if (day >= 0)
+                {
+                long[] daily = this.dailyByCategory.get(categoryID);
+                if (daily == null)
+                    {
+                    daily = new long[this.days];
+                    this.dailyByCategory.put(categoryID, daily);
+                    }
+                daily[day] += value;
+                }
+        }
+
+        /** 
+         * Merge another set of totals into this one.
+         * 
+         * @param other - The totals to merge.
+         */
+        void merge(final BulkTotals other) {
+            BulkTotals.merge(this.monthlyByCategory, other.monthlyByCategory);
+            BulkTotals.merge(this.dailyByCategory, other.dailyByCategory);
+        }
+
+        /** 
+         * Merge the totals of each category of one map into another.
+         * 
+         * @param target - The totals to merge into.
+         * @param source - The totals to merge.
+         */
+        private static void merge(final Map<String, long[]> target, final Map<String, long[]> source) {
+            for (final Map.Entry<String, long[]> entry : source.entrySet())
+                {
+                final long[] values = target.get(entry.getKey());
+                if (values == null)
+                    target.put(entry.getKey(), entry.getValue());
+                else
+                    {
+                    for (int i = 0; i < values.length; i++)
+                        values[i] += entry.getValue()[i];
+                    }
+                }
+        }
+    }
+
+    /** 
+     * Get the number of days in a month.
+     * 
+     * @param epochMonth - The epoch month.
+     * @return int - The number of days.
+     */
+    static int getDays(final int epochMonth) {
+        return (int) (TransactionAggregator.toDay(EpochMonth.getFirstDate(epochMonth + 1)) - TransactionAggregator.toDay(EpochMonth.getFirstDate(epochMonth)));
+    }
+
+    /**
+     * The monthly totals by category and the daily totals of the daily month,
+     * built from the totals of the transactions totaled in bulk and then kept
+     * up to date as single transactions are applied.
+     */
+    static final class Totals {
+        // The first epoch month totaled
+        private final int firstMonth;
+
+        // The number of months totaled
+        private final int months;
+
+        // The epoch month totaled by day and its number of days
+        private final int dailyMonth;
+        private final int days;
+
+        // Monthly totals by category ID, indexed by the epoch month - firstMonth
+        final Map<String, long[]> buckets;
+
+        // Cumulative monthly totals by category ID. [i] is the total of the 
+        // months before firstMonth + i.
+        final Map<String, long[]> prefixSums = new HashMap<String, long[]>();
+
+        // Daily totals of the daily month by category ID, indexed by the day of the month - 1
+        final Map<String, FenwickTree> daily = new HashMap<String, FenwickTree>();
+
+        /** 
+         * Build the totals from the bulk totals of each category.
+         * 
+         * @param bulk - The totals of the transactions totaled.
+         */
+        Totals(final BulkTotals bulk) {
+            this.firstMonth = bulk.firstMonth;
+            this.months = bulk.months;
+            this.dailyMonth = bulk.dailyMonth;
+            this.days = bulk.days;
+            this.buckets = bulk.monthlyByCategory;
+
+            // Add up the months of each category
+            for (final Map.Entry<String, long[]> entry : this.buckets.entrySet())
+                {
+                final long[] monthly = entry.getValue();
+                final long[] prefix = new long[this.months + 1];
+                for (int i = 0; i < this.months; i++)
+                    prefix[i + 1] = prefix[i] + monthly[i];
+                this.prefixSums.put(entry.getKey(), prefix);
+                }
+
+            // Build the tree of daily totals of each category in one pass
+            for (final Map.Entry<String, long[]> entry : bulk.dailyByCategory.entrySet())
+                this.daily.put(entry.getKey(), new FenwickTree(entry.getValue()));
+        }
+
+        /** 
+         * Get the raw transaction total for a category for a range of days.
+         * 
+         * @param categoryID - The ID of the category to retrieve.
+         * @param fromDate - The first date of the range (YYYYMMDD).
+         * @param toDate - The date after the last date of the range (YYYYMMDD).
+         * @return long - The total of the transactions for the days of the
+         * range that are totaled.
+         */
+        long getTotalForDays(final String categoryID, final int fromDate, final int toDate) {
+            final long[] prefix = this.prefixSums.get(categoryID);
+            if ((prefix == null) || (fromDate >= toDate))
+                return 0L;
+            else
+                return this.getTotalBefore(categoryID, prefix, toDate) - this.getTotalBefore(categoryID, prefix, fromDate);
+        }
+
+        /** 
+         * Get the raw transaction total for a category of the days totaled 
+         * before a date.
+         * 
+         * @param categoryID - The ID of the category to retrieve.
+         * @param prefix - The cumulative monthly totals of the category.
+         * @param date - The date (YYYYMMDD).
+         * @return long - The total of the transactions before the date.
+         */
+        private long getTotalBefore(final String categoryID, final long[] prefix, final int date) {
+            // Dates outside the months totaled are clipped
+            final int month = EpochMonth.ofDate(date) - this.firstMonth;
+            if (month < 0)
+                return 0L;
+            else if (month >= this.months)
+                return prefix[this.months];
+
+            // Add the days of the month before the date
+            final int day = (date % 100) - 1;
+            if (day == 0)
+                return prefix[month];
+            else if ((month + this.firstMonth) != this.dailyMonth)
+                throw new IllegalArgumentException("Days of "+EpochMonth.getYear(month + this.firstMonth)+"-"+EpochMonth.getMonth(month + this.firstMonth)+" are not totaled");
+
+            final FenwickTree dailyTotals = this.daily.get(categoryID);
+            return prefix[month] + ((dailyTotals == null) ? 0L : dailyTotals.prefixSum(day));
+        }
+
+        /** 
+         * Add a value to the monthly and daily totals of a category.
+         * 
+         * @param categoryID - The ID of the category to update.
+         * @param month - The epoch month to update.
+         * @param date - The date to update (YYYYMMDD).
+         * @param value - The value to add.
+         */
+        void add(final String categoryID, final int month, final int date, final long value) {
+            // Get the totals for this category, creating them if needed
+            long[] monthly = this.buckets.get(categoryID);
+            if (monthly == null)
+                {
+                monthly = new long[this.months];
+                this.buckets.put(categoryID, monthly);
+                this.prefixSums.put(categoryID, new long[this.months + 1]);
+                }
+
+            // Update the monthly total
+            monthly[month - this.firstMonth] += value;
+
+            // Update the daily totals if this is the daily month
+            if (month == this.dailyMonth)
+                {
+                FenwickTree dailyTotals = this.daily.get(categoryID);
+                if (dailyTotals == null)
+                    {
+                    dailyTotals = new FenwickTree(this.days);
+                    this.daily.put(categoryID, dailyTotals);
+                    }
+                dailyTotals.add((date % 100) - 1, value);
+                }
+
+            // Update the cumulative totals of the months after this one
+            final long[] prefix = this.prefixSums.get(categoryID);
+            for (int i = month - this.firstMonth + 1; i <= this.months; i++)
+                prefix[i] += value;
+        }
+    }
+
+    /**
+     * Task to total a chunk of the indexed transactions, splitting it in two 
+     * when it is larger than the chunk size.
+     */
+    private final class ChunkTask extends RecursiveTask<BulkTotals> {
+        private static final long serialVersionUID = 1L;
+
+        // The transaction index and the range of positions to total
+        private final TransactionDateIndex index;
+        private final int from;
+        private final int to;
+
+        // The largest number of transactions to total without splitting
+        private final int chunkSize;
+
+        ChunkTask(final TransactionDateIndex index, final int from, final int to, final int chunkSize) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected BulkTotals compute() {
+            if ((this.to - this.from) <= this.chunkSize)
+                {
+                final BulkTotals chunkTotals = new BulkTotals(TransactionAggregator.this.firstMonth, TransactionAggregator.this.endMonth - TransactionAggregator.this.firstMonth, TransactionAggregator.this.dailyMonth);
+                for (int i = this.from; i < this.to; i++)
+                    TransactionAggregator.this.postTransaction(chunkTotals, this.index, i);
+                return chunkTotals;
+                }
+
+            // Split the range in two, total the halves and merge them
+            final int middle = (this.from + this.to) >>> 1;
+            final ChunkTask left = new ChunkTask(this.index, this.from, middle, this.chunkSize);
+            left.fork();
+            final BulkTotals right = new ChunkTask(this.index, middle, this.to, this.chunkSize).compute();
+            final BulkTotals merged = left.join();
+            merged.merge(right);
+            return merged;
+        }
+    }
+
+    /**
+     * A value posted to the monthly totals of a category when a single 
+     * transaction is applied. Postings for the same transaction are chained 
+     * together.
+     */
+    static final class Posting {
+        // The category posted to
+        final LedgerSource.Category category;
+
+        // The epoch month posted to
+        final int month;
+
+        // The date of the transaction posted (YYYYMMDD)
+        final int date;
+
+        // The raw transaction value posted
+        final long value;
+
+        // The next posting for the same transaction
+        final Posting next;
+
+        Posting(final LedgerSource.Category category, final int month, final int date, final long value, final Posting next) {
+            this.category = category;
+            this.month = month;
+            this.date = date;
+            this.value = value;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class to index the transactions of a ledger by date. The transactions are
+ * visited once and sorted by date so that the transactions of a period can 
+ * be found with a binary search rather than by testing every transaction in
+ * the ledger. The index is kept up to date as transactions are added, 
+ * modified and removed. The date of each transaction is also kept by ID so
+ * a transaction can be found without searching the whole index when its
+ * date has been changed.
+ * 
+ * <p>The transactions are held in primitive arrays, one entry per transaction
+ * for the date, ID and splits and one entry per split for the category and 
+ * value, so no objects are created for the transactions indexed. Only the 
+ * splits posted to income and expense categories are indexed and 
+ * transactions without any (transfers between accounts) are left out.
+ * 
+ * <p><b>Note:</b> Whole transactions are indexed rather than splits since 
+ * the splits of a transaction can change when the transaction is modified.
+ * All splits share the date of their transaction.
+ *
+ * @author  Jerry Jones
+ */
+public class TransactionDateIndex {
+    // The initial room to allocate when the ledger has no transactions
+    private static final int INITIAL_CAPACITY = 256;
+
+    // The date of each transaction (YYYYMMDD), sorted ascending
+    private int[] dates;
+
+    // The ID of each transaction in the same order as the dates
+    private String[] ids;
+
+    // The position of the first split of each transaction in the split 
+    // arrays and the number of splits of each transaction
+    private int[] firstSplits;
+    private int[] splitCounts;
+
+    // The number of transactions in the index
+    private int size;
+
+    // The date of each transaction in the index by ID. Positions change as
+    // transactions are added and removed but the date indexed doesn't.
+    private final Map<String, Integer> datesByID;
+
+    // The category and value of each split. The splits of a transaction are
+    // stored together and splits are only appended, the room used by the
+    // splits of removed transactions is reclaimed by compactSplits().
+    private LedgerSource.Category[] splitCategories;
+    private long[] splitValues;
+
+    // The number of split positions used and the number of those used by
+    // transactions that have since been removed
+    private int splitSize;
+    private int splitsRemoved;
+
+    // The sum of the hashes of the transactions in the index. A sum doesn't
+    // depend on the order the transactions were added in.
+    private long fingerprint = 0;
+
+    /**
+     * Construct a date index of all the transactions in a ledger.
+     * 
+     * @param ledger - The ledger to index.
+     */
+    public TransactionDateIndex(final LedgerSource ledger) {
+        this.dates = new int[INITIAL_CAPACITY];
+        this.ids = new String[INITIAL_CAPACITY];
+        this.firstSplits = new int[INITIAL_CAPACITY];
+        this.splitCounts = new int[INITIAL_CAPACITY];
+        this.splitCategories = new LedgerSource.Category[INITIAL_CAPACITY];
+        this.splitValues = new long[INITIAL_CAPACITY];
+
+        // Append the transactions in the order they are visited
+        ledger.visitTransactions(new LedgerSource.TransactionVisitor() {
+            @Override
+            public void transaction(final String ID, final int date) {
+                // Drop the last transaction if it had no splits to index
+                if ((TransactionDateIndex.this.size > 0) && (TransactionDateIndex.this.splitCounts[TransactionDateIndex.this.size - 1] == 0))
+                    TransactionDateIndex.this.size--;
+
+                TransactionDateIndex.this.ensureCapacity(TransactionDateIndex.this.size + 1);
+                TransactionDateIndex.this.dates[TransactionDateIndex.this.size] = date;
+                TransactionDateIndex.this.ids[TransactionDateIndex.this.size] = ID;
+                TransactionDateIndex.this.firstSplits[TransactionDateIndex.this.size] = TransactionDateIndex.this.splitSize;
+                TransactionDateIndex.this.splitCounts[TransactionDateIndex.this.size] = 0;
+                TransactionDateIndex.this.size++;
+            }
+
+            @Override
+            public void split(final LedgerSource.Category category, final long value) {
+                if ((category != null) && (TransactionDateIndex.this.size > 0))
+                    {
+                    TransactionDateIndex.this.appendSplit(category, value);
+                    TransactionDateIndex.this.splitCounts[TransactionDateIndex.this.size - 1]++;
+                    }
+            }
+        });
+        if ((this.size > 0) && (this.splitCounts[this.size - 1] == 0))
+            this.size--;
+
+        // Sort by date. The date and the position are packed into one key so
+        // a primitive sort can be used and transactions with the same date 
+        // stay in the order they were visited.
+        final long[] keys = new long[this.size];
+        for (int i = 0; i < this.size; i++)
+            keys[i] = (((long) this.dates[i]) << 32) | i;
+        Arrays.sort(keys);
+
+        final int[] sortedDates = new int[this.dates.length];
+        final String[] sortedIDs = new String[this.ids.length];
+        final int[] sortedFirstSplits = new int[this.firstSplits.length];
+        final int[] sortedSplitCounts = new int[this.splitCounts.length];
+        for (int i = 0; i < this.size; i++)
+            {
+            final int from = (int) keys[i];
+            sortedDates[i] = this.dates[from];
+            sortedIDs[i] = this.ids[from];
+            sortedFirstSplits[i] = this.firstSplits[from];
+            sortedSplitCounts[i] = this.splitCounts[from];
+            }
+        this.dates = sortedDates;
+        this.ids = sortedIDs;
+        this.firstSplits = sortedFirstSplits;
+        this.splitCounts = sortedSplitCounts;
+
+        // Start the fingerprint from the transactions indexed and remember their dates
+        this.datesByID = new HashMap<String, Integer>(Math.max(16, (this.size * 4) / 3 + 1));
+        for (int i = 0; i < this.size; i++)
+            {
+            this.fingerprint += this.hash(i);
+            this.datesByID.put(this.ids[i], Integer.valueOf(this.dates[i]));
+            }
+    }
+
+    /** 
+     * Get the number of transactions in the index.
+     * 
+     * @return int - The number of transactions.
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /** 
+     * Get the date of the transaction at a position.
+     * 
+     * @param position - The position in the index (0...size-1).
+     * @return int - The date of the transaction (YYYYMMDD).
+     */
+    public int getDate(final int position) {
+        return this.dates[position];
+    }
+
+    /** 
+     * Get the ID of the transaction at a position.
+     * 
+     * @param position - The position in the index (0...size-1).
+     * @return String - The ID of the transaction.
+     */
+    public String getID(final int position) {
+        return this.ids[position];
+    }
+
+    /** 
+     * Get the first split of the transaction at a position. The splits of 
+     * the transaction are getFirstSplit(position)...getEndSplit(position)-1.
+     * 
+     * @param position - The position in the index (0...size-1).
+     * @return int - The first split of the transaction.
+     */
+    public int getFirstSplit(final int position) {
+        return this.firstSplits[position];
+    }
+
+    /** 
+     * Get the split after the last split of the transaction at a position.
+     * 
+     * @param position - The position in the index (0...size-1).
+     * @return int - The split after the last split of the transaction.
+     */
+    public int getEndSplit(final int position) {
+        return this.firstSplits[position] + this.splitCounts[position];
+    }
+
+    /** 
+     * Get the category of a split.
+     * 
+     * @param split - The split (see getFirstSplit()).
+     * @return LedgerSource.Category - The category posted to.
+     */
+    public LedgerSource.Category getSplitCategory(final int split) {
+        return this.splitCategories[split];
+    }
+
+    /** 
+     * Get the value of a split.
+     * 
+     * @param split - The split (see getFirstSplit()).
+     * @return long - The value posted.
+     */
+    public long getSplitValue(final int split) {
+        return this.splitValues[split];
+    }
+
+    /** 
+     * Find the position of the first transaction dated on or after the date
+     * passed.
+     * 
+     * @param date - The date to search for (YYYYMMDD).
+     * @return int - The position of the first transaction on or after the 
+     * date, size if there are none.
+     */
+    public int findFirst(final int date) {
+        int low = 0;
+        int high = this.size;
+        while (low < high)
+            {
+            final int middle = (low + high) >>> 1;
+            if (this.dates[middle] < date)
+                low = middle + 1;
+            else
+                high = middle;
+            }
+        return low;
+    }
+
+    /** 
+     * Get a fingerprint of the transactions in the index. The fingerprint 
+     * changes when a transaction is added or removed or when the date, 
+     * category or amount of any split changes. It is used to tell if saved
+     * totals are still valid. The fingerprint is kept up to date as 
+     * transactions are added and removed so getting it is cheap.
+     * 
+     * @return long - The fingerprint.
+     */
+    public long getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /** 
+     * Add a transaction to the index. A transaction without any splits posted
+     * to a category is not indexed.
+     * 
+     * @param txn - The transaction to add.
+     */
+    public void add(final LedgerSource.Transaction txn) {
+        // Count the splits to index
+        int count = 0;
+        for (int i = 0; i < txn.getSplitCount(); i++)
+            {
+            if (txn.getSplit(i).getCategory() != null)
+                count++;
+            }
+        if (count == 0)
+            return;
+
+        // Make room for one more transaction
+        this.ensureCapacity(this.size + 1);
+
+        // Insert it after any transactions with the same date
+        final int date = txn.getDate();
+        final int position = this.findFirst(date + 1);
+        System.arraycopy(this.dates, position, this.dates, position + 1, this.size - position);
+        System.arraycopy(this.ids, position, this.ids, position + 1, this.size - position);
+        System.arraycopy(this.firstSplits, position, this.firstSplits, position + 1, this.size - position);
+        System.arraycopy(this.splitCounts, position, this.splitCounts, position + 1, this.size - position);
+        this.dates[position] = date;
+        this.ids[position] = txn.getID();
+        this.firstSplits[position] = this.splitSize;
+        this.splitCounts[position] = count;
+        this.size++;
+        this.datesByID.put(txn.getID(), Integer.valueOf(date));
+
+        // Append its splits
+        for (int i = 0; i < txn.getSplitCount(); i++)
+            {
+            final LedgerSource.Split split = txn.getSplit(i);
+            if (split.getCategory() != null)
+                this.appendSplit(split.getCategory(), split.getValue());
+            }
+
+        // Add it to the fingerprint
+        this.fingerprint += this.hash(position);
+    }
+
+    /** 
+     * Remove a transaction from the index. The transaction is found by its
+     * ID so a copy of the transaction indexed may be passed, for example the
+     * transaction as it is after it was modified.
+     * 
+     * @param txn - The transaction to remove.
+     * @return LedgerSource.Transaction - The transaction as it was indexed, 
+     * null if it was not found.
+     */
+    public LedgerSource.Transaction remove(final LedgerSource.Transaction txn) {
+        return this.remove(txn.getID());
+    }
+
+    /** 
+     * Remove a transaction from the index by its ID. It is found under the
+     * date it was indexed with, so only the transactions of that date are
+     * searched.
+     * 
+     * @param ID - The ID of the transaction to remove.
+     * @return LedgerSource.Transaction - The transaction as it was indexed, 
+     * null if it was not found.
+     */
+    public LedgerSource.Transaction remove(final String ID) {
+        final Integer date = this.datesByID.remove(ID);
+        if (date == null)
+            return null;
+
+        int position = -1;
+        for (int i = this.findFirst(date.intValue()); (i < this.size) && (this.dates[i] == date.intValue()); i++)
+            {
+            if (this.ids[i].equals(ID))
+                {
+                position = i;
+                break;
+                }
+            }
+
+        if (position == -1)
+            return null;
+
+        // Copy the transaction as it was indexed
+        final LedgerSource.Split[] splits = new LedgerSource.Split[this.splitCounts[position]];
+        for (int i = 0; i < splits.length; i++)
+            splits[i] = new LedgerSource.Split(this.splitCategories[this.firstSplits[position] + i], this.splitValues[this.firstSplits[position] + i]);
+        final LedgerSource.Transaction removed = new LedgerSource.Transaction(this.ids[position], this.dates[position], splits);
+
+        // Take it out of the fingerprint. Its splits are no longer used.
+        this.fingerprint -= this.hash(position);
+        this.splitsRemoved += this.splitCounts[position];
+
+        // Close the gap
+        System.arraycopy(this.dates, position + 1, this.dates, position, this.size - position - 1);
+        System.arraycopy(this.ids, position + 1, this.ids, position, this.size - position - 1);
+        System.arraycopy(this.firstSplits, position + 1, this.firstSplits, position, this.size - position - 1);
+        System.arraycopy(this.splitCounts, position + 1, this.splitCounts, position, this.size - position - 1);
+        this.size--;
+        this.ids[this.size] = null;
+
+        // Reclaim the room used by removed splits once it is most of the room used
+        if (this.splitsRemoved > (this.splitSize / 2))
+            this.compactSplits();
+        return removed;
+    }
+
+    /** 
+     * Calculate the hash of an indexed transaction for the fingerprint. The
+     * hash is mixed so that similar transactions don't cancel out in the sum.
+     * 
+     * @param position - The position of the transaction in the index.
+     * @return long - The hash of the transaction.
+     */
+    private long hash(final int position) {
+        long hash = (this.ids[position].hashCode() * 31L) + this.dates[position];
+        for (int split = this.firstSplits[position]; split < this.firstSplits[position] + this.splitCounts[position]; split++)
+            {
+            hash = (hash * 31) + this.splitCategories[split].getID().hashCode();
+            hash = (hash * 31) + this.splitValues[split];
+            }
+
+        // Mix the bits (the finalizer of MurmurHash3)
+        hash ^= (hash >>> 33);
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= (hash >>> 33);
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= (hash >>> 33);
+        return hash;
+    }
+
+    /** 
+     * Make sure there is room for a number of transactions.
+     * 
+     * @param capacity - The number of transactions to make room for.
+     */
+    private void ensureCapacity(final int capacity) {
+        if (capacity > this.dates.length)
+            {
+            final int newCapacity = Math.max(capacity, this.dates.length * 2);
+            this.dates = Arrays.copyOf(this.dates, newCapacity);
+            this.ids = Arrays.copyOf(this.ids, newCapacity);
+            this.firstSplits = Arrays.copyOf(this.firstSplits, newCapacity);
+            this.splitCounts = Arrays.copyOf(this.splitCounts, newCapacity);
+            }
+    }
+
+    /** 
+     * Append a split to the split arrays.
+     * 
+     * @param category - The category posted to.
+     * @param value - The value posted.
+     */
+    private void appendSplit(final LedgerSource.Category category, final long value) {
+        if (this.splitSize == this.splitValues.length)
+            {
+            final int newCapacity = this.splitSize * 2;
+            this.splitCategories = Arrays.copyOf(this.splitCategories, newCapacity);
+            this.splitValues = Arrays.copyOf(this.splitValues, newCapacity);
+            }
+        this.splitCategories[this.splitSize] = category;
+        this.splitValues[this.splitSize] = value;
+        this.splitSize++;
+    }
+
+    /** 
+     * Copy the splits of the transactions still indexed to new split arrays,
+     * dropping the splits of the transactions removed.
+     */
+    private void compactSplits() {
+        final int capacity = Math.max(INITIAL_CAPACITY, this.splitSize - this.splitsRemoved);
+        final LedgerSource.Category[] newCategories = new LedgerSource.Category[capacity];
+        final long[] newValues = new long[capacity];
+        int newSize = 0;
+        for (int i = 0; i < this.size; i++)
+            {
+            System.arraycopy(this.splitCategories, this.firstSplits[i], newCategories, newSize, this.splitCounts[i]);
+            System.arraycopy(this.splitValues, this.firstSplits[i], newValues, newSize, this.splitCounts[i]);
+            this.firstSplits[i] = newSize;
+            newSize += this.splitCounts[i];
+            }
+        this.splitCategories = newCategories;
+        this.splitValues = newValues;
+        this.splitSize = newSize;
+        this.splitsRemoved = 0;
+    }
+}
@@ -30,106 +30,49 @@
  */ 
 package com.moneydance.modules.features.budgetbars;
 
-import com.infinitekind.moneydance.model.AbstractTxn;
 import com.infinitekind.moneydance.model.Account;
-import com.infinitekind.moneydance.model.AccountBook;
-import com.infinitekind.moneydance.model.Txn;
-import com.infinitekind.moneydance.model.TxnSearch;
-import com.infinitekind.moneydance.model.TxnSet;
-import com.infinitekind.util.DateUtil;
 
 /**
  * Class to total transactions for a given category item.
  *
  * @author  Jerry Jones
  */
-public class TransactionTotals implements TxnSearch{
-	// Transaction set for this account
-	private final TxnSet txnSet;
-
-	// The account object these totals are for
-	private final Account acct;
-
-	// The start date of the transactions to total
-	private final int startDate;
-
-	// The end date of the transactions to total (endDate is not included in the totals)
-	private int endDate;
-
+public class TransactionTotals {
 	/**
 	 * Construct a TransactionTotals object to return actual spending totals by 
-	 * month for a given account (category) given a start date and the 
-	 * number of months to return.
+	 * month for a given ledger category given a start month and the 
+	 * number of months to return. The totals are read from the buckets of the
+	 * transaction aggregator rather than searching the transaction set, and 
+	 * the total of the period is a single range query of its prefix sums.
 	 * 
 	 * @param item - The budget category item to total
-	 * @param book - The feature module (extension) context.
-	 * @param acct - The account (category) to total.
-	 * @param budgetYear - The year we are editing (YYYY).
+	 * @param aggregator - The transaction aggregator holding the monthly totals.
+	 * @param category - The ledger category to total.
+	 * @param budgetYear - The year to total (YYYY).
 	 * @param startMonth - The starting month to total (1...12).
 	 * @param months - The number of months to total.
+	 * @param monthStartDate - The first day of this month (YYYYMMDD).
+	 * @param tomorrowDate - The day after today (YYYYMMDD).
 	 */
-	public TransactionTotals(final BudgetCategoryItem item, final AccountBook book, final Account acct, final int budgetYear, final int startMonth, final int months) {
-		// Save the account for later
-		this.acct = acct;
-
-		// Get the start date
-		this.startDate = DateUtil.getDate(budgetYear, startMonth, 1);
+	public TransactionTotals(final BudgetCategoryItem item, final TransactionAggregator aggregator, final LedgerSource.Category category, final int budgetYear, final int startMonth, final int months, final int monthStartDate, final int tomorrowDate) {
+		// Income is negated
+		final long sign = (category.getType() == Account.AccountType.INCOME) ? -1 : 1;
 
-		// Calculate the end date
-		if ((startMonth + months) > 12)
-			this.endDate = DateUtil.getDate(budgetYear + 1, 1, 1);
-		else
-			this.endDate = DateUtil.getDate(budgetYear, startMonth + months, 1);
+		// Total all the months requested with a single range query
+		final int endMonth = Math.min(startMonth + months, 13);
+		final long total = aggregator.getTotal(category.getID(), EpochMonth.of(budgetYear, startMonth), EpochMonth.of(budgetYear, endMonth));
+		item.setActualTotal(item.getActualTotal() + (sign * total));
 
-		// Get a txnSet for the category specified
-		this.txnSet = book.getTransactionSet().getTransactions(this);
-		
-		// Calculate totals by month
-		for (final AbstractTxn txnLine : this.txnSet) 
+		// Set the total of each month
+		for (int month = startMonth; month < endMonth; month++) 
 			{
-			final int month = (txnLine.getDateInt() / 100) - (budgetYear * 100);
-			if ((month > 0) && (month <= 12))
-				{
-				// Update the monthly total and grand total of all months requested
-				if (acct.getAccountType() == Account.AccountType.INCOME)
-					{
-					item.setActualTotal(item.getActualTotal() - txnLine.getValue());
-					item.setActualTotalForMonth(month, item.getActualTotalForMonth(month) - txnLine.getValue());
-					}
-				else
-					{
-					item.setActualTotal(item.getActualTotal() + txnLine.getValue());
-					item.setActualTotalForMonth(month, item.getActualTotalForMonth(month) + txnLine.getValue());
-					}
-				}
-			else
-				System.err.println("ERROR: Calculated month was out of range - month: "+month);			
+			final long value = aggregator.getTotalForMonth(category.getID(), EpochMonth.of(budgetYear, month));
+			if (value != 0)
+				item.setActualTotalForMonth(month, item.getActualTotalForMonth(month) + (sign * value));
 			}
-	}
 
-	
-	/** 
-	 * Override for TxnSearch (see com.infinitekind.moneydance.model.TxnSearch)
-	 * 
-	 * @param transaction - The transaction to compare.
-	 * @return boolean - true if the account matches the criteria, false otherwise.
-	 */
-	@Override
-	public boolean matches(final Txn transaction) {
-		if (transaction.getAccount() == this.acct && transaction.getDateInt() >= this.startDate && transaction.getDateInt() < this.endDate)
-			return true;
-		else
-			return false;
-	}
-
-	
-	/** 
-	 * Override for TxnSearch (see com.infinitekind.moneydance.model.TxnSearch)
-	 * 
-	 * @return boolean - Returns true if matches all, false otherwise.
-	 */
-	@Override
-	public boolean matchesAll() {
-		return false;
+		// Total this month up to and including today from the daily totals
+		final long monthToDate = aggregator.getTotalForDays(category.getID(), monthStartDate, tomorrowDate);
+		item.setActualMonthToDate(sign * monthToDate);
 	}
 }
@@ -0,0 +1,79 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Class to run the benchmarks and write the results as JSON so the results
+ * of different releases can be compared.
+ *
+ * <pre>
+ *   java ... BenchmarkRunner [result file] [sizes] [benchmark pattern]
+ * </pre>
+ * 
+ * For example "BenchmarkRunner results.json SMALL,MEDIUM Rollup" runs the
+ * rollup benchmarks against the small and medium books.
+ *
+ * @author  Jerry Jones
+ */
+public final class BenchmarkRunner {
+    // The package of the benchmarks
+    private static final String PACKAGE = "com.moneydance.modules.features.budgetbars.";
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Run the benchmarks.
+     * 
+     * @param args - [result file] [sizes] [benchmark pattern]
+     * @throws RunnerException - If a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final String resultFile = (args.length > 0) ? args[0] : "bench-results.json";
+        final ChainedOptionsBuilder options = new OptionsBuilder()
+            .include(PACKAGE + ((args.length > 2) ? args[2] : "") + ".*Benchmark")
+            .resultFormat(ResultFormatType.JSON)
+            .result(resultFile)
+            .shouldFailOnError(true);
+
+        // Only run the sizes requested
+        if ((args.length > 1) && (!args[1].isEmpty()))
+            options.param("size", args[1].split(","));
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+/**
+ * The sizes of the synthetic books the benchmarks are run against. The same
+ * seed is always used so every run measures the same books.
+ *
+ * @author  Jerry Jones
+ */
+public enum BookSize {
+    // A typical household book
+    SMALL(200, 4, 50000, 5),
+
+    // A large book kept for many years
+    MEDIUM(1000, 6, 500000, 10),
+
+    // Far bigger than any real book
+    LARGE(SyntheticBook.DEFAULT_CATEGORIES, SyntheticBook.DEFAULT_DEPTH, SyntheticBook.DEFAULT_SPLITS, SyntheticBook.DEFAULT_YEARS);
+
+    // The seed used for every book
+    public static final long SEED = 20240101L;
+
+    // The sizes of the book
+    private final int categories;
+    private final int depth;
+    private final int splits;
+    private final int years;
+
+    /**
+     * Constructor for a book size.
+     * 
+     * @param categories - The number of categories.
+     * @param depth - The depth of the category tree.
+     * @param splits - The number of splits.
+     * @param years - The number of years of history.
+     */
+    BookSize(final int categories, final int depth, final int splits, final int years) {
+        this.categories = categories;
+        this.depth = depth;
+        this.splits = splits;
+        this.years = years;
+    }
+
+    /** 
+     * Generate a synthetic book of this size.
+     * 
+     * @param lastYear - The last year of the history (YYYY).
+     * @return SyntheticBook - The book generated.
+     */
+    public SyntheticBook generate(final int lastYear) {
+        return new SyntheticBook(SEED, this.categories, this.depth, this.splits, this.years, lastYear);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of building and reading the budget categories list: adding the
+ * categories, retrieving them by index and finding the children of each 
+ * parent.
+ *
+ * @author  Jerry Jones
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class CategoryListBenchmark {
+    // The size of the book
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public BookSize size;
+
+    // The data and the list built from it
+    private MoneydanceFixture fixture;
+    private BudgetCategoriesList list;
+
+    // The UUIDs of the items of the list in order and of the items with children
+    private final List<String> keys = new ArrayList<String>();
+    private final List<String> parents = new ArrayList<String>();
+
+    /**
+     * Generate the book and build the list once to learn the order the 
+     * categories are added in.
+     */
+    @Setup
+    public void setup() {
+        this.fixture = new MoneydanceFixture(this.size);
+        this.list = this.fixture.newBuilder(this.fixture.newBudgetIndex()).build(null, null);
+        this.keys.addAll(this.list.getKeySet());
+        for (final String key : this.keys)
+            {
+            if (this.list.getCategoryItem(key).hasChildren())
+                this.parents.add(key);
+            }
+    }
+
+    /**
+     * Add all the categories to a new list in the order the data model adds them.
+     * 
+     * @return BudgetCategoriesList - The new list.
+     */
+    @Benchmark
+    public BudgetCategoriesList add() {
+        final BudgetCategoriesList newList = new BudgetCategoriesList(this.fixture.ledger);
+        for (final String key : this.keys)
+            {
+            final BudgetCategoryItem item = this.list.getCategoryItem(key);
+            if (item.getCategory() == null)
+                newList.add(key, item.getFullName(), item.getCategoryType(), item.getIndentLevel());
+            else
+                newList.add(item.getCategory(), item.getIndentLevel(), item.hasChildren());
+            }
+        return newList;
+    }
+
+    /**
+     * Retrieve every item of the list by index.
+     * 
+     * @param blackhole - Consumes the results.
+     */
+    @Benchmark
+    public void getCategoryItemByIndex(final Blackhole blackhole) {
+        for (int i = 0; i < this.list.getCategoryCount(); i++)
+            blackhole.consume(this.list.getCategoryItemByIndex(i));
+    }
+
+    /**
+     * Find the direct children of every parent.
+     * 
+     * @param blackhole - Consumes the results.
+     */
+    @Benchmark
+    public void getChildren(final Blackhole blackhole) {
+        for (final String key : this.parents)
+            blackhole.consume(this.list.getChildren(key, false));
+    }
+
+    /**
+     * Find all the descendants of the Income-Expenses row.
+     * 
+     * @return List&lt;BudgetCategoryItem&gt; - The descendants.
+     */
+    @Benchmark
+    public List<BudgetCategoryItem> getAllDescendants() {
+        return this.list.getChildren(Constants.UUID_OVERALL, true);
+    }
+}
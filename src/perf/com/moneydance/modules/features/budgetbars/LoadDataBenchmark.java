@@ -0,0 +1,102 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of loading the data model: indexing the transactions by date, 
+ * totaling them, indexing the budget and building the category list. This 
+ * is the work DataModel.loadData() does when nothing has been loaded yet.
+ *
+ * @author  Jerry Jones
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class LoadDataBenchmark {
+    // The size of the book
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public BookSize size;
+
+    // The data to load
+    private MoneydanceFixture fixture;
+
+    // The transaction totals reused by reloadData()
+    private TransactionAggregator totals;
+
+    /**
+     * Generate the book and total it once for reloadData().
+     */
+    @Setup
+    public void setup() {
+        this.fixture = new MoneydanceFixture(this.size);
+        this.totals = DataModel.totalTransactions(new TransactionDateIndex(this.fixture.ledger), this.fixture.year, null);
+    }
+
+    /**
+     * Load the data from scratch.
+     * 
+     * @return BudgetCategoriesList - The list loaded.
+     */
+    @Benchmark
+    public BudgetCategoriesList loadData() {
+        final TransactionDateIndex index = new TransactionDateIndex(this.fixture.ledger);
+        final TransactionAggregator aggregator = DataModel.totalTransactions(index, this.fixture.year, null);
+        return this.fixture.newBuilder(this.fixture.newBudgetIndex()).build(aggregator, null);
+    }
+
+    /**
+     * Reload the data when the transactions have already been indexed and 
+     * totaled, as when the period or settings change.
+     * 
+     * @return BudgetCategoriesList - The list loaded.
+     */
+    @Benchmark
+    public BudgetCategoriesList reloadData() {
+        return this.fixture.newBuilder(this.fixture.newBudgetIndex()).build(this.totals, null);
+    }
+}
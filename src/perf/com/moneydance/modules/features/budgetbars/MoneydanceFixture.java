@@ -0,0 +1,129 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.time.LocalDate;
+
+import com.infinitekind.moneydance.model.AccountBook;
+import com.infinitekind.moneydance.model.CurrencyType;
+
+/**
+ * Class to set up the data the benchmarks run against. A synthetic book is
+ * generated and the category list is built from its ledger exactly as the 
+ * data model builds it. A fake account book only holds the currencies used 
+ * to format values and the settings.
+ *
+ * <p>The period is the whole of the last year of the history, as if today
+ * were the last day of that year.
+ *
+ * @author  Jerry Jones
+ */
+final class MoneydanceFixture {
+    // The fake account book holding the currencies
+    final AccountBook book;
+
+    // The ledger of the synthetic book
+    final InMemoryLedger ledger;
+
+    // The period: the whole of the last year
+    final int year;
+    final int startMonth = 1;
+    final int months = 12;
+
+    // The dates used for the month to date totals (YYYYMMDD)
+    final int today;
+    final int monthStartDate;
+    final int tomorrowDate;
+
+    /**
+     * Set up the data for a book size.
+     * 
+     * @param size - The size of the book.
+     */
+    MoneydanceFixture(final BookSize size) {
+        this.year = LocalDate.now().getYear();
+        this.today = (this.year * 10000) + 1231;
+        this.monthStartDate = (this.year * 10000) + 1201;
+        this.tomorrowDate = ((this.year + 1) * 10000) + 101;
+
+        this.ledger = size.generate(this.year).getLedger();
+
+        // Create the fake book with the currencies of the synthetic book
+        this.book = AccountBook.fakeAccountBook();
+        for (final String currency : SyntheticBook.CURRENCIES)
+            this.addCurrency(currency);
+
+        // The settings are read from the book
+        Settings.getInstance(this.book);
+    }
+
+    /** 
+     * Register a currency of the synthetic book in the fake book.
+     * 
+     * @param currency - The ID of the currency.
+     */
+    private void addCurrency(final String currency) {
+        final CurrencyType type = new CurrencyType(this.book.getCurrencies());
+        type.setIDString(currency);
+        type.setName(currency);
+        type.setDecimalPlaces(currency.equals("JPY") ? 0 : 2);
+        type.syncItem();
+    }
+
+    /** 
+     * Index the budget of the period.
+     * 
+     * @return BudgetIndex - The budget index.
+     */
+    BudgetIndex newBudgetIndex() {
+        return new BudgetIndex(this.ledger, SyntheticBook.BUDGET_KEY, this.year);
+    }
+
+    /** 
+     * Create a list builder for the period.
+     * 
+     * @param budgetIndex - The budget index of the period.
+     * @return CategoryListBuilder - The list builder.
+     */
+    CategoryListBuilder newBuilder(final BudgetIndex budgetIndex) {
+        return new CategoryListBuilder(this.ledger, budgetIndex, this.year, this.startMonth, this.months, this.monthStartDate, this.tomorrowDate, false);
+    }
+
+    /** 
+     * Publish a list in a snapshot the way the data model does.
+     * 
+     * @param list - The list to publish.
+     * @return ModelSnapshot - The snapshot.
+     */
+    ModelSnapshot newSnapshot(final BudgetCategoriesList list) {
+        return new ModelSnapshot(1, list, false, Constants.PERIOD_THIS_YEAR, this.year, this.startMonth, this.months, this.today);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Class to compare the JSON results of a benchmark run against a stored 
+ * baseline and fail when any benchmark is slower than the baseline by more
+ * than the allowed percentage.
+ *
+ * <pre>
+ *   java ... PerfGate &lt;result file&gt; &lt;baseline file&gt; [allowed percent]
+ * </pre>
+ * 
+ * Benchmarks that are missing from the baseline are reported but do not 
+ * fail the gate. The benchmarks are run in AverageTime mode so a higher 
+ * score is slower.
+ *
+ * @author  Jerry Jones
+ */
+public final class PerfGate {
+    // The default percentage a benchmark may be slower than the baseline
+    private static final double DEFAULT_ALLOWED = 10.0;
+
+    private PerfGate() {
+    }
+
+    /**
+     * Compare the results against the baseline.
+     * 
+     * @param args - &lt;result file&gt; &lt;baseline file&gt; [allowed percent]
+     * @throws IOException - If a file could not be read.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2)
+            {
+            System.err.println("Usage: PerfGate <result file> <baseline file> [allowed percent]");
+            System.exit(2);
+            }
+        final Map<String, Double> results = read(args[0]);
+        final Map<String, Double> baseline = read(args[1]);
+        final double allowed = (args.length > 2) ? Double.parseDouble(args[2]) : DEFAULT_ALLOWED;
+
+        int regressions = 0;
+        for (final Map.Entry<String, Double> entry : results.entrySet())
+            {
+            final Double base = baseline.get(entry.getKey());
+            if (base == null)
+                {
+                System.out.println(String.format("NEW        %-70s %12.3f", entry.getKey(), entry.getValue()));
+                continue;
+                }
+
+            // Percentage change from the baseline, positive is slower
+            final double change = ((entry.getValue() - base) / base) * 100.0;
+            final boolean regressed = change > allowed;
+            if (regressed)
+                regressions++;
+            System.out.println(String.format("%-10s %-70s %12.3f %12.3f %+8.1f%%", regressed ? "REGRESSED" : "OK", entry.getKey(), base, entry.getValue(), change));
+            }
+
+        if (regressions != 0)
+            {
+            System.err.println(regressions + " benchmark(s) regressed by more than " + allowed + "% against " + args[1]);
+            System.exit(1);
+            }
+        System.out.println("No benchmark regressed by more than " + allowed + "%");
+    }
+
+    /**
+     * Read the scores from a JMH JSON result file. The file is an array with
+     * an object for each benchmark run. Runs without a score (NaN) are 
+     * skipped.
+     * 
+     * @param fileName - The file to read.
+     * @return Map&lt;String, Double&gt; - The scores keyed by benchmark and size.
+     * @throws IOException - If the file could not be read or is not JMH JSON.
+     */
+    private static Map<String, Double> read(final String fileName) throws IOException {
+        final Map<String, Double> scores = new LinkedHashMap<String, Double>();
+        try (Reader reader = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8))
+            {
+            for (final JsonElement element : JsonParser.parseReader(reader).getAsJsonArray())
+                {
+                final JsonObject result = element.getAsJsonObject();
+                final JsonElement score = result.getAsJsonObject("primaryMetric").get("score");
+                if ((!score.isJsonPrimitive()) || (!score.getAsJsonPrimitive().isNumber()))
+                    continue;
+
+                // Include the book size in the key when the benchmark has one
+                final JsonObject params = result.getAsJsonObject("params");
+                final String key = result.get("benchmark").getAsString() + (((params != null) && (params.has("size"))) ? ":" + params.get("size").getAsString() : "");
+                scores.put(key, Double.valueOf(score.getAsDouble()));
+                }
+            }
+        catch (final RuntimeException e)
+            {
+            throw new IOException("Cannot read the benchmark results in " + fileName + ": " + e, e);
+            }
+        return scores;
+    }
+}
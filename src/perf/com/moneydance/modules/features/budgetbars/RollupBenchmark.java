@@ -0,0 +1,114 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of rolling values up the category tree: posting a value to
+ * every category without children, which updates all of its ancestors, and
+ * rolling up the whole list once it has been loaded.
+ *
+ * <p><b>Note:</b> The values are added to the values already in the list, 
+ * so each invocation adds them again. The work done is the same each time.
+ *
+ * @author  Jerry Jones
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class RollupBenchmark {
+    // The size of the book
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public BookSize size;
+
+    // The list and the items without children
+    private BudgetCategoriesList list;
+    private final List<BudgetCategoryItem> leaves = new ArrayList<BudgetCategoryItem>();
+
+    /**
+     * Generate the book and build the list with its actual totals.
+     */
+    @Setup
+    public void setup() {
+        final MoneydanceFixture fixture = new MoneydanceFixture(this.size);
+        final TransactionAggregator totals = DataModel.totalTransactions(new TransactionDateIndex(fixture.ledger), fixture.year, null);
+        this.list = fixture.newBuilder(fixture.newBudgetIndex()).build(totals, null);
+        for (final BudgetCategoryItem item : this.list.getBudgetCategories())
+            {
+            if (!item.hasChildren())
+                this.leaves.add(item);
+            }
+    }
+
+    /**
+     * Post a value for one month to every category without children.
+     */
+    @Benchmark
+    public void addActualForMonth() {
+        for (final BudgetCategoryItem item : this.leaves)
+            item.addActualForMonth(this.list, 6, 100L);
+    }
+
+    /**
+     * Post a month to date value to every category without children.
+     */
+    @Benchmark
+    public void addActualMonthToDate() {
+        for (final BudgetCategoryItem item : this.leaves)
+            item.addActualMonthToDate(this.list, 100L);
+    }
+
+    /**
+     * Roll up the whole list.
+     */
+    @Benchmark
+    public void rollup() {
+        this.list.rollup();
+    }
+}
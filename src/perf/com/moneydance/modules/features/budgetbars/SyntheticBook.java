@@ -0,0 +1,316 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+ * Class to generate a synthetic ledger for scale testing. The category tree,
+ * the monthly budgets and the transaction history are all generated from a 
+ * seed so the same seed and sizes always generate the same ledger.
+ *
+ * <p>The tree is built down to the depth requested and then filled out by 
+ * adding categories under random parents. Some categories are in other
+ * currencies and some branches are hidden or inactive. Every category that 
+ * has no children is budgeted each month. Each transaction has one to four
+ * splits, most of which post to a category and the rest to an account.
+ *
+ * <p>Run main() to generate a ledger and total it the same way the data 
+ * model does, e.g.
+ * <pre>
+ *   java ... SyntheticBook [seed] [categories] [depth] [splits] [years]
+ * </pre>
+ *
+ * @author  Jerry Jones
+ */
+public final class SyntheticBook {
+    // The default sizes, a book far bigger than any real one
+    public static final int DEFAULT_CATEGORIES = 5000;
+    public static final int DEFAULT_DEPTH = 8;
+    public static final int DEFAULT_SPLITS = 5000000;
+    public static final int DEFAULT_YEARS = 30;
+
+    // The key of the budget generated
+    public static final String BUDGET_KEY = "synthetic";
+
+    // The base currency and the other currencies with their rates
+    public static final String BASE_CURRENCY = "USD";
+    static final String[] CURRENCIES = {"EUR", "GBP", "CAD", "JPY"};
+    static final double[] RATES = {1.08, 1.27, 0.74, 0.0067};
+
+    // The share of categories in other currencies, hidden or inactive (percent)
+    private static final int FOREIGN_PERCENT = 5;
+    private static final int HIDDEN_PERCENT = 3;
+    private static final int INACTIVE_PERCENT = 2;
+
+    // The share of categories that are income (percent)
+    private static final int INCOME_PERCENT = 15;
+
+    // The share of splits posted to accounts rather than categories (percent)
+    private static final int ACCOUNT_SPLIT_PERCENT = 10;
+
+    // The ledger generated
+    private final InMemoryLedger ledger;
+
+    // The categories generated, in the order they were generated
+    private final List<LedgerSource.Category> categories = new ArrayList<LedgerSource.Category>();
+
+    // The number of splits generated
+    private int splitCount = 0;
+
+    // The last year of the history
+    private final int lastYear;
+
+    /**
+     * Generate a synthetic ledger.
+     * 
+     * @param seed - The seed of the random numbers used.
+     * @param categoryCount - The number of categories to generate.
+     * @param depth - The depth of the category tree.
+     * @param splitCount - The number of splits to generate.
+     * @param years - The number of years of history to generate.
+     * @param lastYear - The last year of the history (YYYY).
+     */
+    public SyntheticBook(final long seed, final int categoryCount, final int depth, final int splitCount, final int years, final int lastYear) {
+        this.ledger = new InMemoryLedger("synthetic-" + seed, BASE_CURRENCY);
+        this.lastYear = lastYear;
+        for (int i = 0; i < CURRENCIES.length; i++)
+            this.ledger.setRate(CURRENCIES[i], RATES[i]);
+
+        // Each part gets its own random numbers so changing one size doesn't
+        // change everything else that is generated
+        final Random random = new Random(seed);
+        this.generateCategories(new Random(random.nextLong()), categoryCount, depth);
+        this.generateBudgets(new Random(random.nextLong()), years);
+        this.generateTransactions(new Random(random.nextLong()), splitCount, years);
+    }
+
+    /**
+     * Generate a synthetic ledger of the default size.
+     * 
+     * @param seed - The seed of the random numbers used.
+     * @param lastYear - The last year of the history (YYYY).
+     */
+    public SyntheticBook(final long seed, final int lastYear) {
+        this(seed, DEFAULT_CATEGORIES, DEFAULT_DEPTH, DEFAULT_SPLITS, DEFAULT_YEARS, lastYear);
+    }
+
+    /** 
+     * Generate the category tree.
+     * 
+     * @param random - The random numbers to use.
+     * @param count - The number of categories to generate.
+     * @param depth - The depth of the tree.
+     */
+    private void generateCategories(final Random random, final int count, final int depth) {
+        // The categories that can still have children
+        final List<LedgerSource.Category> parents = new ArrayList<LedgerSource.Category>();
+        final List<Integer> levels = new ArrayList<Integer>();
+
+        for (int i = 0; i < count; i++)
+            {
+            LedgerSource.Category parent = null;
+            int level = 1;
+            if ((i < 2 * depth) && (i % depth != 0))
+                {
+                // Build one branch of each type all the way down first
+                parent = this.categories.get(i - 1);
+                level = (i % depth) + 1;
+                }
+            else if ((i >= 2 * depth) && (random.nextInt(10) != 0) && (!parents.isEmpty()))
+                {
+                // Most other categories go under a random parent
+                final int pick = random.nextInt(parents.size());
+                parent = parents.get(pick);
+                level = levels.get(pick).intValue() + 1;
+                }
+
+            // The type is inherited from the parent
+            final Account.AccountType type;
+            if (parent != null)
+                type = parent.getType();
+            else if (i < 2 * depth)
+                type = (i < depth) ? Account.AccountType.INCOME : Account.AccountType.EXPENSE;
+            else
+                type = (random.nextInt(100) < INCOME_PERCENT) ? Account.AccountType.INCOME : Account.AccountType.EXPENSE;
+
+            // Some categories are in other currencies, hidden or inactive. 
+            // Only categories below the top level are hidden or inactive.
+            final String currency = (random.nextInt(100) < FOREIGN_PERCENT) ? CURRENCIES[random.nextInt(CURRENCIES.length)] : BASE_CURRENCY;
+            final boolean hidden = (parent != null) && (random.nextInt(100) < HIDDEN_PERCENT);
+            final boolean inactive = (parent != null) && ((parent.isInactive()) || (random.nextInt(100) < INACTIVE_PERCENT));
+
+            final LedgerSource.Category category = this.ledger.addCategory(new LedgerSource.Category("c" + i, type + " " + i, type, currency, parent, inactive, hidden));
+            this.categories.add(category);
+            if (level < depth)
+                {
+                parents.add(category);
+                levels.add(Integer.valueOf(level));
+                }
+            }
+    }
+
+    /** 
+     * Generate a monthly budget for every category without children.
+     * 
+     * @param random - The random numbers to use.
+     * @param years - The number of years to budget.
+     */
+    private void generateBudgets(final Random random, final int years) {
+        for (final LedgerSource.Category category : this.categories)
+            {
+            if (!category.getChildren().isEmpty())
+                continue;
+
+            // Each category has a base amount that changes a little each month
+            final long base = 1000L + random.nextInt(100000);
+            for (int year = this.lastYear - years + 1; year <= this.lastYear; year++)
+                {
+                for (int month = 1; month <= 12; month++)
+                    this.ledger.setBudget(BUDGET_KEY, category.getID(), year, month, base + random.nextInt((int) (base / 10) + 1));
+                }
+            }
+    }
+
+    /** 
+     * Generate the transaction history.
+     * 
+     * @param random - The random numbers to use.
+     * @param count - The number of splits to generate.
+     * @param years - The number of years of history.
+     */
+    private void generateTransactions(final Random random, final int count, final int years) {
+        final int firstDay = (int) TransactionAggregator.toDay(EpochMonth.getFirstDate(EpochMonth.of(this.lastYear - years + 1, 1)));
+        final int days = (int) (TransactionAggregator.toDay(EpochMonth.getFirstDate(EpochMonth.of(this.lastYear + 1, 1))) - firstDay);
+
+        int txnCount = 0;
+        while (this.splitCount < count)
+            {
+            // Pick a date and the number of splits
+            final int date = SyntheticBook.toDate(firstDay + random.nextInt(days));
+            final LedgerSource.Split[] splits = new LedgerSource.Split[Math.min(1 + random.nextInt(4), count - this.splitCount)];
+            for (int i = 0; i < splits.length; i++)
+                {
+                // Some splits post to accounts rather than categories
+                if (random.nextInt(100) < ACCOUNT_SPLIT_PERCENT)
+                    {
+                    splits[i] = new LedgerSource.Split(null, 100L + random.nextInt(100000));
+                    continue;
+                    }
+
+                // Income is posted as a negative value, expenses as positive
+                final LedgerSource.Category category = this.categories.get(random.nextInt(this.categories.size()));
+                final long value = 100L + random.nextInt(50000);
+                splits[i] = new LedgerSource.Split(category, (category.getType() == Account.AccountType.INCOME) ? -value : value);
+                }
+
+            this.ledger.addTransaction("t" + txnCount, date, splits);
+            this.splitCount += splits.length;
+            txnCount++;
+            }
+    }
+
+    /** 
+     * Convert a day number to a date.
+     * 
+     * @param day - The number of days since 1970-01-01.
+     * @return int - The date (YYYYMMDD).
+     */
+    private static int toDate(final int day) {
+        final LocalDate date = LocalDate.ofEpochDay(day);
+        return (date.getYear() * 10000) + (date.getMonthValue() * 100) + date.getDayOfMonth();
+    }
+
+    /**
+     * @return the ledger generated
+     */
+    public InMemoryLedger getLedger() {
+        return this.ledger;
+    }
+
+    /**
+     * @return the categories generated
+     */
+    public List<LedgerSource.Category> getCategories() {
+        return this.categories;
+    }
+
+    /**
+     * @return the number of splits generated
+     */
+    public int getSplitCount() {
+        return this.splitCount;
+    }
+
+    /**
+     * @return the last year of the history (YYYY)
+     */
+    public int getLastYear() {
+        return this.lastYear;
+    }
+
+    /**
+     * Generate a ledger and total it the same way the data model does when 
+     * the data is loaded, printing the time each step took.
+     * 
+     * @param args - [seed] [categories] [depth] [splits] [years]
+     */
+    public static void main(final String[] args) {
+        final long seed = (args.length > 0) ? Long.parseLong(args[0]) : 1L;
+        final int categoryCount = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_CATEGORIES;
+        final int depth = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_DEPTH;
+        final int splitCount = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_SPLITS;
+        final int years = (args.length > 4) ? Integer.parseInt(args[4]) : DEFAULT_YEARS;
+        final int lastYear = Calendar.getInstance().get(Calendar.YEAR);
+
+        long start = System.nanoTime();
+        final SyntheticBook book = new SyntheticBook(seed, categoryCount, depth, splitCount, years, lastYear);
+        System.out.println("Generated "+book.getCategories().size()+" categories, "+book.getSplitCount()+" splits in "+((System.nanoTime() - start) / 1000000)+" ms");
+
+        start = System.nanoTime();
+        final TransactionDateIndex index = new TransactionDateIndex(book.getLedger());
+        System.out.println("Indexed "+index.getSize()+" transactions in "+((System.nanoTime() - start) / 1000000)+" ms");
+
+        start = System.nanoTime();
+        DataModel.totalTransactions(index, lastYear, null);
+        System.out.println("Totaled "+(Constants.HISTORY_YEARS + 1)+" years in "+((System.nanoTime() - start) / 1000000)+" ms");
+
+        start = System.nanoTime();
+        new BudgetIndex(book.getLedger(), BUDGET_KEY, lastYear);
+        System.out.println("Indexed the budget in "+((System.nanoTime() - start) / 1000000)+" ms");
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of generating the tooltip of a budget bar with 
+ * BudgetBar.ProcessCategory. The tooltip of the Income-Expenses row walks 
+ * every category in the list.
+ *
+ * @author  Jerry Jones
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class ToolTipBenchmark {
+    // The size of the book
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public BookSize size;
+
+    // The snapshot of the data and the bar the tooltip is generated for
+    private ModelSnapshot snapshot;
+    private BudgetBar bar;
+
+    /**
+     * Generate the book, load it and create a bar for the Income-Expenses row.
+     */
+    @Setup
+    public void setup() {
+        final MoneydanceFixture fixture = new MoneydanceFixture(this.size);
+        final TransactionAggregator totals = DataModel.totalTransactions(new TransactionDateIndex(fixture.ledger), fixture.year, null);
+        this.snapshot = fixture.newSnapshot(fixture.newBuilder(fixture.newBudgetIndex()).build(totals, null));
+        this.bar = new BudgetBar(fixture.book.getCurrencies(), null, Constants.UUID_OVERALL, Color.WHITE);
+    }
+
+    /**
+     * Generate the tooltip showing the direct children of the row.
+     * 
+     * @return String - The tooltip text.
+     */
+    @Benchmark
+    public String directChildren() {
+        return this.bar.new ProcessCategory(Constants.UUID_OVERALL, this.snapshot, 0, true, false).getTipText().toString();
+    }
+
+    /**
+     * Generate the tooltip showing all the ancestor categories.
+     * 
+     * @return String - The tooltip text.
+     */
+    @Benchmark
+    public String allAncestors() {
+        return this.bar.new ProcessCategory(Constants.UUID_OVERALL, this.snapshot, 0, true, true).getTipText().toString();
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.infinitekind.moneydance.model.AbstractTxn;
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.AccountBook;
+import com.infinitekind.moneydance.model.ParentTxn;
+import com.infinitekind.moneydance.model.SplitTxn;
+
+/**
+ * Tests of loading the data model from a ledger held in memory, without an
+ * account book or the Moneydance GUI.
+ *
+ * @author  Jerry Jones
+ */
+public class DataModelTest {
+    // The key of the budget loaded
+    private static final String BUDGET_KEY = "budget";
+
+    // The year being loaded, the period always includes January
+    private final int year = LocalDate.now().getYear();
+
+    // The ledger the model is loaded from
+    private InMemoryLedger ledger;
+    private LedgerSource.Category auto;
+    private LedgerSource.Category fuel;
+
+    // The widget the model is loaded for
+    private TestHost host;
+
+    /**
+     * The widget the data model is loaded for. There is no cache and all the
+     * categories are displayed.
+     */
+    static final class TestHost implements DataModel.Host {
+        // The key of the budget to load, null for no budget
+        String budgetKey = BUDGET_KEY;
+
+        // The errors shown
+        final List<String> errors = new ArrayList<String>();
+
+        // The timings and counts of each refresh
+        private final RefreshDiagnostics diagnostics = new RefreshDiagnostics();
+
+        @Override
+        public String getBudgetKey() {
+            return this.budgetKey;
+        }
+
+        @Override
+        public String getSelectedCategories() {
+            return null;
+        }
+
+        @Override
+        public RefreshDiagnostics getDiagnostics() {
+            return this.diagnostics;
+        }
+
+        @Override
+        public void showError(final String message) {
+            this.errors.add(message);
+        }
+    }
+
+    @BeforeEach
+    public void createLedger() {
+        // The period is read from the settings, which are read from a book
+        Settings.getInstance(AccountBook.fakeAccountBook());
+
+        this.ledger = new InMemoryLedger("test-book", "USD");
+        this.auto = this.ledger.addCategory("auto", "Auto", Account.AccountType.EXPENSE, null);
+        this.fuel = this.ledger.addCategory("fuel", "Fuel", Account.AccountType.EXPENSE, this.auto);
+        this.ledger.setBudget(BUDGET_KEY, "fuel", this.year, 1, 6000);
+        this.host = new TestHost();
+    }
+
+    @Test
+    public void loadsFromLedgerWithoutBook() {
+        this.ledger.addTransaction("txn-1", (this.year * 10000) + 110, new LedgerSource.Split(this.fuel, 5000));
+        this.ledger.addTransaction("txn-2", (this.year * 10000) + 120, new LedgerSource.Split(this.fuel, 2500));
+        this.ledger.addTransaction("txn-3", ((this.year - 1) * 10000) + 1215, new LedgerSource.Split(this.fuel, 900));
+
+        final DataModel model = new DataModel(this.ledger, null, this.host);
+        model.loadData();
+
+        final ModelSnapshot snapshot = model.getSnapshot();
+        assertNotNull(snapshot);
+        assertEquals("USD", snapshot.getBaseCurrency());
+        assertEquals(7500, snapshot.getCategoryItem("fuel").getActualTotalForMonth(1));
+        assertEquals(7500, snapshot.getCategoryItem("fuel").getActualTotal());
+        assertEquals(6000, snapshot.getCategoryItem("fuel").getBudgetTotal());
+        assertEquals(7500, snapshot.getCategoryItem("auto").getActualTotal());
+        assertEquals(7500, snapshot.getCategoryItem(Constants.UUID_EXPENSE).getActualTotal());
+        assertTrue(this.host.errors.isEmpty(), "Errors shown: "+this.host.errors);
+
+        // Saving does nothing without a cache
+        model.saveCache();
+    }
+
+    @Test
+    public void categoriesHaveChildrenOnlyWhenSubCategoriesAreShown() {
+        // A category whose only sub-category is inactive keeps its own budget
+        final LedgerSource.Category home = this.ledger.addCategory("home", "Home", Account.AccountType.EXPENSE, null);
+        this.ledger.addCategory(new LedgerSource.Category("rent", "Rent", Account.AccountType.EXPENSE, "USD", home, true, false));
+        this.ledger.setBudget(BUDGET_KEY, "home", this.year, 1, 1000);
+
+        // A sub-category under a hidden one is still a child of the category shown
+        final LedgerSource.Category hidden = this.ledger.addCategory(new LedgerSource.Category("hidden", "Hidden", Account.AccountType.EXPENSE, "USD", this.fuel, false, true));
+        this.ledger.addCategory("diesel", "Diesel", Account.AccountType.EXPENSE, hidden);
+        this.ledger.addTransaction("txn-1", (this.year * 10000) + 110, new LedgerSource.Split(this.ledger.getCategory("diesel"), 300));
+
+        final DataModel model = new DataModel(this.ledger, null, this.host);
+        model.loadData();
+
+        final ModelSnapshot snapshot = model.getSnapshot();
+        assertFalse(snapshot.getCategoryItem("home").hasChildren());
+        assertEquals(1000, snapshot.getCategoryItem("home").getBudgetTotal());
+        assertNull(snapshot.getCategoryItem("rent"));
+        assertNull(snapshot.getCategoryItem("hidden"));
+        assertTrue(snapshot.getCategoryItem("fuel").hasChildren());
+        assertEquals(snapshot.getCategoryItem("fuel").getIndex(), snapshot.getCategoryItem("diesel").getParentIndex());
+        assertEquals(300, snapshot.getCategoryItem("fuel").getActualTotal());
+        assertEquals(300, snapshot.getCategoryItem("auto").getActualTotal());
+    }
+
+    @Test
+    public void cachedTotalsAreShownAndThenVerified(@TempDir final File folder) {
+        this.ledger.addTransaction("txn-1", (this.year * 10000) + 110, new LedgerSource.Split(this.fuel, 5000));
+        final AggregateCache cache = new AggregateCache(new File(folder, "test-book.cache"), "test-book");
+
+        // Save the totals of one session
+        final DataModel first = new DataModel(this.ledger, cache, this.host);
+        first.loadData();
+        first.saveCache();
+
+        // The next session shows the cached totals even though a transaction
+        // was added since, and then corrects them
+        this.ledger.addTransaction("txn-2", (this.year * 10000) + 120, new LedgerSource.Split(this.fuel, 2500));
+        final DataModel second = new DataModel(this.ledger, cache, this.host);
+        second.load();
+        assertTrue(second.isLoadedFromCache());
+        assertEquals(5000, second.getSnapshot().getCategoryItem("fuel").getActualTotal());
+        assertTrue(second.verifyCache());
+        assertFalse(second.isLoadedFromCache());
+        assertEquals(7500, second.getSnapshot().getCategoryItem("fuel").getActualTotal());
+
+        // The corrected totals were saved
+        final DataModel third = new DataModel(this.ledger, cache, this.host);
+        third.load();
+        assertTrue(third.isLoadedFromCache());
+        assertEquals(7500, third.getSnapshot().getCategoryItem("fuel").getActualTotal());
+        assertFalse(third.verifyCache());
+    }
+
+    @Test
+    public void removedSplitIsAChangeOfItsTransaction() {
+        // A transaction in the book with a split to each category
+        final AccountBook book = AccountBook.fakeAccountBook();
+        final ParentTxn parentTxn = ParentTxn.makeParentTxn(book, (this.year * 10000) + 110, (this.year * 10000) + 110, System.currentTimeMillis(), "", null, "Transaction", "", 1, AbstractTxn.STATUS_UNRECONCILED);
+        final SplitTxn fuelSplit = SplitTxn.makeSplitTxn(parentTxn, 5000, 5000, 1.0, null, "", 2, AbstractTxn.STATUS_UNRECONCILED);
+        final SplitTxn autoSplit = SplitTxn.makeSplitTxn(parentTxn, 700, 700, 1.0, null, "", 3, AbstractTxn.STATUS_UNRECONCILED);
+        this.ledger.addTransaction(parentTxn.getUUID(), parentTxn.getDateInt(), new LedgerSource.Split(this.fuel, 5000), new LedgerSource.Split(this.auto, 700));
+
+        final DataModel model = new DataModel(this.ledger, null, this.host);
+        model.loadData();
+        assertEquals(5700, model.getSnapshot().getCategoryItem("auto").getActualTotal());
+
+        // Removing one split keeps the rest of the transaction
+        this.ledger.addTransaction(parentTxn.getUUID(), parentTxn.getDateInt(), new LedgerSource.Split(this.auto, 700));
+        assertTrue(model.applyTransaction(fuelSplit, true));
+        assertEquals(0, model.getSnapshot().getCategoryItem("fuel").getActualTotal());
+        assertEquals(700, model.getSnapshot().getCategoryItem("auto").getActualTotal());
+
+        // The transaction is removed once it is no longer in the ledger, even
+        // if only the removal of its last split is seen
+        this.ledger.removeTransaction(parentTxn.getUUID());
+        assertTrue(model.applyTransaction(autoSplit, true));
+        assertEquals(0, model.getSnapshot().getCategoryItem("auto").getActualTotal());
+
+        // Or when the parent transaction itself is removed
+        this.ledger.addTransaction(parentTxn.getUUID(), parentTxn.getDateInt(), new LedgerSource.Split(this.fuel, 5000));
+        assertTrue(model.applyTransaction(parentTxn, false));
+        assertEquals(5000, model.getSnapshot().getCategoryItem("fuel").getActualTotal());
+        assertTrue(model.applyTransaction(parentTxn, true));
+        assertEquals(0, model.getSnapshot().getCategoryItem("fuel").getActualTotal());
+    }
+
+    @Test
+    public void changesMissedWhileInactiveAreLoadedWhenActive() throws Exception {
+        this.ledger.addTransaction("txn-1", (this.year * 10000) + 110, new LedgerSource.Split(this.fuel, 5000));
+        final DataModel model = new DataModel(this.ledger, null, this.host);
+        model.loadData();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+            {
+            final BudgetBars bars = new BudgetBars(null, executor);
+            bars.setDataModel(AccountBook.fakeAccountBook(), model);
+            bars.setActive(true);
+
+            // A transaction entered while the view is inactive isn't seen
+            bars.setActive(false);
+            this.ledger.addTransaction("txn-2", (this.year * 10000) + 120, new LedgerSource.Split(this.fuel, 2500));
+
+            // It is loaded once the view is active again
+            bars.setActive(true);
+            executor.submit(() -> { }).get();
+            assertEquals(7500, model.getSnapshot().getCategoryItem("fuel").getActualTotal());
+            }
+        finally
+            {
+            executor.shutdown();
+            }
+    }
+
+    @Test
+    public void nothingIsLoadedWithoutBudget() {
+        this.host.budgetKey = null;
+        final DataModel model = new DataModel(this.ledger, null, this.host);
+        model.loadData();
+        assertNull(model.getSnapshot());
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.JComponent;
+import javax.swing.RepaintManager;
+import javax.swing.SwingUtilities;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.AccountBook;
+
+/**
+ * Tests that building the list of categories on the model thread doesn't do
+ * any Swing work off the Swing event dispatch thread, even when a category 
+ * is found more than once, and that the data model is loaded on the model 
+ * thread while the bars are only updated on the event dispatch thread.
+ *
+ * @author  Jerry Jones
+ */
+public class EdtConfinementTest {
+    // The key of the budget loaded
+    private static final String BUDGET_KEY = "budget";
+
+    // The Swing work done off the event dispatch thread
+    private final List<String> violations = Collections.synchronizedList(new ArrayList<String>());
+
+    // The repaint manager in use before the test
+    private RepaintManager previous;
+
+    // The threads the data model was built on and the bars were updated on
+    private final List<String> modelThreads = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> barThreads = Collections.synchronizedList(new ArrayList<String>());
+
+    @BeforeEach
+    public void installCheckingRepaintManager() {
+        this.previous = RepaintManager.currentManager(null);
+        RepaintManager.setCurrentManager(new RepaintManager() {
+            @Override
+            public synchronized void addInvalidComponent(final JComponent component) {
+                EdtConfinementTest.this.check(component);
+                super.addInvalidComponent(component);
+            }
+
+            @Override
+            public void addDirtyRegion(final JComponent component, final int x, final int y, final int w, final int h) {
+                EdtConfinementTest.this.check(component);
+                super.addDirtyRegion(component, x, y, w, h);
+            }
+            });
+    }
+
+    @AfterEach
+    public void restoreRepaintManager() {
+        RepaintManager.setCurrentManager(this.previous);
+    }
+
+    /**
+     * Record a component changed off the event dispatch thread.
+     * 
+     * @param component - The component being changed.
+     */
+    private void check(final JComponent component) {
+        if (!SwingUtilities.isEventDispatchThread())
+            this.violations.add(component.getClass().getName()+" on "+Thread.currentThread().getName());
+    }
+
+    @Test
+    public void duplicateCategoryIsRecordedWithoutSwingWork() throws Exception {
+        // Make two categories that have the same UUID
+        final LedgerSource.Category expenses = new LedgerSource.Category("expenses", "Expenses", Account.AccountType.EXPENSE, "USD", null, false, false);
+        final LedgerSource.Category first = new LedgerSource.Category("food", "Food", Account.AccountType.EXPENSE, "USD", expenses, false, false);
+        final LedgerSource.Category second = new LedgerSource.Category("food", "Groceries", Account.AccountType.EXPENSE, "USD", expenses, false, false);
+
+        // Add the categories on a worker thread the way the model thread does
+        final AtomicReference<BudgetCategoriesList> built = new AtomicReference<BudgetCategoriesList>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread worker = new Thread(() -> {
+            try
+                {
+                final BudgetCategoriesList list = new BudgetCategoriesList(new InMemoryLedger("test-book", "USD"));
+                assertNotNull(list.add(expenses, 1, true));
+                assertNotNull(list.add(first, 2, false));
+                assertNull(list.add(second, 2, false));
+                built.set(list);
+                }
+            catch (final Throwable e)
+                {
+                failure.set(e);
+                }
+            }, "MonthlyBudgetBars-model");
+        worker.start();
+        worker.join();
+
+        // The worker must not have shown a dialog, which fails when headless
+        if (failure.get() != null)
+            throw new AssertionError("Adding the categories failed", failure.get());
+        assertTrue(this.violations.isEmpty(), "Swing work off the EDT: "+this.violations);
+
+        // The duplicate is kept to be reported on the event dispatch thread
+        final BudgetCategoriesList list = built.get();
+        assertEquals(2, list.getCategoryCount());
+        assertEquals(Collections.singletonList("food"), list.getDuplicateUUIDs());
+        assertEquals("Food", list.getCategoryItem("food").getShortName());
+    }
+
+    @Test
+    public void modelIsLoadedOnModelThreadAndBarsOnEdt() throws Exception {
+        final StubExecutor executor = new StubExecutor();
+        final DataModel model = this.createModel();
+        final BudgetBars bars = this.createBars(executor, model);
+
+        // Nothing is loaded on the calling thread
+        bars.loadModel(model, false);
+        assertTrue(this.modelThreads.isEmpty(), "Model built on "+this.modelThreads);
+        assertEquals(1, executor.getQueued());
+
+        // The model is built on the model thread and the bars are added on the EDT
+        executor.runQueued();
+        SwingUtilities.invokeAndWait(() -> { });
+        assertEquals(Collections.singletonList(StubExecutor.THREAD_NAME), this.modelThreads);
+        assertEquals(Collections.singletonList("modelLoaded on EDT"), this.barThreads);
+        assertNotNull(model.getSnapshot());
+        assertTrue(this.violations.isEmpty(), "Swing work off the EDT: "+this.violations);
+    }
+
+    @Test
+    public void refreshLoadsOnModelThreadAndRefreshesBarsOnEdt() throws Exception {
+        final StubExecutor executor = new StubExecutor();
+        final DataModel model = this.createModel();
+        final BudgetBars bars = this.createBars(executor, model);
+        model.load();
+        this.modelThreads.clear();
+
+        // Nothing is loaded on the calling thread
+        bars.doRefresh();
+        assertTrue(this.modelThreads.isEmpty(), "Model built on "+this.modelThreads);
+        assertEquals(1, executor.getQueued());
+
+        // The data is reloaded on the model thread and only doRefreshBars runs on the EDT
+        executor.runQueued();
+        SwingUtilities.invokeAndWait(() -> { });
+        assertEquals(Collections.singletonList(StubExecutor.THREAD_NAME), this.modelThreads);
+        assertEquals(Collections.singletonList("doRefreshBars on EDT"), this.barThreads);
+        assertTrue(this.violations.isEmpty(), "Swing work off the EDT: "+this.violations);
+    }
+
+    /**
+     * Create a data model of a ledger that records the threads the category
+     * list is built on.
+     * 
+     * @return DataModel - The data model, not yet loaded.
+     */
+    private DataModel createModel() {
+        // The period is read from the settings, which are read from a book
+        Settings.getInstance(AccountBook.fakeAccountBook());
+
+        final InMemoryLedger ledger = new InMemoryLedger("test-book", "USD") {
+            @Override
+            public synchronized List<LedgerSource.Category> getTopLevelCategories() {
+                EdtConfinementTest.this.modelThreads.add(Thread.currentThread().getName());
+                return super.getTopLevelCategories();
+            }
+            };
+        final LedgerSource.Category fuel = ledger.addCategory("fuel", "Fuel", Account.AccountType.EXPENSE, null);
+        final int year = Calendar.getInstance().get(Calendar.YEAR);
+        ledger.setBudget(BUDGET_KEY, "fuel", year, 1, 6000);
+        ledger.addTransaction("txn-1", (year * 10000) + 110, new LedgerSource.Split(fuel, 5000));
+        final DataModelTest.TestHost host = new DataModelTest.TestHost();
+        host.budgetKey = BUDGET_KEY;
+        return new DataModel(ledger, null, host);
+    }
+
+    /**
+     * Create the budget bars for a data model, recording the threads the 
+     * bars are updated on.
+     * 
+     * @param executor - The executor the data model work is run on.
+     * @param model - The data model to use.
+     * @return BudgetBars - The budget bars.
+     */
+    private BudgetBars createBars(final StubExecutor executor, final DataModel model) {
+        final BudgetBars bars = new BudgetBars(null, executor) {
+            @Override
+            void modelLoaded(final DataModel loaded) {
+                EdtConfinementTest.this.recordBarUpdate("modelLoaded");
+                super.modelLoaded(loaded);
+            }
+
+            @Override
+            public void doRefreshBars() {
+                EdtConfinementTest.this.recordBarUpdate("doRefreshBars");
+                super.doRefreshBars();
+            }
+            };
+        bars.setDataModel(AccountBook.fakeAccountBook(), model);
+        return bars;
+    }
+
+    /**
+     * Record the thread the bars are being updated on.
+     * 
+     * @param method - The method updating the bars.
+     */
+    private void recordBarUpdate(final String method) {
+        this.barThreads.add(method+(SwingUtilities.isEventDispatchThread() ? " on EDT" : " on "+Thread.currentThread().getName()));
+    }
+
+    /**
+     * Executor that holds the tasks it is given until they are run on a 
+     * thread of its own by runQueued().
+     */
+    private static final class StubExecutor extends AbstractExecutorService {
+        // The name of the thread the tasks are run on
+        static final String THREAD_NAME = "stub-model";
+
+        // The tasks waiting to be run
+        private final Deque<Runnable> queue = new ArrayDeque<Runnable>();
+
+        @Override
+        public synchronized void execute(final Runnable command) {
+            this.queue.add(command);
+        }
+
+        /**
+         * @return int - The number of tasks waiting to be run.
+         */
+        synchronized int getQueued() {
+            return this.queue.size();
+        }
+
+        /**
+         * Run the tasks waiting, and any tasks they queue, on the model thread.
+         * 
+         * @throws InterruptedException if interrupted waiting for the tasks.
+         */
+        void runQueued() throws InterruptedException {
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            final Thread thread = new Thread(() -> {
+                try
+                    {
+                    Runnable task;
+                    while ((task = this.next()) != null)
+                        task.run();
+                    }
+                catch (final Throwable e)
+                    {
+                    failure.set(e);
+                    }
+                }, THREAD_NAME);
+            thread.start();
+            thread.join();
+            if (failure.get() != null)
+                throw new AssertionError("Running the model tasks failed", failure.get());
+        }
+
+        /**
+         * @return Runnable - The next task waiting, null if there are none.
+         */
+        private synchronized Runnable next() {
+            return this.queue.poll();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the Fenwick tree against sums of a plain array.
+ *
+ * @author  Jerry Jones
+ */
+public class FenwickTreeTest {
+    @Test
+    public void builtTreeMatchesAddedValues() {
+        final Random random = new Random(1);
+        for (final int size : new int[] { 1, 2, 7, 64, 365, 1096 })
+            {
+            final long[] values = new long[size];
+            final FenwickTree added = new FenwickTree(size);
+            for (int i = 0; i < size; i++)
+                {
+                values[i] = random.nextInt(20000) - 5000;
+                added.add(i, values[i]);
+                }
+            final FenwickTree built = new FenwickTree(values);
+
+            for (int position = 0; position <= size; position++)
+                assertEquals(added.prefixSum(position), built.prefixSum(position), "Prefix sum of "+position+" of "+size);
+            }
+    }
+
+    @Test
+    public void rangeSumsMatchArraySums() {
+        final Random random = new Random(2);
+        final long[] values = new long[500];
+        final FenwickTree tree = new FenwickTree(values.length);
+        for (int i = 0; i < 2000; i++)
+            {
+            final int position = random.nextInt(values.length);
+            final long value = random.nextInt(1000) - 500;
+            values[position] += value;
+            tree.add(position, value);
+            }
+
+        for (int i = 0; i < 2000; i++)
+            {
+            final int from = random.nextInt(values.length + 20) - 10;
+            final int to = random.nextInt(values.length + 20) - 10;
+            long expected = 0;
+            for (int position = Math.max(from, 0); position < Math.min(to, values.length); position++)
+                expected += values[position];
+            assertEquals(expected, tree.rangeSum(from, to), "Range "+from+"..."+to);
+            }
+    }
+}
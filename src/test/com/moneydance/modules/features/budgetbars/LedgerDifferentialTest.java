@@ -0,0 +1,186 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.infinitekind.moneydance.model.AbstractTxn;
+import com.infinitekind.moneydance.model.Account;
+import com.infinitekind.moneydance.model.AccountBook;
+import com.infinitekind.moneydance.model.ParentTxn;
+import com.infinitekind.moneydance.model.SplitTxn;
+
+/**
+ * Differential test of the two ledgers. The same categories and transactions
+ * are put in an in-memory ledger and in an account book, and the totals of 
+ * both ledgers must be the same.
+ *
+ * @author  Jerry Jones
+ */
+public class LedgerDifferentialTest {
+    // The first year of the transactions and the number of years
+    private static final int FIRST_YEAR = 2020;
+    private static final int YEARS = 3;
+
+    @Test
+    public void bookTotalsMatchInMemoryTotals() {
+        final TestLedger test = new TestLedger(11, 40, 5000, FIRST_YEAR, YEARS);
+        final AccountBook book = AccountBook.fakeAccountBook();
+        final Map<String, ParentTxn> bookTxns = LedgerDifferentialTest.copyToBook(test, book);
+        final MoneydanceLedger ledger = new MoneydanceLedger(book);
+
+        // The category trees are the same
+        assertEquals(test.ledger.getTopLevelCategories().size(), ledger.getTopLevelCategories().size());
+        for (final LedgerSource.Category category : test.categories)
+            {
+            final LedgerSource.Category bookCategory = ledger.getCategory(category.getID());
+            assertEquals(category.getType(), bookCategory.getType(), "Type of "+category.getID());
+            assertEquals((category.getParent() == null) ? null : category.getParent().getID(), (bookCategory.getParent() == null) ? null : bookCategory.getParent().getID(), "Parent of "+category.getID());
+            }
+
+        // The totals are the same
+        final TransactionDateIndex index = new TransactionDateIndex(ledger);
+        final TransactionAggregator totals = LedgerDifferentialTest.totalAll(index);
+        LedgerDifferentialTest.assertSameTotals(test, LedgerDifferentialTest.totalAll(new TransactionDateIndex(test.ledger)), totals);
+
+        // Move some of the transactions in both ledgers and apply the changes
+        // to the book totals the way the data model does
+        final Random random = new Random(12);
+        for (int i = 0; i < 200; i++)
+            {
+            final LedgerSource.Transaction txn = test.transactions.get(random.nextInt(test.transactions.size()));
+            final int newDate = test.randomDate(random, FIRST_YEAR, YEARS);
+            test.transactions.set(test.transactions.indexOf(txn), test.ledger.addTransaction(txn.getID(), newDate, LedgerDifferentialTest.getSplits(txn)));
+
+            final ParentTxn parentTxn = bookTxns.get(txn.getID());
+            parentTxn.setDateInt(newDate);
+            final LedgerSource.Transaction ledgerTxn = ledger.toTransaction(parentTxn);
+            final LedgerSource.Transaction oldTxn = index.remove(ledgerTxn);
+            if (oldTxn != null)
+                totals.removeTransaction(oldTxn);
+            index.add(ledgerTxn);
+            totals.addTransaction(ledgerTxn);
+            }
+        LedgerDifferentialTest.assertSameTotals(test, LedgerDifferentialTest.totalAll(new TransactionDateIndex(test.ledger)), totals);
+        LedgerDifferentialTest.assertSameTotals(test, LedgerDifferentialTest.totalAll(new TransactionDateIndex(ledger)), totals);
+    }
+
+    /** 
+     * Copy the categories and transactions of a test ledger to an account 
+     * book. The splits not posted to a category are posted to a second bank
+     * account.
+     * 
+     * @param test - The test ledger to copy.
+     * @param book - The account book to copy to.
+     * @return Map&lt;String, ParentTxn&gt; - The transactions of the book 
+     * mapped by the ID of the test ledger transaction they were copied from.
+     */
+    private static Map<String, ParentTxn> copyToBook(final TestLedger test, final AccountBook book) {
+        final Map<String, Account> accounts = new HashMap<String, Account>();
+        for (final LedgerSource.Category category : test.categories)
+            {
+            final Account parent = (category.getParent() == null) ? book.getRootAccount() : accounts.get(category.getParent().getID());
+            final Account account = Account.makeAccount(book, category.getType(), parent);
+            account.setUUID(category.getID());
+            account.setAccountName(category.getName());
+            accounts.put(category.getID(), account);
+            }
+        final Account checking = Account.makeAccount(book, Account.AccountType.BANK, book.getRootAccount());
+        checking.setAccountName("Checking");
+        final Account savings = Account.makeAccount(book, Account.AccountType.BANK, book.getRootAccount());
+        savings.setAccountName("Savings");
+
+        final Map<String, ParentTxn> bookTxns = new HashMap<String, ParentTxn>();
+        long id = 1;
+        for (final LedgerSource.Transaction txn : test.transactions)
+            {
+            final ParentTxn parentTxn = ParentTxn.makeParentTxn(book, txn.getDate(), txn.getDate(), System.currentTimeMillis(), "", checking, "Transaction", "", id++, AbstractTxn.STATUS_UNRECONCILED);
+            for (final LedgerSource.Split split : LedgerDifferentialTest.getSplits(txn))
+                {
+                final Account account = (split.getCategory() == null) ? savings : accounts.get(split.getCategory().getID());
+                parentTxn.addSplit(SplitTxn.makeSplitTxn(parentTxn, split.getValue(), split.getValue(), 1.0, account, "", id++, AbstractTxn.STATUS_UNRECONCILED));
+                }
+            parentTxn.syncItem();
+            bookTxns.put(txn.getID(), parentTxn);
+            }
+        return bookTxns;
+    }
+
+    /** 
+     * Get the splits of a transaction.
+     * 
+     * @param txn - The transaction.
+     * @return LedgerSource.Split[] - The splits.
+     */
+    private static LedgerSource.Split[] getSplits(final LedgerSource.Transaction txn) {
+        final LedgerSource.Split[] splits = new LedgerSource.Split[txn.getSplitCount()];
+        for (int i = 0; i < splits.length; i++)
+            splits[i] = txn.getSplit(i);
+        return splits;
+    }
+
+    /** 
+     * Total all the categories of an index.
+     * 
+     * @param index - The index to total.
+     * @return TransactionAggregator - The totals.
+     */
+    private static TransactionAggregator totalAll(final TransactionDateIndex index) {
+        return new TransactionAggregator(index, EpochMonth.of(FIRST_YEAR, 1), YEARS * 12, 1, null);
+    }
+
+    /** 
+     * Check that two sets of totals are the same for every category and month.
+     * 
+     * @param test - The test ledger with the categories.
+     * @param expected - The expected totals.
+     * @param actual - The totals to check.
+     */
+    private static void assertSameTotals(final TestLedger test, final TransactionAggregator expected, final TransactionAggregator actual) {
+        final List<LedgerSource.Category> categories = test.categories;
+        for (final LedgerSource.Category category : categories)
+            {
+            for (int month = 0; month < (YEARS * 12); month++)
+                {
+                final int epochMonth = EpochMonth.of(FIRST_YEAR, 1) + month;
+                assertEquals(expected.getTotalForMonth(category.getID(), epochMonth), actual.getTotalForMonth(category.getID(), epochMonth), "Month total of "+category.getID());
+                assertEquals(expected.getTotal(category.getID(), EpochMonth.of(FIRST_YEAR, 1), epochMonth + 1), actual.getTotal(category.getID(), EpochMonth.of(FIRST_YEAR, 1), epochMonth + 1), "Range total of "+category.getID());
+                }
+            }
+    }
+}
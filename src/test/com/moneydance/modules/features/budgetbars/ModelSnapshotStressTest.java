@@ -0,0 +1,196 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+ * Stress test of publishing model snapshots. A writer changes copies of the
+ * budget categories list and publishes them the way the data model does 
+ * while readers check that every snapshot they see is consistent.
+ *
+ * @author  Jerry Jones
+ */
+public class ModelSnapshotStressTest {
+    // The number of snapshots the writer publishes
+    private static final int PUBLISHES = 20000;
+
+    // The number of reader threads
+    private static final int READERS = 4;
+
+    // The snapshot the readers take, as the data model publishes it
+    private volatile ModelSnapshot snapshot;
+
+    @Test
+    public void readersOnlySeeConsistentSnapshots() throws Exception {
+        // Build a list of two levels of income and expense categories
+        final InMemoryLedger ledger = new InMemoryLedger("test-book", "USD");
+        final BudgetCategoriesList first = new BudgetCategoriesList(ledger);
+        final List<String> leaves = new ArrayList<String>();
+        first.add(Constants.UUID_OVERALL, "Income-Expenses", Account.AccountType.ROOT, 0);
+        first.add(Constants.UUID_INCOME, "Income", Account.AccountType.INCOME, 1);
+        this.addCategories(ledger, first, Account.AccountType.INCOME, leaves);
+        first.add(Constants.UUID_EXPENSE, "Expenses", Account.AccountType.EXPENSE, 1);
+        this.addCategories(ledger, first, Account.AccountType.EXPENSE, leaves);
+        this.snapshot = new ModelSnapshot(1, first, false, Constants.PERIOD_THIS_YEAR, 2024, 1, 12, 20240615);
+
+        // Start the readers
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch started = new CountDownLatch(READERS);
+        final List<Thread> readers = new ArrayList<Thread>();
+        final long[] checked = new long[READERS];
+        for (int r = 0; r < READERS; r++)
+            {
+            final int reader = r;
+            final Thread thread = new Thread(() -> {
+                started.countDown();
+                long lastVersion = 0;
+                try
+                    {
+                    while (lastVersion < PUBLISHES)
+                        {
+                        final ModelSnapshot current = this.snapshot;
+                        assertTrue(current.getVersion() >= lastVersion, "Version went back from "+lastVersion+" to "+current.getVersion());
+                        lastVersion = current.getVersion();
+                        ModelSnapshotStressTest.checkSnapshot(current);
+                        checked[reader]++;
+                        }
+                    }
+                catch (final Throwable e)
+                    {
+                    failure.compareAndSet(null, e);
+                    }
+                }, "reader-"+r);
+            thread.start();
+            readers.add(thread);
+            }
+        started.await();
+
+        // Post values to copies of the list and publish them
+        final Random random = new Random(1);
+        for (int version = 2; version <= PUBLISHES; version++)
+            {
+            final ModelSnapshot current = this.snapshot;
+            final BudgetCategoriesList newList = new BudgetCategoriesList(current.getList());
+            final BudgetCategoryItem item = newList.getCategoryItem(leaves.get(random.nextInt(leaves.size())));
+            item.addActualForMonth(newList, 1 + random.nextInt(12), 1);
+            if (random.nextBoolean())
+                item.addActualMonthToDate(newList, 1);
+            this.snapshot = new ModelSnapshot(version, newList, false, Constants.PERIOD_THIS_YEAR, 2024, 1, 12, 20240615);
+            }
+
+        for (final Thread thread : readers)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError("A reader saw an inconsistent snapshot", failure.get());
+        for (int r = 0; r < READERS; r++)
+            assertTrue(checked[r] > 0, "Reader "+r+" never checked a snapshot");
+    }
+
+    /** 
+     * Add three categories of a type, each with three sub-categories.
+     * 
+     * @param ledger - The ledger to make the categories in.
+     * @param list - The list to add the categories to.
+     * @param type - The type of the categories.
+     * @param leaves - The UUIDs of the sub-categories, which are added to.
+     */
+    private void addCategories(final InMemoryLedger ledger, final BudgetCategoriesList list, final Account.AccountType type, final List<String> leaves) {
+        for (int i = 0; i < 3; i++)
+            {
+            final LedgerSource.Category parent = ledger.addCategory(type+"-"+i, "Category "+i, type, null);
+            list.add(parent, 2, true);
+            for (int j = 0; j < 3; j++)
+                {
+                final LedgerSource.Category child = ledger.addCategory(type+"-"+i+"-"+j, "Sub-category "+j, type, parent);
+                list.add(child, 3, false);
+                leaves.add(child.getID());
+                }
+            }
+    }
+
+    /** 
+     * Check a snapshot. Each category with children must total its children,
+     * Income-Expenses must be income less expenses and, since the writer 
+     * posts 1 to one sub-category each time it publishes, the sub-categories
+     * must total one less than the version.
+     * 
+     * @param current - The snapshot to check.
+     */
+    private static void checkSnapshot(final ModelSnapshot current) {
+        final BudgetCategoriesList list = current.getList();
+        final CategoryValueStore values = list.getValues();
+        final int count = list.getCategoryCount();
+        for (int column = 1; column < CategoryValueStore.COLUMNS; column++)
+            {
+            final long[] childTotals = new long[count];
+            final boolean[] hasChildren = new boolean[count];
+            for (int index = 0; index < count; index++)
+                {
+                final BudgetCategoryItem item = list.getCategoryItemByIndex(index);
+                final int parent = item.getParentIndex();
+                if (parent == -1)
+                    continue;
+
+                // Expenses subtract from the Income-Expenses total
+                final boolean negate = (list.getCategoryItemByIndex(parent).getCategoryType() == Account.AccountType.ROOT) && (item.getCategoryType() != Account.AccountType.INCOME);
+                childTotals[parent] += negate ? -values.getActual(column, index) : values.getActual(column, index);
+                hasChildren[parent] = true;
+                }
+
+            for (int index = 0; index < count; index++)
+                {
+                if (hasChildren[index])
+                    assertEquals(childTotals[index], values.getActual(column, index), "Column "+column+" of "+list.getCategoryItemByIndex(index).getShortName()+" in version "+current.getVersion());
+                }
+            }
+
+        // Every post is in the total column of one sub-category
+        long posted = 0;
+        for (int index = 0; index < count; index++)
+            {
+            if (list.getCategoryItemByIndex(index).getIndentLevel() == 3)
+                posted += values.getActual(CategoryValueStore.TOTAL, index);
+            }
+        assertEquals(current.getVersion() - 1, posted, "Posts in version "+current.getVersion());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.infinitekind.moneydance.model.Account;
+
+/**
+ * Class to generate a random in memory ledger for the tests. The same seed 
+ * always generates the same ledger.
+ *
+ * @author  Jerry Jones
+ */
+final class TestLedger {
+    // The ledger generated
+    final InMemoryLedger ledger;
+
+    // The categories in the order they were generated, parents first
+    final List<LedgerSource.Category> categories = new ArrayList<LedgerSource.Category>();
+
+    // The transactions in the order they were generated
+    final List<LedgerSource.Transaction> transactions = new ArrayList<LedgerSource.Transaction>();
+
+    /**
+     * Generate a ledger. Every tenth category is an income category, the 
+     * first ten categories are top level and the rest are sub-categories of
+     * them. About one split in ten isn't posted to a category.
+     * 
+     * @param seed - The seed of the random values.
+     * @param categoryCount - The number of categories to generate.
+     * @param transactionCount - The number of transactions to generate.
+     * @param firstYear - The first year of the transactions (YYYY).
+     * @param years - The number of years of transactions.
+     */
+    TestLedger(final long seed, final int categoryCount, final int transactionCount, final int firstYear, final int years) {
+        final Random random = new Random(seed);
+        this.ledger = new InMemoryLedger("test-book", "USD");
+        for (int i = 0; i < categoryCount; i++)
+            {
+            final Account.AccountType type = ((i % 10) == 0) ? Account.AccountType.INCOME : Account.AccountType.EXPENSE;
+            final LedgerSource.Category parent = (i < 10) ? null : this.categories.get(i % 10);
+            this.categories.add(this.ledger.addCategory("cat-"+i, "Category "+i, type, parent));
+            }
+
+        for (int i = 0; i < transactionCount; i++)
+            this.transactions.add(this.ledger.addTransaction("txn-"+i, this.randomDate(random, firstYear, years), this.randomSplits(random)));
+    }
+
+    /** 
+     * Generate a random date.
+     * 
+     * @param random - The random values to use.
+     * @param firstYear - The first year of the date (YYYY).
+     * @param years - The number of years the date can be in.
+     * @return int - The date (YYYYMMDD).
+     */
+    int randomDate(final Random random, final int firstYear, final int years) {
+        return ((firstYear + random.nextInt(years)) * 10000) + ((1 + random.nextInt(12)) * 100) + 1 + random.nextInt(28);
+    }
+
+    /** 
+     * Generate the random splits of a transaction.
+     * 
+     * @param random - The random values to use.
+     * @return LedgerSource.Split[] - One to three splits.
+     */
+    LedgerSource.Split[] randomSplits(final Random random) {
+        final LedgerSource.Split[] splits = new LedgerSource.Split[1 + random.nextInt(3)];
+        for (int i = 0; i < splits.length; i++)
+            {
+            final LedgerSource.Category category = (random.nextInt(10) == 0) ? null : this.categories.get(random.nextInt(this.categories.size()));
+            splits[i] = new LedgerSource.Split(category, random.nextInt(100000) - 20000);
+            }
+        return splits;
+    }
+
+    /** 
+     * Total the transactions of a category for a range of dates by testing 
+     * every transaction.
+     * 
+     * @param categoryID - The ID of the category.
+     * @param fromDate - The first date of the range (YYYYMMDD).
+     * @param toDate - The date after the last date of the range (YYYYMMDD).
+     * @return long - The total of the splits posted to the category.
+     */
+    long bruteForceTotal(final String categoryID, final int fromDate, final int toDate) {
+        long total = 0;
+        for (final LedgerSource.Transaction txn : this.ledger.getTransactions())
+            {
+            if ((txn.getDate() < fromDate) || (txn.getDate() >= toDate))
+                continue;
+            for (int i = 0; i < txn.getSplitCount(); i++)
+                {
+                final LedgerSource.Split split = txn.getSplit(i);
+                if ((split.getCategory() != null) && (split.getCategory().getID().equals(categoryID)))
+                    total += split.getValue();
+                }
+            }
+        return total;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test that totaling the transactions allocates nothing per transaction. The
+ * memory allocated to total a ledger is compared with the memory allocated to
+ * total a ledger with four times as many transactions in the same months and
+ * categories; only the per category totals should be allocated.
+ *
+ * @author  Jerry Jones
+ */
+public class TransactionAggregatorAllocationTest {
+    // The first year of the transactions and the number of years
+    private static final int FIRST_YEAR = 2020;
+    private static final int YEARS = 3;
+
+    // The number of transactions of the smaller ledger
+    private static final int TRANSACTIONS = 20000;
+
+    @Test
+    public void noAllocationPerTransaction() {
+        this.checkAllocation(null);
+    }
+
+    @Test
+    public void noAllocationPerTransactionWithSelection() {
+        this.checkAllocation("cat-3,cat-5");
+    }
+
+    /** 
+     * Check the memory allocated to total the transactions doesn't grow with
+     * the number of transactions.
+     * 
+     * @param selected - The categories to select, null for all categories.
+     */
+    private void checkAllocation(final String selected) {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "Thread allocation counting is not available");
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled(), "Thread allocation counting is not enabled");
+
+        final TestLedger small = new TestLedger(1, 40, TRANSACTIONS, FIRST_YEAR, YEARS);
+        final TestLedger large = new TestLedger(1, 40, TRANSACTIONS * 4, FIRST_YEAR, YEARS);
+        final TransactionDateIndex smallIndex = new TransactionDateIndex(small.ledger);
+        final TransactionDateIndex largeIndex = new TransactionDateIndex(large.ledger);
+
+        // Warm up so class loading and compilation aren't measured
+        for (int i = 0; i < 5; i++)
+            {
+            this.total(smallIndex, small, selected);
+            this.total(largeIndex, large, selected);
+            }
+
+        final long smallBytes = this.measure(threads, smallIndex, small, selected);
+        final long largeBytes = this.measure(threads, largeIndex, large, selected);
+
+        // Allow less than a byte for each extra transaction
+        final long extraTransactions = TRANSACTIONS * 3L;
+        assertTrue((largeBytes - smallBytes) < extraTransactions, "Allocated "+smallBytes+" bytes for "+TRANSACTIONS+" transactions and "+largeBytes+" bytes for "+(TRANSACTIONS * 4));
+    }
+
+    /** 
+     * Measure the smallest allocation of a few runs of totaling.
+     * 
+     * @param threads - The thread bean that counts the allocations.
+     * @param index - The index of the transactions to total.
+     * @param test - The test ledger indexed.
+     * @param selected - The categories to select, null for all categories.
+     * @return long - The bytes allocated.
+     */
+    private long measure(final com.sun.management.ThreadMXBean threads, final TransactionDateIndex index, final TestLedger test, final String selected) {
+        final long threadID = Thread.currentThread().getId();
+        long smallest = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++)
+            {
+            final long before = threads.getThreadAllocatedBytes(threadID);
+            this.total(index, test, selected);
+            smallest = Math.min(smallest, threads.getThreadAllocatedBytes(threadID) - before);
+            }
+        return smallest;
+    }
+
+    /** 
+     * Total all the transactions of a test ledger sequentially.
+     * 
+     * @param index - The index of the transactions to total.
+     * @param test - The test ledger indexed.
+     * @param selected - The categories to select, null for all categories.
+     * @return TransactionAggregator - The totals.
+     */
+    private TransactionAggregator total(final TransactionDateIndex index, final TestLedger test, final String selected) {
+        final CategorySelection selection = CategorySelection.getSelection(selected, test.ledger);
+        if (selection != null)
+            {
+            // Check every category once first so only the totaling is measured
+            for (final LedgerSource.Category category : test.categories)
+                selection.isComputed(category);
+            }
+        return new TransactionAggregator(index, EpochMonth.of(FIRST_YEAR, 1), YEARS * 12, 1, selection);
+    }
+}
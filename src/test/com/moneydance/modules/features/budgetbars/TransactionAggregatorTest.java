@@ -0,0 +1,306 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2022-2023, Jerry Jones
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */ 
+package com.moneydance.modules.features.budgetbars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.infinitekind.moneydance.model.AccountBook;
+
+/**
+ * Tests of the transaction totals against totals found by testing every 
+ * transaction of the ledger.
+ *
+ * @author  Jerry Jones
+ */
+public class TransactionAggregatorTest {
+    // The first year of the transactions and the number of years
+    private static final int FIRST_YEAR = 2020;
+    private static final int YEARS = 5;
+
+    // The month totaled by day
+    private static final int DAILY_MONTH = EpochMonth.of(FIRST_YEAR + 1, 7);
+
+    @Test
+    public void dayNumbersMatchLocalDate() {
+        for (LocalDate date = LocalDate.of(1899, 1, 1); date.getYear() < 2101; date = date.plusDays(1))
+            {
+            final int dateInt = (date.getYear() * 10000) + (date.getMonthValue() * 100) + date.getDayOfMonth();
+            assertEquals(date.toEpochDay(), TransactionAggregator.toDay(dateInt), "Day number of "+date);
+            }
+    }
+
+    @Test
+    public void totalsMatchBruteForce() {
+        final TestLedger test = new TestLedger(1, 50, 20000, FIRST_YEAR, YEARS);
+        final TransactionAggregator totals = this.totalAll(test, 1);
+
+        for (final LedgerSource.Category category : test.categories)
+            {
+            for (int month = 0; month < (YEARS * 12); month++)
+                {
+                final int epochMonth = EpochMonth.of(FIRST_YEAR, 1) + month;
+                final long expected = test.bruteForceTotal(category.getID(), EpochMonth.getFirstDate(epochMonth), EpochMonth.getFirstDate(epochMonth + 1));
+                assertEquals(expected, totals.getTotalForMonth(category.getID(), epochMonth), "Month total of "+category.getID());
+                assertEquals(expected, totals.getTotalForDays(category.getID(), EpochMonth.getFirstDate(epochMonth), EpochMonth.getFirstDate(epochMonth + 1)), "Day range total of "+category.getID());
+                }
+
+            // A range spanning years
+            final int from = EpochMonth.of(FIRST_YEAR, 7);
+            final int to = EpochMonth.of(FIRST_YEAR + 2, 3);
+            assertEquals(test.bruteForceTotal(category.getID(), EpochMonth.getFirstDate(from), EpochMonth.getFirstDate(to)), totals.getTotal(category.getID(), from, to), "Range total of "+category.getID());
+            }
+    }
+
+    @Test
+    public void parallelTotalsMatchSequential() {
+        // Enough transactions for several chunks
+        final TestLedger test = new TestLedger(6, 80, 60000, FIRST_YEAR, YEARS);
+        final TransactionAggregator sequential = this.totalAll(test, 1);
+        for (final int parallelism : new int[] { 2, 3, 4, 8 })
+            {
+            final TransactionAggregator parallel = this.totalAll(test, parallelism);
+            for (final LedgerSource.Category category : test.categories)
+                {
+                for (int month = 0; month < (YEARS * 12); month++)
+                    {
+                    final int epochMonth = EpochMonth.of(FIRST_YEAR, 1) + month;
+                    assertEquals(sequential.getTotalForMonth(category.getID(), epochMonth), parallel.getTotalForMonth(category.getID(), epochMonth), "Month total of "+category.getID()+" with parallelism "+parallelism);
+                    assertEquals(sequential.getTotal(category.getID(), EpochMonth.of(FIRST_YEAR, 1), epochMonth + 1), parallel.getTotal(category.getID(), EpochMonth.of(FIRST_YEAR, 1), epochMonth + 1), "Range total of "+category.getID()+" with parallelism "+parallelism);
+                    }
+                for (int day = 1; day <= 28; day += 9)
+                    {
+                    final int fromDate = EpochMonth.getFirstDate(DAILY_MONTH - 1);
+                    final int toDate = EpochMonth.getFirstDate(DAILY_MONTH) + day - 1;
+                    assertEquals(sequential.getTotalForDays(category.getID(), fromDate, toDate), parallel.getTotalForDays(category.getID(), fromDate, toDate), "Day range total of "+category.getID()+" with parallelism "+parallelism);
+                    }
+                }
+            }
+    }
+
+    @Test
+    public void dayRangesMatchBruteForce() {
+        final TestLedger test = new TestLedger(8, 50, 20000, FIRST_YEAR, YEARS);
+        final TransactionAggregator totals = this.totalAll(test, 1);
+        final int monthStart = EpochMonth.getFirstDate(DAILY_MONTH);
+        final int nextMonthStart = EpochMonth.getFirstDate(DAILY_MONTH + 1);
+
+        for (final LedgerSource.Category category : test.categories)
+            {
+            for (int day = 1; day <= 31; day += 5)
+                {
+                // Days of the daily month alone, with the months before it and with the months after it
+                final int date = monthStart + day - 1;
+                assertEquals(test.bruteForceTotal(category.getID(), monthStart, date + 1), totals.getTotalForDays(category.getID(), monthStart, date + 1), "Month to date total of "+category.getID());
+                assertEquals(test.bruteForceTotal(category.getID(), EpochMonth.getFirstDate(DAILY_MONTH - 5), date), totals.getTotalForDays(category.getID(), EpochMonth.getFirstDate(DAILY_MONTH - 5), date), "Day range total of "+category.getID());
+                assertEquals(test.bruteForceTotal(category.getID(), date, EpochMonth.getFirstDate(DAILY_MONTH + 3)), totals.getTotalForDays(category.getID(), date, EpochMonth.getFirstDate(DAILY_MONTH + 3)), "Day range total of "+category.getID());
+                }
+            assertEquals(test.bruteForceTotal(category.getID(), monthStart, nextMonthStart), totals.getTotalForDays(category.getID(), monthStart, nextMonthStart), "Month total of "+category.getID());
+            }
+    }
+
+    @Test
+    public void daysOutsideTheDailyMonthAreNotTotaled() {
+        final TestLedger test = new TestLedger(9, 10, 1000, FIRST_YEAR, YEARS);
+        final TransactionAggregator totals = this.totalAll(test, 1);
+        final String categoryID = test.categories.get(0).getID();
+        final int otherMonthStart = EpochMonth.getFirstDate(DAILY_MONTH + 2);
+        assertThrows(IllegalArgumentException.class, () -> totals.getTotalForDays(categoryID, otherMonthStart + 4, otherMonthStart + 9));
+        assertThrows(IllegalArgumentException.class, () -> totals.getTotalForDays(categoryID, EpochMonth.getFirstDate(DAILY_MONTH), otherMonthStart + 9));
+    }
+
+    @Test
+    public void selectionTotalsOnlySelectedCategories() {
+        final TestLedger test = new TestLedger(2, 50, 5000, FIRST_YEAR, YEARS);
+        final TransactionAggregator all = this.totalAll(test, 1);
+        final TransactionAggregator selected = new TransactionAggregator(new TransactionDateIndex(test.ledger), EpochMonth.of(FIRST_YEAR, 1), YEARS * 12, 1, CategorySelection.getSelection("cat-3", test.ledger));
+
+        final int from = EpochMonth.of(FIRST_YEAR, 1);
+        final int to = EpochMonth.of(FIRST_YEAR + YEARS, 1);
+        for (final LedgerSource.Category category : test.categories)
+            {
+            final boolean isSelected = (category.getID().equals("cat-3")) || ((category.getParent() != null) && (category.getParent().getID().equals("cat-3")));
+            assertEquals(isSelected ? all.getTotal(category.getID(), from, to) : 0L, selected.getTotal(category.getID(), from, to), "Total of "+category.getID());
+            }
+    }
+
+    @Test
+    public void selectionFollowsMovedCategories() {
+        final TestLedger test = new TestLedger(7, 50, 5000, FIRST_YEAR, YEARS);
+        final TransactionDateIndex index = new TransactionDateIndex(test.ledger);
+
+        // Move cat-13 from under cat-3 to under cat-4 after it was indexed
+        final LedgerSource.Category moved = test.ledger.getCategory("cat-13");
+        test.ledger.addCategory(moved.getID(), moved.getName(), moved.getType(), test.ledger.getCategory("cat-4"));
+
+        final TransactionAggregator all = new TransactionAggregator(index, EpochMonth.of(FIRST_YEAR, 1), YEARS * 12, 1, null);
+        final TransactionAggregator selected = new TransactionAggregator(index, EpochMonth.of(FIRST_YEAR, 1), YEARS * 12, 1, CategorySelection.getSelection("cat-3", test.ledger));
+        final int from = EpochMonth.of(FIRST_YEAR, 1);
+        final int to = EpochMonth.of(FIRST_YEAR + YEARS, 1);
+        assertNotEquals(0L, all.getTotal("cat-13", from, to));
+        assertEquals(0L, selected.getTotal("cat-13", from, to), "Total of the moved category");
+        assertEquals(all.getTotal("cat-23", from, to), selected.getTotal("cat-23", from, to), "Total of a category still selected");
+    }
+
+    @Test
+    public void dataModelRangesMatchBruteForce() {
+        // The model totals the history years before this year and this year
+        Settings.getInstance(AccountBook.fakeAccountBook());
+        final int thisYear = LocalDate.now().getYear();
+        final int firstYear = thisYear - Constants.HISTORY_YEARS;
+        final TestLedger test = new TestLedger(8, 30, 5000, firstYear, Constants.HISTORY_YEARS + 1);
+        test.ledger.setBudget("budget", "cat-12", thisYear - 1, 11, 100);
+        test.ledger.setBudget("budget", "cat-12", thisYear - 1, 12, 200);
+        test.ledger.setBudget("budget", "cat-12", thisYear, 1, 400);
+        test.ledger.setBudget("budget", "cat-12", thisYear, 3, 800);
+        final DataModel model = new DataModel(test.ledger, null, new DataModelTest.TestHost());
+        model.loadData();
+
+        // Ranges spanning the year boundaries
+        final int[][] ranges = {
+            { EpochMonth.of(firstYear, 7), EpochMonth.of(firstYear + 1, 3) },
+            { EpochMonth.of(thisYear - 1, 12), EpochMonth.of(thisYear, 2) },
+            { EpochMonth.of(firstYear, 1), EpochMonth.of(thisYear + 1, 1) } };
+        for (final LedgerSource.Category category : test.categories)
+            {
+            for (final int[] range : ranges)
+                assertEquals(test.bruteForceTotal(category.getID(), EpochMonth.getFirstDate(range[0]), EpochMonth.getFirstDate(range[1])), model.getActualForRange(category.getID(), range[0], range[1]), "Range total of "+category.getID());
+            }
+        assertEquals(300, model.getBudgetForRange("cat-12", EpochMonth.of(thisYear - 1, 11), EpochMonth.of(thisYear, 1)));
+        assertEquals(1400, model.getBudgetForRange("cat-12", EpochMonth.of(thisYear - 1, 12), EpochMonth.of(thisYear, 4)));
+        assertEquals(1500, model.getBudgetForRange("cat-12", EpochMonth.of(firstYear, 1), EpochMonth.of(thisYear + 1, 1)));
+        assertEquals(0, model.getBudgetForRange("cat-13", EpochMonth.of(thisYear - 1, 11), EpochMonth.of(thisYear, 4)));
+
+        // Empty ranges
+        final int month = EpochMonth.of(thisYear, 1);
+        assertNotEquals(0L, test.bruteForceTotal("cat-12", EpochMonth.getFirstDate(month), EpochMonth.getFirstDate(month + 1)));
+        assertEquals(0L, model.getActualForRange("cat-12", month, month));
+        assertEquals(0L, model.getActualForRange("cat-12", month + 1, month));
+        assertEquals(0L, model.getBudgetForRange("cat-12", month, month));
+        assertEquals(0L, model.getBudgetForRange("cat-12", month + 1, month));
+    }
+
+    @Test
+    public void appliedChangesMatchTotalingAgain() {
+        final TestLedger test = new TestLedger(3, 50, 5000, FIRST_YEAR, YEARS);
+        final TransactionDateIndex index = new TransactionDateIndex(test.ledger);
+        final TransactionAggregator totals = new TransactionAggregator(index, EpochMonth.of(FIRST_YEAR, 1), YEARS * 12, DAILY_MONTH, 1, null);
+
+        // Modify, move and remove transactions the way the data model does
+        final Random random = new Random(4);
+        for (int i = 0; i < 500; i++)
+            {
+            final LedgerSource.Transaction txn = test.transactions.get(random.nextInt(test.transactions.size()));
+            final boolean removed = (i % 5) == 0;
+            final LedgerSource.Transaction newTxn = removed ? txn : test.ledger.addTransaction(txn.getID(), test.randomDate(random, FIRST_YEAR, YEARS), test.randomSplits(random));
+            if (removed)
+                test.ledger.removeTransaction(txn.getID());
+
+            final LedgerSource.Transaction oldTxn = index.remove(newTxn);
+            if (oldTxn != null)
+                totals.removeTransaction(oldTxn);
+            if (!removed)
+                {
+                index.add(newTxn);
+                totals.addTransaction(newTxn);
+                }
+            }
+
+        // The totals kept up to date match the totals of a new index
+        final TransactionAggregator expected = this.totalAll(test, 1);
+        for (final LedgerSource.Category category : test.categories)
+            {
+            for (int month = 0; month < (YEARS * 12); month++)
+                {
+                final int epochMonth = EpochMonth.of(FIRST_YEAR, 1) + month;
+                assertEquals(expected.getTotalForMonth(category.getID(), epochMonth), totals.getTotalForMonth(category.getID(), epochMonth), "Month total of "+category.getID());
+                assertEquals(expected.getTotal(category.getID(), EpochMonth.of(FIRST_YEAR, 1), epochMonth + 1), totals.getTotal(category.getID(), EpochMonth.of(FIRST_YEAR, 1), epochMonth + 1), "Range total of "+category.getID());
+                }
+            for (int day = 1; day <= 31; day += 3)
+                {
+                final int date = EpochMonth.getFirstDate(DAILY_MONTH) + day - 1;
+                assertEquals(expected.getTotalForDays(category.getID(), EpochMonth.getFirstDate(DAILY_MONTH), date), totals.getTotalForDays(category.getID(), EpochMonth.getFirstDate(DAILY_MONTH), date), "Day range total of "+category.getID());
+                }
+            }
+
+        // The fingerprint kept up to date matches the fingerprint of a new index
+        assertEquals(new TransactionDateIndex(test.ledger).getFingerprint(), index.getFingerprint());
+    }
+
+    @Test
+    public void removingAnUnknownTransactionChangesNothing() {
+        final TestLedger test = new TestLedger(5, 10, 100, FIRST_YEAR, YEARS);
+        final TransactionDateIndex index = new TransactionDateIndex(test.ledger);
+        final long fingerprint = index.getFingerprint();
+        assertNull(index.remove(new LedgerSource.Transaction("unknown", FIRST_YEAR * 10000 + 101)));
+        assertEquals(fingerprint, index.getFingerprint());
+    }
+
+    @Test
+    public void fingerprintFollowsChanges() {
+        final TestLedger test = new TestLedger(6, 20, 1000, FIRST_YEAR, YEARS);
+        final TransactionDateIndex index = new TransactionDateIndex(test.ledger);
+        final long original = index.getFingerprint();
+
+        // Change the value of one split
+        final LedgerSource.Transaction txn = test.transactions.get(0);
+        final LedgerSource.Split split = txn.getSplit(0);
+        final LedgerSource.Transaction changed = test.ledger.addTransaction(txn.getID(), txn.getDate(), new LedgerSource.Split(test.categories.get(0), split.getValue() + 1));
+        index.remove(changed);
+        index.add(changed);
+        assertNotEquals(original, index.getFingerprint());
+        assertEquals(new TransactionDateIndex(test.ledger).getFingerprint(), index.getFingerprint());
+
+        // Change it back
+        index.remove(txn);
+        index.add(txn);
+        assertEquals(original, index.getFingerprint());
+    }
+
+    /** 
+     * Total all the categories of a test ledger for all of its years, 
+     * keeping the daily totals of the daily month.
+     * 
+     * @param test - The test ledger.
+     * @param parallelism - The number of threads to total with.
+     * @return TransactionAggregator - The totals.
+     */
+    private TransactionAggregator totalAll(final TestLedger test, final int parallelism) {
+        return new TransactionAggregator(new TransactionDateIndex(test.ledger), EpochMonth.of(FIRST_YEAR, 1), YEARS * 12, DAILY_MONTH, parallelism, null);
+    }
+}